@@ -83,6 +83,9 @@ public interface CommonMessages {
     @Message(id = 13, value = "Invalid address string \"%s\"")
     IllegalArgumentException invalidAddress(String address);
 
+    @Message(id = 14, value = "Invalid or unsupported CIDR address table image")
+    IllegalArgumentException invalidCidrTableImage();
+
     // execution path validation
 
     @Message(id = 100, value = "Method \"%s\" of class \"%s\" is not implemented")
@@ -150,6 +153,11 @@ public interface CommonMessages {
     @Message(id = 509, value = "Byte string builder is too large to grow")
     IllegalStateException tooLarge();
 
+    // ref package
+
+    @Message(id = 600, value = "Reference type %s is not allowed for parameter '%s'")
+    IllegalArgumentException invalidReferenceType(Object type, String paramName);
+
     // assertion errors
 
     @Message(id = 1000, value = "Internal error: Assertion failure: Unexpectedly null value")
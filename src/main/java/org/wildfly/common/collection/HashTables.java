@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import org.wildfly.common.Assert;
+import org.wildfly.common.math.HashMath;
+
+/**
+ * Utilities shared by the open-addressing hash tables of this package.
+ */
+final class HashTables {
+    private HashTables() {}
+
+    static final int MIN_CAPACITY = 16;
+    static final int MAX_CAPACITY = 1 << 30;
+    static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    /**
+     * Compute the table size for the given requested capacity.
+     *
+     * @param initialCapacity the requested capacity
+     * @return the table size, which is a power of two
+     */
+    static int tableSize(int initialCapacity) {
+        Assert.checkMinimumParameter("initialCapacity", 1, initialCapacity);
+        Assert.checkMaximumParameter("initialCapacity", MAX_CAPACITY, initialCapacity);
+        return Math.max(MIN_CAPACITY, HashMath.roundToPowerOfTwo(initialCapacity));
+    }
+
+    static void checkLoadFactor(float loadFactor) {
+        if (! (loadFactor > 0.0f && loadFactor < 1.0f)) {
+            throw new IllegalArgumentException("loadFactor must be > 0.0 and < 1.0");
+        }
+    }
+
+    /**
+     * Get the number of entries at which a table of the given size must grow.
+     *
+     * @param tableSize the table size
+     * @param loadFactor the load factor
+     * @return the resize count
+     */
+    static int resizeCount(int tableSize, float loadFactor) {
+        return tableSize == MAX_CAPACITY ? tableSize - 1 : Math.max(1, (int) ((double) tableSize * (double) loadFactor));
+    }
+
+    /**
+     * Get the size of the next larger table.
+     *
+     * @param tableSize the current table size
+     * @return the new table size
+     */
+    static int grow(int tableSize) {
+        if (tableSize >= MAX_CAPACITY) {
+            throw new IllegalStateException("Table full");
+        }
+        return tableSize << 1;
+    }
+
+    /**
+     * Spread the bits of a hash code, so that keys which differ only in their high bits do not collide in a
+     * power-of-two sized table.
+     *
+     * @param hashCode the hash code
+     * @return the mixed hash code
+     */
+    static int mix(int hashCode) {
+        final int h = hashCode * 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+
+    static int mix(long key) {
+        return mix((int) (key ^ key >>> 32));
+    }
+
+    /**
+     * Determine whether the entry at index {@code i}, whose preferred index is {@code home}, may be moved back into the
+     * gap at index {@code gap} during backward-shift deletion.  This is the case if the gap lies cyclically between the
+     * preferred index and the current index of the entry.
+     *
+     * @param gap the index of the gap
+     * @param home the preferred index of the entry
+     * @param i the current index of the entry
+     * @param mask the table mask
+     * @return {@code true} if the entry may be moved into the gap
+     */
+    static boolean canShift(int gap, int home, int i, int mask) {
+        return (i - home & mask) >= (i - gap & mask);
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.wildfly.common.iteration.IntIterator;
+
+/**
+ * An open-addressing hash map whose keys and values are {@code int}s.  Collisions are resolved by linear probing,
+ * and removal uses backward-shift deletion, so no tombstones are left behind.
+ * <p>
+ * This class is not thread-safe, and the map may not be modified while it is being iterated.
+ */
+public final class IntIntMap implements Cloneable {
+    // key 0 marks an empty slot, so its mapping is stored separately
+    private int[] keys;
+    private int[] values;
+    private final float loadFactor;
+    private int count;
+    private int resizeCount;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * Construct a new instance with the given initial capacity and load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor
+     */
+    public IntIntMap(final int initialCapacity, final float loadFactor) {
+        HashTables.checkLoadFactor(loadFactor);
+        final int size = HashTables.tableSize(initialCapacity);
+        keys = new int[size];
+        values = new int[size];
+        this.loadFactor = loadFactor;
+        resizeCount = HashTables.resizeCount(size, loadFactor);
+    }
+
+    /**
+     * Construct a new instance with the given initial capacity and a load factor of {@code 0.5}.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public IntIntMap(final int initialCapacity) {
+        this(initialCapacity, HashTables.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Construct a new instance with an initial capacity of 16 and a load factor of {@code 0.5}.
+     */
+    public IntIntMap() {
+        this(HashTables.MIN_CAPACITY);
+    }
+
+    /**
+     * Get a value from the map.
+     *
+     * @param key the key
+     * @param defVal the value to return if the key is not found
+     * @return the map value at the given key, or the value of {@code defVal} if it's not found
+     */
+    public int get(int key, int defVal) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defVal;
+        }
+        final int idx = find(key);
+        return idx == -1 ? defVal : values[idx];
+    }
+
+    /**
+     * Determine whether the map contains the given key.
+     *
+     * @param key the key
+     * @return {@code true} if the key is mapped, {@code false} otherwise
+     */
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZeroKey : find(key) != -1;
+    }
+
+    /**
+     * Put a value into the map.  Any previous mapping is discarded silently.
+     *
+     * @param key the key
+     * @param value the value to store
+     */
+    public void put(int key, int value) {
+        put(key, value, true);
+    }
+
+    /**
+     * Put a value into the map if the key is not already mapped.
+     *
+     * @param key the key
+     * @param value the value to store
+     * @return {@code true} if the mapping was added, {@code false} if the key was already mapped
+     */
+    public boolean putIfAbsent(int key, int value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * Remove a mapping from the map.
+     *
+     * @param key the key
+     * @param defVal the value to return if the key is not found
+     * @return the removed value, or the value of {@code defVal} if the key is not found
+     */
+    public int remove(int key, int defVal) {
+        if (key == 0) {
+            if (! hasZeroKey) {
+                return defVal;
+            }
+            hasZeroKey = false;
+            return zeroValue;
+        }
+        final int idx = find(key);
+        if (idx == -1) {
+            return defVal;
+        }
+        final int value = values[idx];
+        removeAt(idx);
+        return value;
+    }
+
+    /**
+     * Get the number of mappings in the map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return hasZeroKey ? count + 1 : count;
+    }
+
+    /**
+     * Determine whether the map is empty.
+     *
+     * @return {@code true} if the map is empty, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Remove all mappings from the map.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        count = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * Get an iterator over the keys of this map.
+     *
+     * @return the key iterator
+     */
+    public IntIterator keyIterator() {
+        return new Iter(true);
+    }
+
+    /**
+     * Get an iterator over the values of this map, in the same order as the {@linkplain #keyIterator() keys}.
+     *
+     * @return the value iterator
+     */
+    public IntIterator valueIterator() {
+        return new Iter(false);
+    }
+
+    /**
+     * Clone this map.
+     *
+     * @return a cloned map
+     */
+    public IntIntMap clone() {
+        try {
+            final IntIntMap clone = (IntIntMap) super.clone();
+            clone.keys = keys.clone();
+            clone.values = values.clone();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Get a string representation of this map.
+     *
+     * @return a string representation
+     */
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append('{');
+        final Iter iter = new Iter(true);
+        while (iter.hasNext()) {
+            final int pos = iter.pos;
+            final int key = iter.next();
+            b.append(key).append('=').append(pos == -1 ? zeroValue : values[pos]);
+            if (iter.hasNext()) {
+                b.append(", ");
+            }
+        }
+        return b.append('}').toString();
+    }
+
+    private int find(final int key) {
+        final int[] keys = this.keys;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key) & mask;
+        int k;
+        while ((k = keys[idx]) != 0) {
+            if (k == key) {
+                return idx;
+            }
+            idx = idx + 1 & mask;
+        }
+        return -1;
+    }
+
+    private boolean put(final int key, final int value, final boolean replace) {
+        if (key == 0) {
+            if (hasZeroKey && ! replace) {
+                return false;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            return true;
+        }
+        final int[] keys = this.keys;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key) & mask;
+        int k;
+        while ((k = keys[idx]) != 0) {
+            if (k == key) {
+                if (! replace) {
+                    return false;
+                }
+                values[idx] = value;
+                return true;
+            }
+            idx = idx + 1 & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        if (++count > resizeCount) {
+            resize();
+        }
+        return true;
+    }
+
+    private void removeAt(int gap) {
+        final int[] keys = this.keys;
+        final int[] values = this.values;
+        final int mask = keys.length - 1;
+        int i = gap;
+        int k;
+        // shift each following entry of the cluster back into the gap, if that does not move it before its home
+        while ((k = keys[i = i + 1 & mask]) != 0) {
+            if (HashTables.canShift(gap, HashTables.mix(k) & mask, i, mask)) {
+                keys[gap] = k;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        count--;
+    }
+
+    private void resize() {
+        final int[] oldKeys = keys;
+        final int[] oldValues = values;
+        final int newSize = HashTables.grow(oldKeys.length);
+        final int mask = newSize - 1;
+        final int[] newKeys = new int[newSize];
+        final int[] newValues = new int[newSize];
+        for (int oi = 0; oi < oldKeys.length; oi ++) {
+            final int key = oldKeys[oi];
+            if (key != 0) {
+                int ni = HashTables.mix(key) & mask;
+                while (newKeys[ni] != 0) {
+                    ni = ni + 1 & mask;
+                }
+                newKeys[ni] = key;
+                newValues[ni] = oldValues[oi];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        resizeCount = HashTables.resizeCount(newSize, loadFactor);
+    }
+
+    final class Iter implements IntIterator {
+        private final boolean keys;
+        // -1 is the zero key; the table length is the end
+        int pos;
+
+        Iter(final boolean keys) {
+            this.keys = keys;
+            pos = hasZeroKey ? -1 : seek(0);
+        }
+
+        public boolean hasNext() {
+            return pos < IntIntMap.this.keys.length;
+        }
+
+        public int next() throws NoSuchElementException {
+            final int result = peekNext();
+            pos = seek(pos + 1);
+            return result;
+        }
+
+        public int peekNext() throws NoSuchElementException {
+            final int pos = this.pos;
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (pos == -1) {
+                return keys ? 0 : zeroValue;
+            }
+            return keys ? IntIntMap.this.keys[pos] : values[pos];
+        }
+
+        private int seek(int pos) {
+            final int[] keys = IntIntMap.this.keys;
+            while (pos < keys.length && keys[pos] == 0) {
+                pos ++;
+            }
+            return pos;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ObjIntConsumer;
+
+import org.wildfly.common.Assert;
+import org.wildfly.common.iteration.IntIterator;
+
+/**
+ * An open-addressing hash map whose keys are {@code int}s and whose values are objects.  Collisions are resolved by
+ * linear probing, and removal uses backward-shift deletion, so no tombstones are left behind.  Values may not be
+ * {@code null}.
+ * <p>
+ * This class is not thread-safe, and the map may not be modified while it is being iterated.
+ *
+ * @param <V> the value type
+ */
+public final class IntObjectMap<V> implements Cloneable {
+    // a null value marks an empty slot
+    private int[] keys;
+    private Object[] values;
+    private final float loadFactor;
+    private int count;
+    private int resizeCount;
+
+    /**
+     * Construct a new instance with the given initial capacity and load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor
+     */
+    public IntObjectMap(final int initialCapacity, final float loadFactor) {
+        HashTables.checkLoadFactor(loadFactor);
+        final int size = HashTables.tableSize(initialCapacity);
+        keys = new int[size];
+        values = new Object[size];
+        this.loadFactor = loadFactor;
+        resizeCount = HashTables.resizeCount(size, loadFactor);
+    }
+
+    /**
+     * Construct a new instance with the given initial capacity and a load factor of {@code 0.5}.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public IntObjectMap(final int initialCapacity) {
+        this(initialCapacity, HashTables.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Construct a new instance with an initial capacity of 16 and a load factor of {@code 0.5}.
+     */
+    public IntObjectMap() {
+        this(HashTables.MIN_CAPACITY);
+    }
+
+    /**
+     * Get a value from the map.
+     *
+     * @param key the key
+     * @return the map value at the given key, or {@code null} if it's not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        final int idx = find(key);
+        return idx == -1 ? null : (V) values[idx];
+    }
+
+    /**
+     * Determine whether the map contains the given key.
+     *
+     * @param key the key
+     * @return {@code true} if the key is mapped, {@code false} otherwise
+     */
+    public boolean containsKey(int key) {
+        return find(key) != -1;
+    }
+
+    /**
+     * Put a value into the map.
+     *
+     * @param key the key
+     * @param value the value to store (must not be {@code null})
+     * @return the previous value, or {@code null} if the key was not mapped
+     */
+    public V put(int key, V value) {
+        Assert.checkNotNullParam("value", value);
+        return put(key, value, true);
+    }
+
+    /**
+     * Put a value into the map if the key is not already mapped.
+     *
+     * @param key the key
+     * @param value the value to store (must not be {@code null})
+     * @return the existing value, or {@code null} if the mapping was added
+     */
+    public V putIfAbsent(int key, V value) {
+        Assert.checkNotNullParam("value", value);
+        return put(key, value, false);
+    }
+
+    /**
+     * Remove a mapping from the map.
+     *
+     * @param key the key
+     * @return the removed value, or {@code null} if the key is not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        final int idx = find(key);
+        if (idx == -1) {
+            return null;
+        }
+        final V value = (V) values[idx];
+        removeAt(idx);
+        return value;
+    }
+
+    /**
+     * Get the number of mappings in the map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Determine whether the map is empty.
+     *
+     * @return {@code true} if the map is empty, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Remove all mappings from the map.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        count = 0;
+    }
+
+    /**
+     * Get an iterator over the keys of this map.
+     *
+     * @return the key iterator
+     */
+    public IntIterator keyIterator() {
+        return new KeyIterator();
+    }
+
+    /**
+     * Get an iterator over the values of this map, in the same order as the {@linkplain #keyIterator() keys}.  The
+     * iterator does not support removal.
+     *
+     * @return the value iterator
+     */
+    public Iterator<V> valueIterator() {
+        return new ValueIterator();
+    }
+
+    /**
+     * Call the given action for each mapping in this map.
+     *
+     * @param action the action, which accepts each value and key (must not be {@code null})
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super V> action) {
+        Assert.checkNotNullParam("action", action);
+        final int[] keys = this.keys;
+        final Object[] values = this.values;
+        for (int i = 0; i < values.length; i ++) {
+            final Object value = values[i];
+            if (value != null) {
+                action.accept((V) value, keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Clone this map.
+     *
+     * @return a cloned map
+     */
+    @SuppressWarnings("unchecked")
+    public IntObjectMap<V> clone() {
+        try {
+            final IntObjectMap<V> clone = (IntObjectMap<V>) super.clone();
+            clone.keys = keys.clone();
+            clone.values = values.clone();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Get a string representation of this map.
+     *
+     * @return a string representation
+     */
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append('{');
+        forEach((v, k) -> {
+            if (b.length() > 1) {
+                b.append(", ");
+            }
+            b.append(k).append('=').append(v);
+        });
+        return b.append('}').toString();
+    }
+
+    private int find(final int key) {
+        final int[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key) & mask;
+        while (values[idx] != null) {
+            if (keys[idx] == key) {
+                return idx;
+            }
+            idx = idx + 1 & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(final int key, final V value, final boolean replace) {
+        final int[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key) & mask;
+        Object v;
+        while ((v = values[idx]) != null) {
+            if (keys[idx] == key) {
+                if (replace) {
+                    values[idx] = value;
+                }
+                return (V) v;
+            }
+            idx = idx + 1 & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        if (++count > resizeCount) {
+            resize();
+        }
+        return null;
+    }
+
+    private void removeAt(int gap) {
+        final int[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+        int i = gap;
+        Object v;
+        // shift each following entry of the cluster back into the gap, if that does not move it before its home
+        while ((v = values[i = i + 1 & mask]) != null) {
+            final int k = keys[i];
+            if (HashTables.canShift(gap, HashTables.mix(k) & mask, i, mask)) {
+                keys[gap] = k;
+                values[gap] = v;
+                gap = i;
+            }
+        }
+        values[gap] = null;
+        count--;
+    }
+
+    private void resize() {
+        final int[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final int newSize = HashTables.grow(oldKeys.length);
+        final int mask = newSize - 1;
+        final int[] newKeys = new int[newSize];
+        final Object[] newValues = new Object[newSize];
+        for (int oi = 0; oi < oldKeys.length; oi ++) {
+            final Object value = oldValues[oi];
+            if (value != null) {
+                final int key = oldKeys[oi];
+                int ni = HashTables.mix(key) & mask;
+                while (newValues[ni] != null) {
+                    ni = ni + 1 & mask;
+                }
+                newKeys[ni] = key;
+                newValues[ni] = value;
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        resizeCount = HashTables.resizeCount(newSize, loadFactor);
+    }
+
+    int seek(int pos) {
+        final Object[] values = this.values;
+        while (pos < values.length && values[pos] == null) {
+            pos ++;
+        }
+        return pos;
+    }
+
+    final class KeyIterator implements IntIterator {
+        private int pos = seek(0);
+
+        KeyIterator() {
+        }
+
+        public boolean hasNext() {
+            return pos < keys.length;
+        }
+
+        public int next() throws NoSuchElementException {
+            final int result = peekNext();
+            pos = seek(pos + 1);
+            return result;
+        }
+
+        public int peekNext() throws NoSuchElementException {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return keys[pos];
+        }
+    }
+
+    final class ValueIterator implements Iterator<V> {
+        private int pos = seek(0);
+
+        ValueIterator() {
+        }
+
+        public boolean hasNext() {
+            return pos < values.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final V result = (V) values[pos];
+            pos = seek(pos + 1);
+            return result;
+        }
+    }
+}
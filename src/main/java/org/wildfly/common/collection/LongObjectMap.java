@@ -0,0 +1,334 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ObjLongConsumer;
+
+import org.wildfly.common.Assert;
+
+/**
+ * An open-addressing hash map whose keys are {@code long}s and whose values are objects.  Collisions are resolved by
+ * linear probing, and removal uses backward-shift deletion, so no tombstones are left behind.  Values may not be
+ * {@code null}.
+ * <p>
+ * This class is not thread-safe, and the map may not be modified while it is being iterated.
+ *
+ * @param <V> the value type
+ */
+public final class LongObjectMap<V> implements Cloneable {
+    // a null value marks an empty slot
+    private long[] keys;
+    private Object[] values;
+    private final float loadFactor;
+    private int count;
+    private int resizeCount;
+
+    /**
+     * Construct a new instance with the given initial capacity and load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor
+     */
+    public LongObjectMap(final int initialCapacity, final float loadFactor) {
+        HashTables.checkLoadFactor(loadFactor);
+        final int size = HashTables.tableSize(initialCapacity);
+        keys = new long[size];
+        values = new Object[size];
+        this.loadFactor = loadFactor;
+        resizeCount = HashTables.resizeCount(size, loadFactor);
+    }
+
+    /**
+     * Construct a new instance with the given initial capacity and a load factor of {@code 0.5}.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public LongObjectMap(final int initialCapacity) {
+        this(initialCapacity, HashTables.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Construct a new instance with an initial capacity of 16 and a load factor of {@code 0.5}.
+     */
+    public LongObjectMap() {
+        this(HashTables.MIN_CAPACITY);
+    }
+
+    /**
+     * Get a value from the map.
+     *
+     * @param key the key
+     * @return the map value at the given key, or {@code null} if it's not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final int idx = find(key);
+        return idx == -1 ? null : (V) values[idx];
+    }
+
+    /**
+     * Determine whether the map contains the given key.
+     *
+     * @param key the key
+     * @return {@code true} if the key is mapped, {@code false} otherwise
+     */
+    public boolean containsKey(long key) {
+        return find(key) != -1;
+    }
+
+    /**
+     * Put a value into the map.
+     *
+     * @param key the key
+     * @param value the value to store (must not be {@code null})
+     * @return the previous value, or {@code null} if the key was not mapped
+     */
+    public V put(long key, V value) {
+        Assert.checkNotNullParam("value", value);
+        return put(key, value, true);
+    }
+
+    /**
+     * Put a value into the map if the key is not already mapped.
+     *
+     * @param key the key
+     * @param value the value to store (must not be {@code null})
+     * @return the existing value, or {@code null} if the mapping was added
+     */
+    public V putIfAbsent(long key, V value) {
+        Assert.checkNotNullParam("value", value);
+        return put(key, value, false);
+    }
+
+    /**
+     * Remove a mapping from the map.
+     *
+     * @param key the key
+     * @return the removed value, or {@code null} if the key is not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        final int idx = find(key);
+        if (idx == -1) {
+            return null;
+        }
+        final V value = (V) values[idx];
+        removeAt(idx);
+        return value;
+    }
+
+    /**
+     * Get the number of mappings in the map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Determine whether the map is empty.
+     *
+     * @return {@code true} if the map is empty, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Remove all mappings from the map.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        count = 0;
+    }
+
+    /**
+     * Get an iterator over the values of this map.  The iterator does not support removal.
+     *
+     * @return the value iterator
+     */
+    public Iterator<V> valueIterator() {
+        return new ValueIterator();
+    }
+
+    /**
+     * Call the given action for each mapping in this map.
+     *
+     * @param action the action, which accepts each value and key (must not be {@code null})
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<? super V> action) {
+        Assert.checkNotNullParam("action", action);
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        for (int i = 0; i < values.length; i ++) {
+            final Object value = values[i];
+            if (value != null) {
+                action.accept((V) value, keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Clone this map.
+     *
+     * @return a cloned map
+     */
+    @SuppressWarnings("unchecked")
+    public LongObjectMap<V> clone() {
+        try {
+            final LongObjectMap<V> clone = (LongObjectMap<V>) super.clone();
+            clone.keys = keys.clone();
+            clone.values = values.clone();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Get a string representation of this map.
+     *
+     * @return a string representation
+     */
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append('{');
+        forEach((v, k) -> {
+            if (b.length() > 1) {
+                b.append(", ");
+            }
+            b.append(k).append('=').append(v);
+        });
+        return b.append('}').toString();
+    }
+
+    private int find(final long key) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key) & mask;
+        while (values[idx] != null) {
+            if (keys[idx] == key) {
+                return idx;
+            }
+            idx = idx + 1 & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(final long key, final V value, final boolean replace) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key) & mask;
+        Object v;
+        while ((v = values[idx]) != null) {
+            if (keys[idx] == key) {
+                if (replace) {
+                    values[idx] = value;
+                }
+                return (V) v;
+            }
+            idx = idx + 1 & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        if (++count > resizeCount) {
+            resize();
+        }
+        return null;
+    }
+
+    private void removeAt(int gap) {
+        final long[] keys = this.keys;
+        final Object[] values = this.values;
+        final int mask = keys.length - 1;
+        int i = gap;
+        Object v;
+        // shift each following entry of the cluster back into the gap, if that does not move it before its home
+        while ((v = values[i = i + 1 & mask]) != null) {
+            final long k = keys[i];
+            if (HashTables.canShift(gap, HashTables.mix(k) & mask, i, mask)) {
+                keys[gap] = k;
+                values[gap] = v;
+                gap = i;
+            }
+        }
+        values[gap] = null;
+        count--;
+    }
+
+    private void resize() {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final int newSize = HashTables.grow(oldKeys.length);
+        final int mask = newSize - 1;
+        final long[] newKeys = new long[newSize];
+        final Object[] newValues = new Object[newSize];
+        for (int oi = 0; oi < oldKeys.length; oi ++) {
+            final Object value = oldValues[oi];
+            if (value != null) {
+                final long key = oldKeys[oi];
+                int ni = HashTables.mix(key) & mask;
+                while (newValues[ni] != null) {
+                    ni = ni + 1 & mask;
+                }
+                newKeys[ni] = key;
+                newValues[ni] = value;
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        resizeCount = HashTables.resizeCount(newSize, loadFactor);
+    }
+
+    int seek(int pos) {
+        final Object[] values = this.values;
+        while (pos < values.length && values[pos] == null) {
+            pos ++;
+        }
+        return pos;
+    }
+
+    final class ValueIterator implements Iterator<V> {
+        private int pos = seek(0);
+
+        ValueIterator() {
+        }
+
+        public boolean hasNext() {
+            return pos < values.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final V result = (V) values[pos];
+            pos = seek(pos + 1);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ObjIntConsumer;
+
+import org.wildfly.common.Assert;
+import org.wildfly.common.iteration.IntIterator;
+
+/**
+ * An open-addressing hash map whose keys are objects and whose values are {@code int}s.  Keys are compared using
+ * {@link Object#equals(Object)}, and may not be {@code null}.  Collisions are resolved by linear probing, and removal
+ * uses backward-shift deletion, so no tombstones are left behind.
+ * <p>
+ * This class is not thread-safe, and the map may not be modified while it is being iterated.
+ *
+ * @param <K> the key type
+ */
+public final class ObjectIntMap<K> implements Cloneable {
+    // a null key marks an empty slot
+    private Object[] keys;
+    private int[] values;
+    private final float loadFactor;
+    private int count;
+    private int resizeCount;
+
+    /**
+     * Construct a new instance with the given initial capacity and load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor
+     */
+    public ObjectIntMap(final int initialCapacity, final float loadFactor) {
+        HashTables.checkLoadFactor(loadFactor);
+        final int size = HashTables.tableSize(initialCapacity);
+        keys = new Object[size];
+        values = new int[size];
+        this.loadFactor = loadFactor;
+        resizeCount = HashTables.resizeCount(size, loadFactor);
+    }
+
+    /**
+     * Construct a new instance with the given initial capacity and a load factor of {@code 0.5}.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public ObjectIntMap(final int initialCapacity) {
+        this(initialCapacity, HashTables.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Construct a new instance with an initial capacity of 16 and a load factor of {@code 0.5}.
+     */
+    public ObjectIntMap() {
+        this(HashTables.MIN_CAPACITY);
+    }
+
+    /**
+     * Get a value from the map.
+     *
+     * @param key the key (must not be {@code null})
+     * @param defVal the value to return if the key is not found
+     * @return the map value at the given key, or the value of {@code defVal} if it's not found
+     */
+    public int get(Object key, int defVal) {
+        Assert.checkNotNullParam("key", key);
+        final int idx = find(key);
+        return idx == -1 ? defVal : values[idx];
+    }
+
+    /**
+     * Determine whether the map contains the given key.
+     *
+     * @param key the key (must not be {@code null})
+     * @return {@code true} if the key is mapped, {@code false} otherwise
+     */
+    public boolean containsKey(Object key) {
+        Assert.checkNotNullParam("key", key);
+        return find(key) != -1;
+    }
+
+    /**
+     * Put a value into the map.  Any previous mapping is discarded silently.
+     *
+     * @param key the key (must not be {@code null})
+     * @param value the value to store
+     */
+    public void put(K key, int value) {
+        Assert.checkNotNullParam("key", key);
+        put(key, value, true);
+    }
+
+    /**
+     * Put a value into the map if the key is not already mapped.
+     *
+     * @param key the key (must not be {@code null})
+     * @param value the value to store
+     * @return {@code true} if the mapping was added, {@code false} if the key was already mapped
+     */
+    public boolean putIfAbsent(K key, int value) {
+        Assert.checkNotNullParam("key", key);
+        return put(key, value, false);
+    }
+
+    /**
+     * Remove a mapping from the map.
+     *
+     * @param key the key (must not be {@code null})
+     * @param defVal the value to return if the key is not found
+     * @return the removed value, or the value of {@code defVal} if the key is not found
+     */
+    public int remove(Object key, int defVal) {
+        Assert.checkNotNullParam("key", key);
+        final int idx = find(key);
+        if (idx == -1) {
+            return defVal;
+        }
+        final int value = values[idx];
+        removeAt(idx);
+        return value;
+    }
+
+    /**
+     * Get the number of mappings in the map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Determine whether the map is empty.
+     *
+     * @return {@code true} if the map is empty, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Remove all mappings from the map.
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        count = 0;
+    }
+
+    /**
+     * Get an iterator over the keys of this map.  The iterator does not support removal.
+     *
+     * @return the key iterator
+     */
+    public Iterator<K> keyIterator() {
+        return new KeyIterator();
+    }
+
+    /**
+     * Get an iterator over the values of this map, in the same order as the {@linkplain #keyIterator() keys}.
+     *
+     * @return the value iterator
+     */
+    public IntIterator valueIterator() {
+        return new ValueIterator();
+    }
+
+    /**
+     * Call the given action for each mapping in this map.
+     *
+     * @param action the action, which accepts each key and value (must not be {@code null})
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super K> action) {
+        Assert.checkNotNullParam("action", action);
+        final Object[] keys = this.keys;
+        final int[] values = this.values;
+        for (int i = 0; i < keys.length; i ++) {
+            final Object key = keys[i];
+            if (key != null) {
+                action.accept((K) key, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Clone this map.
+     *
+     * @return a cloned map
+     */
+    @SuppressWarnings("unchecked")
+    public ObjectIntMap<K> clone() {
+        try {
+            final ObjectIntMap<K> clone = (ObjectIntMap<K>) super.clone();
+            clone.keys = keys.clone();
+            clone.values = values.clone();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Get a string representation of this map.
+     *
+     * @return a string representation
+     */
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append('{');
+        forEach((k, v) -> {
+            if (b.length() > 1) {
+                b.append(", ");
+            }
+            b.append(k).append('=').append(v);
+        });
+        return b.append('}').toString();
+    }
+
+    private int find(final Object key) {
+        final Object[] keys = this.keys;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key.hashCode()) & mask;
+        Object k;
+        while ((k = keys[idx]) != null) {
+            if (k == key || k.equals(key)) {
+                return idx;
+            }
+            idx = idx + 1 & mask;
+        }
+        return -1;
+    }
+
+    private boolean put(final K key, final int value, final boolean replace) {
+        final Object[] keys = this.keys;
+        final int mask = keys.length - 1;
+        int idx = HashTables.mix(key.hashCode()) & mask;
+        Object k;
+        while ((k = keys[idx]) != null) {
+            if (k == key || k.equals(key)) {
+                if (! replace) {
+                    return false;
+                }
+                values[idx] = value;
+                return true;
+            }
+            idx = idx + 1 & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        if (++count > resizeCount) {
+            resize();
+        }
+        return true;
+    }
+
+    private void removeAt(int gap) {
+        final Object[] keys = this.keys;
+        final int[] values = this.values;
+        final int mask = keys.length - 1;
+        int i = gap;
+        Object k;
+        // shift each following entry of the cluster back into the gap, if that does not move it before its home
+        while ((k = keys[i = i + 1 & mask]) != null) {
+            if (HashTables.canShift(gap, HashTables.mix(k.hashCode()) & mask, i, mask)) {
+                keys[gap] = k;
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        count--;
+    }
+
+    private void resize() {
+        final Object[] oldKeys = keys;
+        final int[] oldValues = values;
+        final int newSize = HashTables.grow(oldKeys.length);
+        final int mask = newSize - 1;
+        final Object[] newKeys = new Object[newSize];
+        final int[] newValues = new int[newSize];
+        for (int oi = 0; oi < oldKeys.length; oi ++) {
+            final Object key = oldKeys[oi];
+            if (key != null) {
+                int ni = HashTables.mix(key.hashCode()) & mask;
+                while (newKeys[ni] != null) {
+                    ni = ni + 1 & mask;
+                }
+                newKeys[ni] = key;
+                newValues[ni] = oldValues[oi];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        resizeCount = HashTables.resizeCount(newSize, loadFactor);
+    }
+
+    int seek(int pos) {
+        final Object[] keys = this.keys;
+        while (pos < keys.length && keys[pos] == null) {
+            pos ++;
+        }
+        return pos;
+    }
+
+    final class KeyIterator implements Iterator<K> {
+        private int pos = seek(0);
+
+        KeyIterator() {
+        }
+
+        public boolean hasNext() {
+            return pos < keys.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public K next() {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final K result = (K) keys[pos];
+            pos = seek(pos + 1);
+            return result;
+        }
+    }
+
+    final class ValueIterator implements IntIterator {
+        private int pos = seek(0);
+
+        ValueIterator() {
+        }
+
+        public boolean hasNext() {
+            return pos < keys.length;
+        }
+
+        public int next() throws NoSuchElementException {
+            final int result = peekNext();
+            pos = seek(pos + 1);
+            return result;
+        }
+
+        public int peekNext() throws NoSuchElementException {
+            if (! hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return values[pos];
+        }
+    }
+}
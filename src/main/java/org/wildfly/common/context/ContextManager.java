@@ -20,26 +20,42 @@ package org.wildfly.common.context;
 
 import static java.security.AccessController.doPrivileged;
 
+import java.lang.ref.WeakReference;
 import java.security.PrivilegedAction;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Supplier;
 
 import org.wildfly.common.Assert;
 
 /**
  * A context manager for a {@link Contextual} type.
+ * <p>
+ * The current context is resolved by examining, in order, the context which is active on the current thread (see
+ * {@link ContextSnapshot}), the
+ * default for the current thread's context class loader, the per-thread default, and the global default.  If
+ * {@linkplain #setDefaultCaching(boolean) default caching} is enabled, the values obtained from the default suppliers
+ * are cached until any default is changed, so that resolving a default does not call the suppliers again.
  *
  * @param <C> the public type of the contextual object
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class ContextManager<C extends Contextual<C>> implements Supplier<C> {
+    private static final int LOADER_SLOTS = 256;
+
     private final AtomicReference<Supplier<C>> globalDefaultSupplierRef = new AtomicReference<>();
     private final ConcurrentHashMap<ClassLoader, Supplier<C>> perClassLoaderDefault = new ConcurrentHashMap<>();
     private final Class<C> type;
     private final String name;
-    private final ThreadLocal<State<C>> stateRef = ThreadLocal.withInitial(State::new);
     private final ContextPermission getPermission;
+    // incremented after the global or a class loader default is changed, or default caching is toggled
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile boolean defaultCaching;
+    // a direct-mapped cache of class loader default lookups, indexed by the identity hash code of the class loader
+    private final AtomicReferenceArray<LoaderSlot<C>> loaderSlots = new AtomicReferenceArray<>(LOADER_SLOTS);
+    private volatile Resolved<C> globalCache;
 
     /**
      * Construct a new instance, with a name matching the class name of the given {@code type}.
@@ -93,6 +109,7 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
             sm.checkPermission(new ContextPermission(name, ContextPermission.STR_SET_GLOBAL_DEF_SUP));
         }
         globalDefaultSupplierRef.set(supplier);
+        version.incrementAndGet();
     }
 
     /**
@@ -110,7 +127,11 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
         }
         final AtomicReference<Supplier<C>> ref = this.globalDefaultSupplierRef;
         // try not to compute the value if not needed
-        return ref.get() == null && ref.compareAndSet(null, supplierSupplier.get());
+        if (ref.get() == null && ref.compareAndSet(null, supplierSupplier.get())) {
+            version.incrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -125,6 +146,7 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
             sm.checkPermission(new ContextPermission(name, ContextPermission.STR_GET_GLOBAL_DEF));
         }
         globalDefaultSupplierRef.set(globalDefault == null ? null : () -> globalDefault);
+        version.incrementAndGet();
     }
 
     /**
@@ -143,7 +165,7 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
         if (classLoader == null) {
             return null;
         }
-        supplier = perClassLoaderDefault.get(classLoader);
+        supplier = getLoaderSlot(classLoader, version.get()).supplier;
         return supplier == null ? null : supplier.get();
     }
 
@@ -165,6 +187,8 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
         } else {
             perClassLoaderDefault.put(classLoader, supplier);
         }
+        version.incrementAndGet();
+        clearLoaderSlot(classLoader);
     }
 
     /**
@@ -185,6 +209,8 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
         } else {
             perClassLoaderDefault.put(classLoader, () -> classLoaderDefault);
         }
+        version.incrementAndGet();
+        clearLoaderSlot(classLoader);
     }
 
     /**
@@ -198,8 +224,9 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
         if (sm != null) {
             sm.checkPermission(new ContextPermission(name, ContextPermission.STR_GET_THREAD_DEF));
         }
-        final Supplier<C> defaultSupplier = stateRef.get().defaultSupplier;
-        return defaultSupplier == null ? null : defaultSupplier.get();
+        final ContextSnapshot.ThreadContexts contexts = ContextSnapshot.getThreadContexts();
+        final State<C> state = contexts == null ? null : contexts.getState(this);
+        return state == null ? null : state.defaultSupplier.get();
     }
 
     /**
@@ -213,7 +240,7 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
         if (sm != null) {
             sm.checkPermission(new ContextPermission(name, ContextPermission.STR_SET_THREAD_DEF_SUP));
         }
-        stateRef.get().defaultSupplier = supplier;
+        setThreadDefaultSupplier0(supplier);
     }
 
     /**
@@ -227,19 +254,57 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
         if (sm != null) {
             sm.checkPermission(new ContextPermission(name, ContextPermission.STR_SET_THREAD_DEF));
         }
-        stateRef.get().defaultSupplier = threadDefault == null ? null : () -> threadDefault;
+        setThreadDefaultSupplier0(threadDefault == null ? null : () -> threadDefault);
+    }
+
+    private void setThreadDefaultSupplier0(final Supplier<C> supplier) {
+        if (supplier == null) {
+            final ContextSnapshot.ThreadContexts contexts = ContextSnapshot.getThreadContexts();
+            if (contexts != null) {
+                contexts.removeState(this);
+            }
+        } else {
+            final State<C> state = ContextSnapshot.getOrCreateThreadContexts().getOrCreateState(this);
+            state.defaultSupplier = supplier;
+            // only invalidates the cached default of this thread
+            state.stamp ++;
+        }
     }
 
     /**
-     * Get the currently active context, possibly examining the per-thread or global defaults.
+     * Determine whether default caching is enabled.
      *
-     * @return the current context, or {@code null} if none is active
+     * @return {@code true} if default caching is enabled, {@code false} otherwise
+     * @see #setDefaultCaching(boolean)
      */
-    public C get() {
+    public boolean isDefaultCaching() {
+        return defaultCaching;
+    }
+
+    /**
+     * Enable or disable default caching.  When default caching is enabled, the value returned by each default supplier
+     * is cached and reused by {@link #get()} until any global, class loader, or per-thread default is changed, so
+     * the suppliers are not called on every resolution.  This should only be enabled if the default suppliers return
+     * stable values.  Default caching is disabled by default.
+     *
+     * @param defaultCaching {@code true} to enable default caching, {@code false} to disable it
+     */
+    public void setDefaultCaching(final boolean defaultCaching) {
         final SecurityManager sm = System.getSecurityManager();
         if (sm != null) {
-            sm.checkPermission(getPermission);
+            sm.checkPermission(new ContextPermission(name, ContextPermission.STR_SET_GLOBAL_DEF_SUP));
         }
+        this.defaultCaching = defaultCaching;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Get the currently active context, possibly examining the per-thread or global defaults.
+     *
+     * @return the current context, or {@code null} if none is active
+     */
+    public C get() {
+        checkGetPermission();
         return getPrivileged();
     }
 
@@ -258,53 +323,170 @@ public final class ContextManager<C extends Contextual<C>> implements Supplier<C
     }
 
     private C getPrivileged() {
-        final State<C> state = stateRef.get();
-        C c = state.current;
-        if (c != null) return c;
-        final Thread currentThread = Thread.currentThread();
-        final SecurityManager sm = System.getSecurityManager();
-        ClassLoader classLoader;
-        if (sm != null) {
-            classLoader = doPrivileged((PrivilegedAction<ClassLoader>) currentThread::getContextClassLoader);
-        } else {
-            classLoader = currentThread.getContextClassLoader();
+        C c;
+        final ContextSnapshot.ThreadContexts contexts = ContextSnapshot.getThreadContexts();
+        State<C> state = null;
+        if (contexts != null) {
+            final ContextSnapshot snapshot = contexts.snapshot;
+            if (snapshot != null) {
+                c = snapshot.getPrivileged(this);
+                if (c != null) return c;
+            }
+            state = contexts.getState(this);
+        }
+        if (defaultCaching) {
+            return getCachedDefault(state);
         }
         Supplier<C> supplier;
-        if (classLoader != null) {
-            supplier = perClassLoaderDefault.get(classLoader);
-            if (supplier != null) {
-                c = supplier.get();
-                if (c != null) return c;
+        if (! perClassLoaderDefault.isEmpty()) {
+            final ClassLoader classLoader = getContextClassLoader();
+            if (classLoader != null) {
+                supplier = getLoaderSlot(classLoader, version.get()).supplier;
+                if (supplier != null) {
+                    c = supplier.get();
+                    if (c != null) return c;
+                }
             }
         }
-        supplier = state.defaultSupplier;
-        if (supplier != null) {
-            c = supplier.get();
+        if (state != null) {
+            c = state.defaultSupplier.get();
             if (c != null) return c;
         }
         supplier = globalDefaultSupplierRef.get();
         return supplier != null ? supplier.get() : null;
     }
 
-    C getAndSetCurrent(Contextual<C> newVal) {
+    private C getCachedDefault(final State<C> state) {
+        // read the version before any of the defaults, so that a concurrent change invalidates what we cache
+        final int version = this.version.get();
+        C c;
+        Supplier<C> supplier;
+        if (! perClassLoaderDefault.isEmpty()) {
+            final ClassLoader classLoader = getContextClassLoader();
+            if (classLoader != null) {
+                c = getLoaderSlot(classLoader, version).value;
+                if (c != null) return c;
+            }
+        }
+        if (state != null) {
+            if (state.cachedVersion == version && state.cachedStamp == state.stamp) {
+                c = state.cachedDefault;
+            } else {
+                c = state.defaultSupplier.get();
+                state.cachedDefault = c;
+                state.cachedVersion = version;
+                state.cachedStamp = state.stamp;
+            }
+            if (c != null) return c;
+        }
+        final Resolved<C> resolved = globalCache;
+        if (resolved != null && resolved.version == version) {
+            return resolved.value;
+        }
+        supplier = globalDefaultSupplierRef.get();
+        c = supplier == null ? null : supplier.get();
+        globalCache = new Resolved<>(version, c);
+        return c;
+    }
+
+    private LoaderSlot<C> getLoaderSlot(final ClassLoader classLoader, final int version) {
+        final int idx = System.identityHashCode(classLoader) & (LOADER_SLOTS - 1);
+        final AtomicReferenceArray<LoaderSlot<C>> loaderSlots = this.loaderSlots;
+        LoaderSlot<C> slot = loaderSlots.get(idx);
+        if (slot != null && slot.version == version && slot.get() == classLoader) {
+            return slot;
+        }
+        final Supplier<C> supplier = perClassLoaderDefault.get(classLoader);
+        slot = new LoaderSlot<>(classLoader, version, supplier, supplier != null && defaultCaching ? supplier.get() : null);
+        loaderSlots.set(idx, slot);
+        if (this.version.get() != version) {
+            // a default was changed while we were resolving; do not leave a stale slot behind
+            loaderSlots.compareAndSet(idx, slot, null);
+        }
+        return slot;
+    }
+
+    private void clearLoaderSlot(final ClassLoader classLoader) {
+        // do not let a stale slot keep the supplier (and possibly the class loader) reachable
+        final int idx = System.identityHashCode(classLoader) & (LOADER_SLOTS - 1);
+        final LoaderSlot<C> slot = loaderSlots.get(idx);
+        if (slot != null && slot.get() == classLoader) {
+            loaderSlots.compareAndSet(idx, slot, null);
+        }
+    }
+
+    private static ClassLoader getContextClassLoader() {
+        final Thread currentThread = Thread.currentThread();
+        if (System.getSecurityManager() != null) {
+            return doPrivileged((PrivilegedAction<ClassLoader>) currentThread::getContextClassLoader);
+        } else {
+            return currentThread.getContextClassLoader();
+        }
+    }
+
+    ContextSnapshot getAndSetCurrent(Contextual<C> newVal) {
         final C cast = type.cast(newVal);
-        final State<C> state = stateRef.get();
-        try {
-            return state.current;
-        } finally {
-            state.current = cast;
+        final ContextSnapshot old = ContextSnapshot.capture();
+        ContextSnapshot.set(old.with(this, cast));
+        return old;
+    }
+
+    void restoreCurrent(ContextSnapshot old) {
+        ContextSnapshot.set(old);
+    }
+
+    void checkGetPermission() {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(getPermission);
         }
     }
 
-    void restoreCurrent(C oldVal) {
-        stateRef.get().current = oldVal;
+    public String toString() {
+        return "ContextManager[" + name + "]";
     }
 
+    /**
+     * The per-thread default of a context manager, held in the {@link ContextSnapshot.ThreadContexts} of its thread.
+     */
     static class State<T> {
-        T current;
         Supplier<T> defaultSupplier;
+        // incremented after the per-thread default is changed
+        int stamp;
+        // the cached value of the default supplier, valid while both the stamp and the manager version match
+        T cachedDefault;
+        int cachedStamp;
+        int cachedVersion = -1;
 
         State() {
         }
     }
+
+    static final class Resolved<T> {
+        final int version;
+        final T value;
+
+        Resolved(final int version, final T value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A cached class loader default lookup.  The class loader is only weakly held, so that the slot does not keep it
+     * from being collected.
+     */
+    static final class LoaderSlot<T> extends WeakReference<ClassLoader> {
+        final int version;
+        final Supplier<T> supplier;
+        // the value of the supplier if default caching was enabled when the slot was created
+        final T value;
+
+        LoaderSlot(final ClassLoader classLoader, final int version, final Supplier<T> supplier, final T value) {
+            super(classLoader);
+            this.version = version;
+            this.supplier = supplier;
+            this.value = value;
+        }
+    }
 }
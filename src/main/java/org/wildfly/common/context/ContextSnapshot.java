@@ -0,0 +1,360 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.context;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.wildfly.common.Assert;
+
+/**
+ * An immutable snapshot of the contextual objects which are active on a thread.  All of the contexts which are
+ * selected on a thread (by way of the {@code run*} methods of {@link Contextual}) are held in a single snapshot, so
+ * capturing the active contexts and re-establishing them on another thread are both constant-time operations which
+ * do not copy any state, and a thread which has no active contexts holds no per-context state at all.
+ * <p>
+ * Snapshots only carry the active contexts; per-thread, class loader, and global defaults are resolved by each
+ * thread as usual.  The active snapshot and the per-thread defaults of all context managers share a single
+ * thread-local entry.
+ */
+public final class ContextSnapshot {
+    private static final ContextSnapshot EMPTY = new ContextSnapshot(new Object[0]);
+    private static final ThreadLocal<ThreadContexts> current = new ThreadLocal<>();
+
+    /**
+     * The context managers and their values, interleaved.  This array is never modified.
+     */
+    private final Object[] entries;
+
+    private ContextSnapshot(final Object[] entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Capture the contexts which are active on the current thread.
+     *
+     * @return the snapshot (not {@code null})
+     */
+    public static ContextSnapshot capture() {
+        final ThreadContexts contexts = current.get();
+        final ContextSnapshot snapshot = contexts == null ? null : contexts.snapshot;
+        return snapshot == null ? EMPTY : snapshot;
+    }
+
+    /**
+     * Get the empty snapshot, which has no active contexts.
+     *
+     * @return the empty snapshot (not {@code null})
+     */
+    public static ContextSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Determine whether this snapshot has no active contexts.
+     *
+     * @return {@code true} if there are no active contexts, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    /**
+     * Get the context of the given manager which is active in this snapshot.
+     *
+     * @param contextManager the context manager (must not be {@code null})
+     * @param <C> the context type
+     * @return the active context, or {@code null} if there is none
+     */
+    public <C extends Contextual<C>> C get(ContextManager<C> contextManager) {
+        Assert.checkNotNullParam("contextManager", contextManager);
+        contextManager.checkGetPermission();
+        return getPrivileged(contextManager);
+    }
+
+    /**
+     * Run the given task with the contexts of this snapshot active.  Any contexts which were active on the current
+     * thread before this method was called are not active while the task runs, and are restored afterwards.
+     *
+     * @param runnable the task to run (must not be {@code null})
+     */
+    public void run(Runnable runnable) {
+        Assert.checkNotNullParam("runnable", runnable);
+        final ContextSnapshot old = set(this);
+        try {
+            runnable.run();
+        } finally {
+            set(old);
+        }
+    }
+
+    /**
+     * Call the given task with the contexts of this snapshot active.  Any contexts which were active on the current
+     * thread before this method was called are not active while the task runs, and are restored afterwards.
+     *
+     * @param callable the task to call (must not be {@code null})
+     * @param <V> the result type
+     * @return the result of the task
+     * @throws Exception if the task throws an exception
+     */
+    public <V> V call(Callable<V> callable) throws Exception {
+        Assert.checkNotNullParam("callable", callable);
+        final ContextSnapshot old = set(this);
+        try {
+            return callable.call();
+        } finally {
+            set(old);
+        }
+    }
+
+    /**
+     * Wrap the given task so that it runs with the contexts of this snapshot active.
+     *
+     * @param runnable the task to wrap (must not be {@code null})
+     * @return the wrapped task (not {@code null})
+     */
+    public Runnable wrap(Runnable runnable) {
+        Assert.checkNotNullParam("runnable", runnable);
+        return () -> run(runnable);
+    }
+
+    /**
+     * Wrap the given task so that it is called with the contexts of this snapshot active.
+     *
+     * @param callable the task to wrap (must not be {@code null})
+     * @param <V> the result type
+     * @return the wrapped task (not {@code null})
+     */
+    public <V> Callable<V> wrap(Callable<V> callable) {
+        Assert.checkNotNullParam("callable", callable);
+        return () -> call(callable);
+    }
+
+    /**
+     * Get an executor which runs each task with the contexts that were active on the thread which submitted it.
+     *
+     * @param executor the executor to delegate to (must not be {@code null})
+     * @return the propagating executor (not {@code null})
+     */
+    public static Executor propagatingExecutor(Executor executor) {
+        Assert.checkNotNullParam("executor", executor);
+        return task -> executor.execute(capture().wrap(task));
+    }
+
+    /**
+     * Get an executor service which runs each task with the contexts that were active on the thread which submitted
+     * it.  The life cycle methods of the returned executor service are delegated to the given executor service.
+     *
+     * @param executorService the executor service to delegate to (must not be {@code null})
+     * @return the propagating executor service (not {@code null})
+     */
+    public static ExecutorService propagatingExecutorService(ExecutorService executorService) {
+        Assert.checkNotNullParam("executorService", executorService);
+        return new PropagatingExecutorService(executorService);
+    }
+
+    public String toString() {
+        final StringBuilder b = new StringBuilder("ContextSnapshot[");
+        for (int i = 0; i < entries.length; i += 2) {
+            if (i > 0) b.append(", ");
+            b.append(entries[i]).append('=').append(entries[i + 1]);
+        }
+        return b.append(']').toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    <C extends Contextual<C>> C getPrivileged(ContextManager<C> contextManager) {
+        final Object[] entries = this.entries;
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i] == contextManager) {
+                return (C) entries[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a snapshot which is the same as this one, except that the given manager has the given active context.
+     */
+    <C extends Contextual<C>> ContextSnapshot with(ContextManager<C> contextManager, C value) {
+        final Object[] entries = this.entries;
+        final int length = entries.length;
+        for (int i = 0; i < length; i += 2) {
+            if (entries[i] == contextManager) {
+                if (entries[i + 1] == value) {
+                    return this;
+                }
+                if (value == null) {
+                    if (length == 2) {
+                        return EMPTY;
+                    }
+                    final Object[] newEntries = new Object[length - 2];
+                    System.arraycopy(entries, 0, newEntries, 0, i);
+                    System.arraycopy(entries, i + 2, newEntries, i, length - i - 2);
+                    return new ContextSnapshot(newEntries);
+                }
+                final Object[] newEntries = entries.clone();
+                newEntries[i + 1] = value;
+                return new ContextSnapshot(newEntries);
+            }
+        }
+        if (value == null) {
+            return this;
+        }
+        final Object[] newEntries = Arrays.copyOf(entries, length + 2);
+        newEntries[length] = contextManager;
+        newEntries[length + 1] = value;
+        return new ContextSnapshot(newEntries);
+    }
+
+    /**
+     * Get the current thread's contexts, or {@code null} if the thread has never had an active context or a
+     * per-thread default.
+     */
+    static ThreadContexts getThreadContexts() {
+        return current.get();
+    }
+
+    /**
+     * Get the current thread's contexts, creating them if needed.
+     */
+    static ThreadContexts getOrCreateThreadContexts() {
+        ThreadContexts contexts = current.get();
+        if (contexts == null) {
+            contexts = new ThreadContexts();
+            current.set(contexts);
+        }
+        return contexts;
+    }
+
+    /**
+     * Set the current thread's snapshot, returning the previous one (which may be {@code null}).
+     */
+    static ContextSnapshot set(ContextSnapshot snapshot) {
+        if (snapshot == EMPTY) {
+            snapshot = null;
+        }
+        final ThreadContexts contexts = snapshot == null ? current.get() : getOrCreateThreadContexts();
+        if (contexts == null) {
+            return null;
+        }
+        final ContextSnapshot old = contexts.snapshot;
+        contexts.snapshot = snapshot;
+        return old;
+    }
+
+    /**
+     * The contextual state of a single thread.  It is only created when the thread first activates a context or sets
+     * a per-thread default, and it is only ever accessed by its own thread.
+     */
+    static final class ThreadContexts {
+        private static final Object[] NO_STATES = new Object[0];
+
+        /**
+         * The active snapshot, or {@code null} if no context is active.
+         */
+        ContextSnapshot snapshot;
+        /**
+         * The context managers which have a per-thread default and their states, interleaved.
+         */
+        private Object[] states = NO_STATES;
+
+        ThreadContexts() {
+        }
+
+        @SuppressWarnings("unchecked")
+        <C extends Contextual<C>> ContextManager.State<C> getState(ContextManager<C> contextManager) {
+            final Object[] states = this.states;
+            for (int i = 0; i < states.length; i += 2) {
+                if (states[i] == contextManager) {
+                    return (ContextManager.State<C>) states[i + 1];
+                }
+            }
+            return null;
+        }
+
+        <C extends Contextual<C>> ContextManager.State<C> getOrCreateState(ContextManager<C> contextManager) {
+            ContextManager.State<C> state = getState(contextManager);
+            if (state == null) {
+                state = new ContextManager.State<>();
+                final Object[] states = this.states;
+                final int length = states.length;
+                final Object[] newStates = Arrays.copyOf(states, length + 2);
+                newStates[length] = contextManager;
+                newStates[length + 1] = state;
+                this.states = newStates;
+            }
+            return state;
+        }
+
+        void removeState(ContextManager<?> contextManager) {
+            final Object[] states = this.states;
+            final int length = states.length;
+            for (int i = 0; i < length; i += 2) {
+                if (states[i] == contextManager) {
+                    if (length == 2) {
+                        this.states = NO_STATES;
+                    } else {
+                        final Object[] newStates = new Object[length - 2];
+                        System.arraycopy(states, 0, newStates, 0, i);
+                        System.arraycopy(states, i + 2, newStates, i, length - i - 2);
+                        this.states = newStates;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    static final class PropagatingExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+
+        PropagatingExecutorService(final ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        public void execute(final Runnable command) {
+            delegate.execute(capture().wrap(command));
+        }
+
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
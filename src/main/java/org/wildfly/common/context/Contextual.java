@@ -68,7 +68,7 @@ public interface Contextual<C extends Contextual<C>> {
     default void run(Runnable runnable) {
         Assert.checkNotNullParam("runnable", runnable);
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             runnable.run();
         } finally {
@@ -85,7 +85,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <R> R runAction(PrivilegedAction<R> action) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return action.run();
         } finally {
@@ -103,7 +103,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <R> R runExceptionAction(PrivilegedExceptionAction<R> action) throws PrivilegedActionException {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return action.run();
         } catch (Exception e) {
@@ -122,7 +122,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <V> V runCallable(Callable<V> callable) throws Exception {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return callable.call();
         } finally {
@@ -141,7 +141,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, U> void runBiConsumer(BiConsumer<T, U> consumer, T param1, U param2) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             consumer.accept(param1, param2);
         } finally {
@@ -162,7 +162,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, U, E extends Exception> void runExBiConsumer(ExceptionBiConsumer<T, U, E> consumer, T param1, U param2) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             consumer.accept(param1, param2);
         } finally {
@@ -179,7 +179,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T> void runConsumer(Consumer<T> consumer, T param) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             consumer.accept(param);
         } finally {
@@ -198,7 +198,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, E extends Exception> void runExConsumer(ExceptionConsumer<T, E> consumer, T param) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             consumer.accept(param);
         } finally {
@@ -219,7 +219,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, U, R> R runBiFunction(BiFunction<T, U, R> function, T param1, U param2) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(param1, param2);
         } finally {
@@ -242,7 +242,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, U, R, E extends Exception> R runExBiFunction(ExceptionBiFunction<T, U, R, E> function, T param1, U param2) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(param1, param2);
         } finally {
@@ -261,7 +261,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, R> R runFunction(Function<T, R> function, T param) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(param);
         } finally {
@@ -282,7 +282,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, R, E extends Exception> R runExFunction(ExceptionFunction<T, R, E> function, T param) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(param);
         } finally {
@@ -302,7 +302,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, U> boolean runBiPredicate(BiPredicate<T, U> predicate, T param1, U param2) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return predicate.test(param1, param2);
         } finally {
@@ -324,7 +324,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, U, E extends Exception> boolean runExBiPredicate(ExceptionBiPredicate<T, U, E> predicate, T param1, U param2) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return predicate.test(param1, param2);
         } finally {
@@ -342,7 +342,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T> boolean runPredicate(Predicate<T> predicate, T param) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return predicate.test(param);
         } finally {
@@ -362,7 +362,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, E extends Exception> boolean runExPredicate(ExceptionPredicate<T, E> predicate, T param) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return predicate.test(param);
         } finally {
@@ -380,7 +380,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T> T runIntFunction(IntFunction<T> function, int value) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(value);
         } finally {
@@ -400,7 +400,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, E extends Exception> T runExIntFunction(ExceptionIntFunction<T, E> function, int value) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(value);
         } finally {
@@ -418,7 +418,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T> T runLongFunction(LongFunction<T> function, long value) {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(value);
         } finally {
@@ -438,7 +438,7 @@ public interface Contextual<C extends Contextual<C>> {
      */
     default <T, E extends Exception> T runExLongFunction(ExceptionLongFunction<T, E> function, long value) throws E {
         final ContextManager<C> contextManager = getInstanceContextManager();
-        final C old = contextManager.getAndSetCurrent(this);
+        final ContextSnapshot old = contextManager.getAndSetCurrent(this);
         try {
             return function.apply(value);
         } finally {
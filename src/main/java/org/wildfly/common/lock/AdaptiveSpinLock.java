@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.Condition;
+
+import org.wildfly.common.Assert;
+import org.wildfly.common.cpu.ProcessorInfo;
+
+/**
+ * A reentrant lock which spins for a bounded, self-tuning period before queueing and parking the waiting thread.
+ * <p>
+ * The number of spins that a thread had to wait before the lock was released is a measure of the recent hold time of
+ * the lock.  When spinning succeeds, the spin limit moves towards twice that number; when spinning fails and the
+ * thread has to park, the limit decays.  As a result, a lock that is usually held briefly is acquired without
+ * parking, while a lock that is held for long periods (or whose owner is descheduled because there are more runnable
+ * threads than processors) quickly stops burning processor time.  Threads do not spin at all while other threads are
+ * already parked waiting for the lock, or if only one processor is available.
+ * <p>
+ * This lock is not fair: a spinning thread may acquire the lock ahead of parked threads.  Conditions and timed
+ * waiting are supported.
+ */
+final class AdaptiveSpinLock implements ExtendedLock {
+    private static final int MIN_SPINS = 16;
+    private static final int MAX_SPINS = ProcessorInfo.availableProcessors() > 1 ? 1 << 12 : 0;
+
+    private final Sync sync = new Sync();
+
+    // racy updates are harmless; this is only a hint
+    private int spinLimit = Math.min(MIN_SPINS << 2, MAX_SPINS);
+
+    AdaptiveSpinLock() {
+    }
+
+    public boolean isLocked() {
+        return sync.isLocked();
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return sync.isHeldExclusively();
+    }
+
+    public boolean isFair() {
+        return false;
+    }
+
+    public void lock() {
+        if (! sync.tryAcquire(1) && ! spin(0, Long.MAX_VALUE)) {
+            sync.acquire(1);
+        }
+    }
+
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (! sync.tryAcquire(1) && ! spin(0, Long.MAX_VALUE)) {
+            sync.acquireInterruptibly(1);
+        }
+    }
+
+    public boolean tryLock() {
+        return sync.tryAcquire(1);
+    }
+
+    public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+        Assert.checkNotNullParam("unit", unit);
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (sync.tryAcquire(1)) {
+            return true;
+        }
+        final long nanos = unit.toNanos(time);
+        if (nanos <= 0) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        if (spin(start, nanos)) {
+            return true;
+        }
+        final long remaining = nanos - (System.nanoTime() - start);
+        return remaining > 0 && sync.tryAcquireNanos(1, remaining);
+    }
+
+    public void unlock() {
+        sync.release(1);
+    }
+
+    public Condition newCondition() {
+        return sync.newCondition();
+    }
+
+    public String toString() {
+        final Thread owner = sync.getOwner();
+        return super.toString() + (owner == null ? "[Unlocked]" : "[Locked by thread " + owner.getName() + "]");
+    }
+
+    /**
+     * Spin for up to the current spin limit, trying to acquire the lock each time it appears to be free.
+     *
+     * @param start the start time of a timed acquisition, in nanoseconds
+     * @param nanos the maximum time to spin for, or {@link Long#MAX_VALUE} to spin without a time limit
+     * @return {@code true} if the lock was acquired, or {@code false} if the thread should park instead
+     */
+    private boolean spin(final long start, final long nanos) {
+        final Sync sync = this.sync;
+        final int limit = spinLimit;
+        int spins = 0;
+        for (; spins < limit; spins ++) {
+            if (sync.hasQueuedThreads()) {
+                // other threads are already parked, so the lock is too contended for spinning to pay off
+                break;
+            }
+            if (nanos != Long.MAX_VALUE && System.nanoTime() - start >= nanos) {
+                // out of time; this says nothing about the hold time, so leave the limit alone
+                LockStatistics.probe(spins, 0, 0);
+                return false;
+            }
+            JDKSpecific.onSpinWait();
+            if (! sync.isLocked() && sync.tryAcquire(1)) {
+                // move the limit towards twice the observed wait
+                final int target = Math.min(MAX_SPINS, Math.max(MIN_SPINS, spins << 1));
+                spinLimit = limit + (target - limit >> 2);
+                LockStatistics.probe(spins + 1, 0, 0);
+                return true;
+            }
+        }
+        spinLimit = Math.min(MAX_SPINS, Math.max(MIN_SPINS, limit - (limit >> 2)));
+        LockStatistics.probe(spins, 0, 1);
+        return false;
+    }
+
+    @SuppressWarnings("serial")
+    static final class Sync extends AbstractQueuedSynchronizer {
+        Sync() {
+        }
+
+        protected boolean tryAcquire(final int acquires) {
+            final Thread current = Thread.currentThread();
+            final int c = getState();
+            if (c == 0) {
+                if (compareAndSetState(0, acquires)) {
+                    setExclusiveOwnerThread(current);
+                    return true;
+                }
+            } else if (current == getExclusiveOwnerThread()) {
+                final int next = c + acquires;
+                if (next < 0) throw new Error("Maximum lock count exceeded");
+                setState(next);
+                return true;
+            }
+            return false;
+        }
+
+        protected boolean tryRelease(final int releases) {
+            if (Thread.currentThread() != getExclusiveOwnerThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            final int c = getState() - releases;
+            final boolean free = c == 0;
+            if (free) {
+                setExclusiveOwnerThread(null);
+            }
+            setState(c);
+            return free;
+        }
+
+        protected boolean isHeldExclusively() {
+            return getExclusiveOwnerThread() == Thread.currentThread();
+        }
+
+        boolean isLocked() {
+            return getState() != 0;
+        }
+
+        Thread getOwner() {
+            return getState() == 0 ? null : getExclusiveOwnerThread();
+        }
+
+        Condition newCondition() {
+            return new ConditionObject();
+        }
+    }
+}
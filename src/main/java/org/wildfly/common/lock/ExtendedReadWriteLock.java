@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * A read/write lock whose read and write locks are {@link ExtendedLock}s, and which supports optimistic reads.
+ * <p>
+ * An optimistic read does not modify the lock in any way, so many threads can perform optimistic reads concurrently
+ * without contending with one another:
+ * <pre>{@code
+    long stamp = lock.tryOptimisticRead();
+    int x = this.x, y = this.y;
+    if (! lock.validate(stamp)) {
+        lock.readLock().lock();
+        try {
+            x = this.x;
+            y = this.y;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+ * }</pre>
+ */
+public interface ExtendedReadWriteLock extends ReadWriteLock {
+
+    /**
+     * Get the read lock.  The read lock does not support conditions.
+     *
+     * @return the read lock (not {@code null})
+     */
+    ExtendedLock readLock();
+
+    /**
+     * Get the write lock.
+     *
+     * @return the write lock (not {@code null})
+     */
+    ExtendedLock writeLock();
+
+    /**
+     * Begin an optimistic read.
+     *
+     * @return a stamp to later {@linkplain #validate(long) validate}, or 0 if the write lock is currently held
+     */
+    long tryOptimisticRead();
+
+    /**
+     * Determine whether the write lock has been held since the given stamp was issued by {@link #tryOptimisticRead()}.
+     * If not, then the values read since the stamp was issued are consistent.
+     *
+     * @param stamp the stamp
+     * @return {@code true} if the stamp is non-zero and the write lock has not been held since it was issued,
+     *      {@code false} otherwise
+     */
+    boolean validate(long stamp);
+}
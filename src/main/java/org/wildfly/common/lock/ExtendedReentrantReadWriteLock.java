@@ -0,0 +1,266 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import static org.wildfly.common.lock.JDKSpecific.unsafe;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A reentrant read/write lock which supports optimistic reads by way of a sequence number which is odd only while the
+ * write lock is held.
+ */
+final class ExtendedReentrantReadWriteLock implements ExtendedReadWriteLock {
+    private static final long versionOffset;
+
+    static {
+        try {
+            versionOffset = unsafe.objectFieldOffset(ExtendedReentrantReadWriteLock.class.getDeclaredField("version"));
+        } catch (NoSuchFieldException e) {
+            throw new NoSuchFieldError(e.getMessage());
+        }
+    }
+
+    private final ReentrantReadWriteLock lock;
+    private final ReadLock readLock;
+    private final WriteLock writeLock;
+
+    // even when the write lock is not held; never zero
+    private volatile long version = 2;
+
+    ExtendedReentrantReadWriteLock(final boolean fair) {
+        lock = new ReentrantReadWriteLock(fair);
+        readLock = new ReadLock();
+        writeLock = new WriteLock();
+    }
+
+    ExtendedReentrantReadWriteLock() {
+        this(false);
+    }
+
+    public ExtendedLock readLock() {
+        return readLock;
+    }
+
+    public ExtendedLock writeLock() {
+        return writeLock;
+    }
+
+    public long tryOptimisticRead() {
+        final long version = this.version;
+        return (version & 1) == 0 ? version : 0;
+    }
+
+    public boolean validate(final long stamp) {
+        // order the caller's preceding reads before the version re-check
+        unsafe.loadFence();
+        return stamp != 0 && version == stamp;
+    }
+
+    void beginWrite() {
+        // full fence, so the version change is visible before any writes made under the lock
+        unsafe.getAndAddLong(this, versionOffset, 1);
+    }
+
+    void endWrite() {
+        // only the write lock holder modifies the version
+        version = version + 1;
+    }
+
+    final class ReadLock implements ExtendedLock {
+        private final ReentrantReadWriteLock.ReadLock delegate = lock.readLock();
+
+        ReadLock() {
+        }
+
+        public boolean isLocked() {
+            return lock.getReadLockCount() > 0;
+        }
+
+        public boolean isHeldByCurrentThread() {
+            return lock.getReadHoldCount() > 0;
+        }
+
+        public boolean isFair() {
+            return lock.isFair();
+        }
+
+        public void lock() {
+            delegate.lock();
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            delegate.lockInterruptibly();
+        }
+
+        public boolean tryLock() {
+            return delegate.tryLock();
+        }
+
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+            return delegate.tryLock(time, unit);
+        }
+
+        public void unlock() {
+            delegate.unlock();
+        }
+
+        public Condition newCondition() {
+            throw Assert.unsupported();
+        }
+    }
+
+    final class WriteLock implements ExtendedLock {
+        private final ReentrantReadWriteLock.WriteLock delegate = lock.writeLock();
+
+        WriteLock() {
+        }
+
+        public boolean isLocked() {
+            return lock.isWriteLocked();
+        }
+
+        public boolean isHeldByCurrentThread() {
+            return lock.isWriteLockedByCurrentThread();
+        }
+
+        public boolean isFair() {
+            return lock.isFair();
+        }
+
+        public void lock() {
+            delegate.lock();
+            acquired();
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            delegate.lockInterruptibly();
+            acquired();
+        }
+
+        public boolean tryLock() {
+            if (delegate.tryLock()) {
+                acquired();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+            if (delegate.tryLock(time, unit)) {
+                acquired();
+                return true;
+            }
+            return false;
+        }
+
+        public void unlock() {
+            if (lock.getWriteHoldCount() == 1) {
+                endWrite();
+            }
+            delegate.unlock();
+        }
+
+        public Condition newCondition() {
+            return new WriteCondition(delegate.newCondition());
+        }
+
+        private void acquired() {
+            if (lock.getWriteHoldCount() == 1) {
+                beginWrite();
+            }
+        }
+    }
+
+    /**
+     * A write lock condition, which keeps the version even while the write lock is released during a wait.
+     */
+    final class WriteCondition implements Condition {
+        private final Condition delegate;
+
+        WriteCondition(final Condition delegate) {
+            this.delegate = delegate;
+        }
+
+        public void await() throws InterruptedException {
+            release();
+            try {
+                delegate.await();
+            } finally {
+                beginWrite();
+            }
+        }
+
+        public void awaitUninterruptibly() {
+            release();
+            try {
+                delegate.awaitUninterruptibly();
+            } finally {
+                beginWrite();
+            }
+        }
+
+        public long awaitNanos(final long nanosTimeout) throws InterruptedException {
+            release();
+            try {
+                return delegate.awaitNanos(nanosTimeout);
+            } finally {
+                beginWrite();
+            }
+        }
+
+        public boolean await(final long time, final TimeUnit unit) throws InterruptedException {
+            release();
+            try {
+                return delegate.await(time, unit);
+            } finally {
+                beginWrite();
+            }
+        }
+
+        public boolean awaitUntil(final Date deadline) throws InterruptedException {
+            release();
+            try {
+                return delegate.awaitUntil(deadline);
+            } finally {
+                beginWrite();
+            }
+        }
+
+        public void signal() {
+            delegate.signal();
+        }
+
+        public void signalAll() {
+            delegate.signalAll();
+        }
+
+        private void release() {
+            if (! lock.isWriteLockedByCurrentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            endWrite();
+        }
+    }
+}
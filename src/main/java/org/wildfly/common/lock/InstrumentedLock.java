@@ -0,0 +1,324 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A lock which records statistics about the usage of another lock.  The current owner, the number of acquisitions,
+ * and the wait and hold times of the lock are recorded in a {@link LockStatistics} object, along with any spinning,
+ * yielding, or parking done by waiting threads when the delegate is one of the spinning locks of this package.
+ * <p>
+ * Instrumentation may be {@linkplain #setEnabled(boolean) switched} on and off at run time; while it is off, this lock
+ * does little more than delegate each call, so it may be left in place in production code.  Note that the owner of
+ * the lock is only tracked for acquisitions which were made while instrumentation was enabled.
+ * <p>
+ * All acquisition and release of the delegate lock must take place through this lock.
+ *
+ * @see Locks#instrumented(ExtendedLock)
+ */
+public final class InstrumentedLock implements ExtendedLock {
+    private final ExtendedLock delegate;
+    private final LockStatistics statistics = new LockStatistics();
+    private volatile boolean enabled = true;
+    private volatile Thread owner;
+    // these fields are only accessed by the owner
+    private int level;
+    private long holdStart;
+
+    InstrumentedLock(final ExtendedLock delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Get the statistics of this lock.
+     *
+     * @return the statistics (not {@code null})
+     */
+    public LockStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Get the thread which currently owns this lock, if known.
+     *
+     * @return the owning thread, or {@code null} if the lock is not held or the owner is not known
+     */
+    public Thread getOwner() {
+        return owner;
+    }
+
+    /**
+     * Determine whether instrumentation is enabled.
+     *
+     * @return {@code true} if instrumentation is enabled, {@code false} otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable instrumentation.  Instrumentation is enabled initially.
+     *
+     * @param enabled {@code true} to enable instrumentation, {@code false} to disable it
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isLocked() {
+        return delegate.isLocked();
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return delegate.isHeldByCurrentThread();
+    }
+
+    public boolean isFair() {
+        return delegate.isFair();
+    }
+
+    public void lock() {
+        if (! enabled) {
+            delegate.lock();
+        } else if (tryLockUninterruptibly()) {
+            acquired(0);
+        } else {
+            final LockStatistics statistics = this.statistics;
+            final long start = System.nanoTime();
+            statistics.beginAcquisition();
+            try {
+                delegate.lock();
+            } finally {
+                statistics.endAcquisition();
+            }
+            acquired(System.nanoTime() - start);
+        }
+    }
+
+    public void lockInterruptibly() throws InterruptedException {
+        if (! enabled) {
+            delegate.lockInterruptibly();
+        } else if (Thread.interrupted()) {
+            throw new InterruptedException();
+        } else if (tryLockNow()) {
+            acquired(0);
+        } else {
+            final LockStatistics statistics = this.statistics;
+            final long start = System.nanoTime();
+            statistics.beginAcquisition();
+            try {
+                delegate.lockInterruptibly();
+            } finally {
+                statistics.endAcquisition();
+            }
+            acquired(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Acquire this lock if it is available.  Unlike {@link java.util.concurrent.locks.ReentrantLock#tryLock()}, this
+     * method does not barge ahead of waiting threads if the delegate lock is fair.
+     *
+     * @return {@code true} if the lock was acquired, {@code false} otherwise
+     */
+    public boolean tryLock() {
+        if (! enabled) {
+            return tryLockUninterruptibly();
+        } else if (tryLockUninterruptibly()) {
+            acquired(0);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+        Assert.checkNotNullParam("unit", unit);
+        if (! enabled) {
+            return delegate.tryLock(time, unit);
+        } else if (Thread.interrupted()) {
+            throw new InterruptedException();
+        } else if (tryLockNow()) {
+            acquired(0);
+            return true;
+        } else {
+            final LockStatistics statistics = this.statistics;
+            final long start = System.nanoTime();
+            final boolean result;
+            statistics.beginAcquisition();
+            try {
+                result = delegate.tryLock(time, unit);
+            } finally {
+                statistics.endAcquisition();
+            }
+            if (result) {
+                acquired(System.nanoTime() - start);
+            }
+            return result;
+        }
+    }
+
+    public void unlock() {
+        final Thread current = Thread.currentThread();
+        if (owner == current && --level == 0) {
+            owner = null;
+            statistics.recordHold(System.nanoTime() - holdStart);
+        }
+        delegate.unlock();
+    }
+
+    public Condition newCondition() {
+        return new InstrumentedCondition(delegate.newCondition());
+    }
+
+    public String toString() {
+        return "InstrumentedLock[" + delegate + "]";
+    }
+
+    /**
+     * Acquire the delegate if it is available right away.  A fair delegate is acquired with a timed acquisition, which
+     * unlike {@link ExtendedLock#tryLock()} does not barge ahead of threads which are already waiting for it.
+     */
+    private boolean tryLockNow() throws InterruptedException {
+        final ExtendedLock delegate = this.delegate;
+        return delegate.isFair() ? delegate.tryLock(0, TimeUnit.NANOSECONDS) : delegate.tryLock();
+    }
+
+    private boolean tryLockUninterruptibly() {
+        final ExtendedLock delegate = this.delegate;
+        if (! delegate.isFair()) {
+            return delegate.tryLock();
+        }
+        // a pending interrupt must not prevent the acquisition
+        final boolean interrupted = Thread.interrupted();
+        try {
+            return delegate.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            // interrupted concurrently
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void acquired(final long waitTime) {
+        final LockStatistics statistics = this.statistics;
+        statistics.recordAcquisition();
+        if (waitTime != 0) {
+            statistics.recordWait(waitTime);
+        }
+        final Thread current = Thread.currentThread();
+        if (owner == current) {
+            level++;
+        } else {
+            owner = current;
+            level = 1;
+            holdStart = System.nanoTime();
+        }
+    }
+
+    final class InstrumentedCondition implements Condition {
+        private final Condition delegate;
+
+        InstrumentedCondition(final Condition delegate) {
+            this.delegate = delegate;
+        }
+
+        public void await() throws InterruptedException {
+            final int savedLevel = release();
+            try {
+                delegate.await();
+            } finally {
+                reacquire(savedLevel);
+            }
+        }
+
+        public void awaitUninterruptibly() {
+            final int savedLevel = release();
+            try {
+                delegate.awaitUninterruptibly();
+            } finally {
+                reacquire(savedLevel);
+            }
+        }
+
+        public long awaitNanos(final long nanosTimeout) throws InterruptedException {
+            final int savedLevel = release();
+            try {
+                return delegate.awaitNanos(nanosTimeout);
+            } finally {
+                reacquire(savedLevel);
+            }
+        }
+
+        public boolean await(final long time, final TimeUnit unit) throws InterruptedException {
+            final int savedLevel = release();
+            try {
+                return delegate.await(time, unit);
+            } finally {
+                reacquire(savedLevel);
+            }
+        }
+
+        public boolean awaitUntil(final Date deadline) throws InterruptedException {
+            final int savedLevel = release();
+            try {
+                return delegate.awaitUntil(deadline);
+            } finally {
+                reacquire(savedLevel);
+            }
+        }
+
+        public void signal() {
+            delegate.signal();
+        }
+
+        public void signalAll() {
+            delegate.signalAll();
+        }
+
+        private int release() {
+            if (owner != Thread.currentThread()) {
+                // not instrumented; the delegate checks the actual lock state
+                return 0;
+            }
+            final int savedLevel = level;
+            level = 0;
+            owner = null;
+            statistics.recordHold(System.nanoTime() - holdStart);
+            return savedLevel;
+        }
+
+        private void reacquire(final int savedLevel) {
+            if (savedLevel != 0) {
+                owner = Thread.currentThread();
+                level = savedLevel;
+                holdStart = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics gathered by an {@link InstrumentedLock}.  All values are cumulative since the statistics were created or
+ * last {@linkplain #reset() reset}, and are updated concurrently, so a set of values read from this object is not
+ * necessarily a consistent snapshot.
+ * <p>
+ * Wait and hold times are recorded in histograms with {@value #BUCKETS} buckets of exponentially increasing size.
+ * Bucket 0 counts durations of zero nanoseconds, and bucket {@code n} counts durations of at least
+ * 2<sup>n-1</sup> and less than 2<sup>n</sup> nanoseconds; see {@link #getBucket(long)}.
+ * <p>
+ * Spin, yield, and park counts are only reported by the spinning lock implementations of this package (such as
+ * {@linkplain Locks#spinLock() spin locks}); for other locks, only the wait time of contended acquisitions is known.
+ */
+public final class LockStatistics {
+
+    /**
+     * The number of buckets in each histogram.
+     */
+    public static final int BUCKETS = 64;
+
+    // the number of threads waiting for an instrumented lock, which keeps the probe cheap while there are none
+    private static final AtomicInteger waitingThreads = new AtomicInteger();
+    private static final ThreadLocal<LockStatistics> currentAcquisition = new ThreadLocal<>();
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder spins = new LongAdder();
+    private final LongAdder yields = new LongAdder();
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder totalWaitTime = new LongAdder();
+    private final LongAdder totalHoldTime = new LongAdder();
+    private final AtomicLongArray waitTimes = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray holdTimes = new AtomicLongArray(BUCKETS);
+
+    LockStatistics() {
+    }
+
+    /**
+     * Get the number of times the lock was acquired, including reentrant acquisitions.
+     *
+     * @return the number of acquisitions
+     */
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Get the number of acquisitions which found the lock held by another thread and had to wait.
+     *
+     * @return the number of contended acquisitions
+     */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+
+    /**
+     * Get the total number of spin iterations performed by waiting threads.
+     *
+     * @return the number of spin iterations
+     */
+    public long getSpins() {
+        return spins.sum();
+    }
+
+    /**
+     * Get the total number of times that waiting threads yielded the processor.
+     *
+     * @return the number of yields
+     */
+    public long getYields() {
+        return yields.sum();
+    }
+
+    /**
+     * Get the number of times that a waiting thread stopped spinning and fell back to parking.
+     *
+     * @return the number of parks
+     */
+    public long getParks() {
+        return parks.sum();
+    }
+
+    /**
+     * Get the total time that threads spent waiting to acquire the lock, in nanoseconds.
+     *
+     * @return the total wait time
+     */
+    public long getTotalWaitTime() {
+        return totalWaitTime.sum();
+    }
+
+    /**
+     * Get the total time that the lock was held, in nanoseconds.  Reentrant acquisitions are not counted separately.
+     *
+     * @return the total hold time
+     */
+    public long getTotalHoldTime() {
+        return totalHoldTime.sum();
+    }
+
+    /**
+     * Get the histogram of the wait times of contended acquisitions.
+     *
+     * @return a new array of {@value #BUCKETS} bucket counts
+     */
+    public long[] getWaitTimeHistogram() {
+        return toArray(waitTimes);
+    }
+
+    /**
+     * Get the histogram of lock hold times.
+     *
+     * @return a new array of {@value #BUCKETS} bucket counts
+     */
+    public long[] getHoldTimeHistogram() {
+        return toArray(holdTimes);
+    }
+
+    /**
+     * Reset all statistics to zero.  Updates which are concurrent with the reset may or may not be retained.
+     */
+    public void reset() {
+        acquisitions.reset();
+        contendedAcquisitions.reset();
+        spins.reset();
+        yields.reset();
+        parks.reset();
+        totalWaitTime.reset();
+        totalHoldTime.reset();
+        for (int i = 0; i < BUCKETS; i ++) {
+            waitTimes.set(i, 0);
+            holdTimes.set(i, 0);
+        }
+    }
+
+    /**
+     * Get the histogram bucket of the given duration.
+     *
+     * @param nanos the duration in nanoseconds
+     * @return the bucket index, from 0 to {@code BUCKETS - 1}
+     */
+    public static int getBucket(long nanos) {
+        return nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    public String toString() {
+        return String.format("LockStatistics[acquisitions=%d, contended=%d, spins=%d, yields=%d, parks=%d, wait=%dns, hold=%dns]",
+            getAcquisitions(), getContendedAcquisitions(), getSpins(), getYields(), getParks(), getTotalWaitTime(), getTotalHoldTime());
+    }
+
+    void recordAcquisition() {
+        acquisitions.increment();
+    }
+
+    void recordWait(final long nanos) {
+        contendedAcquisitions.increment();
+        totalWaitTime.add(nanos);
+        waitTimes.incrementAndGet(getBucket(nanos));
+    }
+
+    void recordHold(final long nanos) {
+        totalHoldTime.add(nanos);
+        holdTimes.incrementAndGet(getBucket(nanos));
+    }
+
+    void beginAcquisition() {
+        waitingThreads.incrementAndGet();
+        currentAcquisition.set(this);
+    }
+
+    void endAcquisition() {
+        currentAcquisition.remove();
+        waitingThreads.decrementAndGet();
+    }
+
+    /**
+     * Report the spinning done by a waiting thread to the statistics of the instrumented lock that it is acquiring, if
+     * any.  Lock implementations call this only after waiting, so this costs no more than a volatile read unless
+     * some thread is waiting for an instrumented lock at the same time.
+     *
+     * @param spins the number of spin iterations
+     * @param yields the number of yields
+     * @param parks the number of times the thread fell back to parking
+     */
+    static void probe(final int spins, final int yields, final int parks) {
+        if (waitingThreads.get() != 0) {
+            final LockStatistics statistics = currentAcquisition.get();
+            if (statistics != null) {
+                statistics.spins.add(spins);
+                statistics.yields.add(yields);
+                statistics.parks.add(parks);
+            }
+        }
+    }
+
+    private static long[] toArray(final AtomicLongArray array) {
+        final long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i ++) {
+            result[i] = array.get(i);
+        }
+        return result;
+    }
+}
@@ -18,6 +18,9 @@
 
 package org.wildfly.common.lock;
 
+import java.util.function.Supplier;
+
+import org.wildfly.common.Assert;
 import org.wildfly.common.annotation.NotNull;
 
 /**
@@ -54,4 +57,73 @@ public final class Locks {
     public static @NotNull ExtendedLock spinLock() {
         return new SpinLock();
     }
+
+    /**
+     * Create an adaptive spin lock, which spins for a bounded, self-tuning period before parking the waiting thread.
+     * Unlike a plain {@linkplain #spinLock() spin lock}, such a lock does not consume processor time indefinitely while
+     * waiting, and it supports conditions and timed waiting.
+     *
+     * @return the adaptive spin lock
+     */
+    public static @NotNull ExtendedLock adaptiveSpinLock() {
+        return new AdaptiveSpinLock();
+    }
+
+    /**
+     * Create a fair queue-based spin lock.  Waiting threads are queued and each spins on its own queue node, so
+     * the lock is granted in FIFO order and waiters do not contend on a single memory location.
+     *
+     * @return the queue spin lock
+     */
+    public static @NotNull ExtendedLock queueSpinLock() {
+        return new QueueSpinLock();
+    }
+
+    /**
+     * Create a reentrant read/write lock with the default fairness policy.  The lock supports
+     * {@linkplain ExtendedReadWriteLock#tryOptimisticRead() optimistic reads}, which do not contend with other readers.
+     *
+     * @return the read/write lock
+     */
+    public static @NotNull ExtendedReadWriteLock readWriteLock() {
+        return new ExtendedReentrantReadWriteLock();
+    }
+
+    /**
+     * Create a reentrant read/write lock with the given fairness policy.  The lock supports
+     * {@linkplain ExtendedReadWriteLock#tryOptimisticRead() optimistic reads}, which do not contend with other readers.
+     *
+     * @param fair the fairness policy
+     * @return the read/write lock
+     */
+    public static @NotNull ExtendedReadWriteLock readWriteLock(boolean fair) {
+        return new ExtendedReentrantReadWriteLock(fair);
+    }
+
+    /**
+     * Create a striped lock, consisting of a fixed number of locks which are selected by key or hash code.
+     *
+     * @param stripes the minimum number of stripes (must be at least 1); the actual number is rounded up to a power of
+     *      two
+     * @param lockSupplier the supplier of the lock for each stripe (must not be {@code null})
+     * @return the striped lock
+     * @see StripedLock
+     */
+    public static @NotNull StripedLock striped(int stripes, @NotNull Supplier<? extends ExtendedLock> lockSupplier) {
+        Assert.checkMinimumParameter("stripes", 1, stripes);
+        Assert.checkNotNullParam("lockSupplier", lockSupplier);
+        return new StripedLock(stripes, lockSupplier);
+    }
+
+    /**
+     * Create an instrumented lock, which records statistics about the usage of the given lock.
+     *
+     * @param delegate the lock to instrument (must not be {@code null})
+     * @return the instrumented lock
+     * @see InstrumentedLock
+     */
+    public static @NotNull InstrumentedLock instrumented(@NotNull ExtendedLock delegate) {
+        Assert.checkNotNullParam("delegate", delegate);
+        return new InstrumentedLock(delegate);
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import static org.wildfly.common.lock.JDKSpecific.unsafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A fair queue-based spin lock (an MCS lock).  Each thread waiting for the lock joins a queue and spins on a flag in
+ * its own cache-line-padded queue node, so waiters do not contend on a single shared location, and the lock is handed
+ * to waiters in strict FIFO order.  Like {@link SpinLock}, a waiter degrades to yielding after a certain number of
+ * spins.
+ * <p>
+ * The uninterruptible {@link #lock()} method joins the queue.  Because a queued waiter cannot leave the queue, the
+ * interruptible and timed acquisition methods do not join the queue; instead they poll for the lock to become free,
+ * and therefore do not observe the fairness policy.
+ */
+final class QueueSpinLock implements ExtendedLock {
+    private static final long tailOffset;
+
+    static {
+        try {
+            tailOffset = unsafe.objectFieldOffset(QueueSpinLock.class.getDeclaredField("tail"));
+        } catch (NoSuchFieldException e) {
+            throw new NoSuchFieldError(e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private volatile Node tail;
+
+    // only accessed by the lock owner
+    private Thread owner;
+    private Node ownerNode;
+    private int level;
+
+    QueueSpinLock() {
+    }
+
+    public boolean isLocked() {
+        return tail != null;
+    }
+
+    public boolean isHeldByCurrentThread() {
+        // a thread always observes its own write; any other value is not the current thread
+        return owner == Thread.currentThread();
+    }
+
+    public boolean isFair() {
+        return true;
+    }
+
+    public void lock() {
+        final Thread current = Thread.currentThread();
+        if (owner == current) {
+            level++;
+            return;
+        }
+        final Node node = new Node();
+        final Node pred = (Node) unsafe.getAndSetObject(this, tailOffset, node);
+        if (pred != null) {
+            node.waiting = true;
+            pred.next = node;
+            int spins = 0;
+            int yields = 0;
+            while (node.waiting) {
+                if (spins >= 1_000) {
+                    Thread.yield();
+                    yields++;
+                } else {
+                    JDKSpecific.onSpinWait();
+                    spins++;
+                }
+            }
+            LockStatistics.probe(spins, yields, 0);
+        }
+        acquired(current, node);
+    }
+
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        int spins = 0;
+        int yields = 0;
+        while (! tryLock()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else if (spins >= 1_000) {
+                Thread.yield();
+                yields++;
+            } else {
+                JDKSpecific.onSpinWait();
+                spins++;
+            }
+        }
+        if (spins != 0) LockStatistics.probe(spins, yields, 0);
+    }
+
+    public boolean tryLock() {
+        final Thread current = Thread.currentThread();
+        if (owner == current) {
+            level++;
+            return true;
+        }
+        if (tail == null) {
+            final Node node = new Node();
+            if (unsafe.compareAndSwapObject(this, tailOffset, null, node)) {
+                acquired(current, node);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+        Assert.checkNotNullParam("unit", unit);
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (tryLock()) {
+            return true;
+        }
+        final long nanos = unit.toNanos(time);
+        if (nanos <= 0) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        int spins = 0;
+        int yields = 0;
+        for (;;) {
+            if (tryLock()) {
+                LockStatistics.probe(spins, yields, 0);
+                return true;
+            } else if (System.nanoTime() - start >= nanos) {
+                LockStatistics.probe(spins, yields, 0);
+                return false;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else if (spins >= 1_000) {
+                Thread.yield();
+                yields++;
+            } else {
+                JDKSpecific.onSpinWait();
+                spins++;
+            }
+        }
+    }
+
+    private void acquired(final Thread current, final Node node) {
+        owner = current;
+        ownerNode = node;
+        level = 1;
+    }
+
+    public void unlock() {
+        if (owner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+        if (--level == 0) {
+            release();
+        }
+    }
+
+    private void release() {
+        final Node node = ownerNode;
+        owner = null;
+        ownerNode = null;
+        Node next = node.next;
+        if (next == null) {
+            if (unsafe.compareAndSwapObject(this, tailOffset, node, null)) {
+                // no waiters
+                return;
+            }
+            // a waiter is in the process of linking itself in
+            while ((next = node.next) == null) {
+                JDKSpecific.onSpinWait();
+            }
+        }
+        next.waiting = false;
+    }
+
+    public Condition newCondition() {
+        return new LockCondition();
+    }
+
+    final class LockCondition extends SpinCondition {
+        LockCondition() {
+        }
+
+        boolean isHeldByCurrentThread() {
+            return QueueSpinLock.this.isHeldByCurrentThread();
+        }
+
+        int releaseFully() {
+            final int savedLevel = level;
+            level = 0;
+            release();
+            return savedLevel;
+        }
+
+        void reacquire(final int savedLevel) {
+            lock();
+            level = savedLevel;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    static class NodePadding0 {
+        long p00, p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    static class NodeFields extends NodePadding0 {
+        volatile boolean waiting;
+        volatile Node next;
+    }
+
+    /**
+     * A queue node, padded on both sides so that the flag that its waiter spins on does not share a cache line with
+     * any other node.
+     */
+    @SuppressWarnings("unused")
+    static final class Node extends NodeFields {
+        long p10, p11, p12, p13, p14, p15, p16, p17;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A condition for a spinning lock.  A waiting thread releases the lock completely and parks until it is signalled, so
+ * it does not spin while waiting.  The wait queue is only accessed while the lock is held.
+ */
+abstract class SpinCondition implements Condition {
+    private Waiter head;
+    private Waiter tail;
+
+    SpinCondition() {
+    }
+
+    /**
+     * Determine if the lock is held by the current thread.
+     *
+     * @return {@code true} if the lock is held by the current thread, {@code false} otherwise
+     */
+    abstract boolean isHeldByCurrentThread();
+
+    /**
+     * Release the lock held by the current thread completely.
+     *
+     * @return the hold count to restore on reacquisition
+     */
+    abstract int releaseFully();
+
+    /**
+     * Reacquire the lock uninterruptibly, restoring the given hold count.
+     *
+     * @param savedLevel the hold count to restore
+     */
+    abstract void reacquire(int savedLevel);
+
+    public void await() throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (doAwait(-1L, true) == Long.MIN_VALUE) throw new InterruptedException();
+    }
+
+    public void awaitUninterruptibly() {
+        doAwait(-1L, false);
+    }
+
+    public long awaitNanos(final long nanosTimeout) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        final long res = doAwait(Math.max(0L, nanosTimeout), true);
+        if (res == Long.MIN_VALUE) throw new InterruptedException();
+        return res;
+    }
+
+    public boolean await(final long time, final TimeUnit unit) throws InterruptedException {
+        Assert.checkNotNullParam("unit", unit);
+        return awaitNanos(unit.toNanos(time)) > 0;
+    }
+
+    public boolean awaitUntil(final Date deadline) throws InterruptedException {
+        Assert.checkNotNullParam("deadline", deadline);
+        return await(deadline.getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait for a signal.
+     *
+     * @param nanos the time to wait, or -1 to wait indefinitely
+     * @param interruptible {@code true} to stop waiting if the thread is interrupted
+     * @return the estimated remaining time (&gt; 0 if signalled), or {@link Long#MIN_VALUE} if interrupted
+     */
+    private long doAwait(final long nanos, final boolean interruptible) {
+        if (! isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+        final Waiter waiter = new Waiter(Thread.currentThread());
+        if (tail == null) {
+            head = tail = waiter;
+        } else {
+            tail.next = waiter;
+            tail = waiter;
+        }
+        final int savedLevel = releaseFully();
+        final long start = System.nanoTime();
+        long remaining = nanos;
+        boolean interrupted = false;
+        while (! waiter.signalled) {
+            if (nanos == -1L) {
+                LockSupport.park(this);
+            } else {
+                remaining = nanos - (System.nanoTime() - start);
+                if (remaining <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            if (Thread.interrupted()) {
+                interrupted = true;
+                if (interruptible) {
+                    break;
+                }
+            }
+        }
+        reacquire(savedLevel);
+        final boolean signalled = waiter.signalled;
+        if (! signalled) {
+            remove(waiter);
+        }
+        if (interrupted) {
+            if (interruptible && ! signalled) {
+                return Long.MIN_VALUE;
+            }
+            Thread.currentThread().interrupt();
+        }
+        if (nanos == -1L) {
+            return 1L;
+        }
+        return signalled ? Math.max(1L, nanos - (System.nanoTime() - start)) : Math.min(0L, remaining);
+    }
+
+    private void remove(final Waiter waiter) {
+        Waiter prev = null;
+        Waiter cur = head;
+        while (cur != null) {
+            if (cur == waiter) {
+                if (prev == null) {
+                    head = cur.next;
+                } else {
+                    prev.next = cur.next;
+                }
+                if (tail == cur) {
+                    tail = prev;
+                }
+                return;
+            }
+            prev = cur;
+            cur = cur.next;
+        }
+    }
+
+    public void signal() {
+        if (! isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+        final Waiter waiter = head;
+        if (waiter != null) {
+            head = waiter.next;
+            if (head == null) {
+                tail = null;
+            }
+            waiter.signal();
+        }
+    }
+
+    public void signalAll() {
+        if (! isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+        Waiter waiter = head;
+        head = tail = null;
+        while (waiter != null) {
+            final Waiter next = waiter.next;
+            waiter.signal();
+            waiter = next;
+        }
+    }
+
+    static final class Waiter {
+        final Thread thread;
+        volatile boolean signalled;
+        Waiter next;
+
+        Waiter(final Thread thread) {
+            this.thread = thread;
+        }
+
+        void signal() {
+            signalled = true;
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -29,8 +29,9 @@ import org.wildfly.common.Assert;
  * A spin lock.  Such locks are designed to only be held for a <em>very</em> short time - for example, long enough to compare and
  * swap two fields.  The lock may degrade to yielding the thread after a certain number of spins if it is held for too long.
  * <p>
- * Spin locks do not support conditions, and they do not support timed waiting.  Normally only the uninterruptible {@code lock},
- * {@code tryLock}, and {@code unlock} methods should be used to control the lock.
+ * Timed acquisition spins (and yields) until the lock is acquired or the deadline passes.  Conditions are supported; a
+ * thread waiting on a condition releases the lock completely and parks until it is signalled, so it does not spin while
+ * waiting.  Normally the lock should still only be held for a very short time.
  */
 public class SpinLock implements ExtendedLock {
     private static final long ownerOffset;
@@ -86,6 +87,7 @@ public class SpinLock implements ExtendedLock {
     public void lock() {
         Thread owner;
         int spins = 0;
+        int yields = 0;
         for (;;) {
             owner = this.owner;
             if (owner == Thread.currentThread()) {
@@ -93,9 +95,11 @@ public class SpinLock implements ExtendedLock {
                 return;
             } else if (owner == null && unsafe.compareAndSwapObject(this, ownerOffset, null, Thread.currentThread())) {
                 level = 1;
+                if (spins != 0) LockStatistics.probe(spins, yields, 0);
                 return;
             } else if (spins >= 1_000) {
                 Thread.yield();
+                yields++;
             } else {
                 JDKSpecific.onSpinWait();
                 spins++;
@@ -111,6 +115,7 @@ public class SpinLock implements ExtendedLock {
     public void lockInterruptibly() throws InterruptedException {
         Thread owner;
         int spins = 0;
+        int yields = 0;
         for (;;) {
             if (Thread.interrupted()) throw new InterruptedException();
             owner = this.owner;
@@ -119,9 +124,11 @@ public class SpinLock implements ExtendedLock {
                 return;
             } else if (owner == null && unsafe.compareAndSwapObject(this, ownerOffset, null, Thread.currentThread())) {
                 level = 1;
+                if (spins != 0) LockStatistics.probe(spins, yields, 0);
                 return;
             } else if (spins >= 1_000) {
                 Thread.yield();
+                yields++;
             } else {
                 JDKSpecific.onSpinWait();
                 spins++;
@@ -162,24 +169,73 @@ public class SpinLock implements ExtendedLock {
     }
 
     /**
-     * Unsupported.
+     * Try to acquire the lock by spinning until it is held, the given time elapses, or the thread is interrupted.
      *
-     * @param time ignored
-     * @param unit ignored
-     * @return nothing
-     * @throws UnsupportedOperationException always
+     * @param time the maximum time to wait
+     * @param unit the time unit (must not be {@code null})
+     * @return {@code true} if the lock was acquired, {@code false} if the time elapsed first
+     * @throws InterruptedException if the thread is interrupted before the lock can be acquired
      */
-    public boolean tryLock(final long time, final TimeUnit unit) throws UnsupportedOperationException {
-        throw Assert.unsupported();
+    public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+        Assert.checkNotNullParam("unit", unit);
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (tryLock()) {
+            return true;
+        }
+        final long nanos = unit.toNanos(time);
+        if (nanos <= 0) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        int spins = 0;
+        int yields = 0;
+        for (;;) {
+            if (owner == null && unsafe.compareAndSwapObject(this, ownerOffset, null, Thread.currentThread())) {
+                level = 1;
+                LockStatistics.probe(spins, yields, 0);
+                return true;
+            } else if (System.nanoTime() - start >= nanos) {
+                LockStatistics.probe(spins, yields, 0);
+                return false;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else if (spins >= 1_000) {
+                Thread.yield();
+                yields++;
+            } else {
+                JDKSpecific.onSpinWait();
+                spins++;
+            }
+        }
     }
 
     /**
-     * Unsupported.
+     * Create a new condition for this lock.
      *
-     * @return nothing
-     * @throws UnsupportedOperationException always
+     * @return the new condition
      */
-    public Condition newCondition() throws UnsupportedOperationException {
-        throw Assert.unsupported();
+    public Condition newCondition() {
+        return new LockCondition();
+    }
+
+    final class LockCondition extends SpinCondition {
+        LockCondition() {
+        }
+
+        boolean isHeldByCurrentThread() {
+            return SpinLock.this.isHeldByCurrentThread();
+        }
+
+        int releaseFully() {
+            final int savedLevel = level;
+            level = 0;
+            owner = null;
+            return savedLevel;
+        }
+
+        void reacquire(final int savedLevel) {
+            lock();
+            level = savedLevel;
+        }
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import java.util.function.Supplier;
+
+import org.wildfly.common.Assert;
+import org.wildfly.common.cpu.CacheInfo;
+import org.wildfly.common.math.HashMath;
+
+/**
+ * A fixed set of locks (stripes), where each key or hash code is consistently mapped to one of the stripes.  This
+ * allows a hash-partitioned structure to be guarded by several locks rather than a single one.
+ * <p>
+ * To reduce false sharing between stripes, a padding object of at least one
+ * {@linkplain CacheInfo#getSmallestDataCacheLineSize() data cache line} is allocated between each stripe's lock.  Since
+ * the JVM controls object placement, this is a best-effort measure.
+ *
+ * @see Locks#striped(int, Supplier)
+ */
+public final class StripedLock {
+    private static final int CACHE_LINE_SIZE;
+
+    static {
+        final int size = CacheInfo.getSmallestDataCacheLineSize();
+        // fall back to a common size if unknown
+        CACHE_LINE_SIZE = size == 0 ? 64 : size;
+    }
+
+    private final ExtendedLock[] locks;
+    @SuppressWarnings({ "unused", "MismatchedReadAndWriteOfArray" })
+    private final long[][] padding;
+    private final int mask;
+
+    StripedLock(final int stripes, final Supplier<? extends ExtendedLock> lockSupplier) {
+        final int cnt = HashMath.roundToPowerOfTwo(stripes);
+        final ExtendedLock[] locks = new ExtendedLock[cnt];
+        final long[][] padding = new long[cnt][];
+        // two lines, to also defeat adjacent-line prefetching
+        final int padLongs = (CACHE_LINE_SIZE << 1) >> 3;
+        for (int i = 0; i < cnt; i ++) {
+            locks[i] = Assert.checkNotNullArrayParam("lockSupplier.get()", i, lockSupplier.get());
+            padding[i] = new long[padLongs];
+        }
+        this.locks = locks;
+        this.padding = padding;
+        mask = cnt - 1;
+    }
+
+    /**
+     * Get the number of stripes.  This is the requested number of stripes rounded up to a power of two.
+     *
+     * @return the number of stripes
+     */
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    /**
+     * Get the lock of the stripe with the given index.
+     *
+     * @param index the stripe index, from zero (inclusive) to the {@linkplain #getStripeCount() stripe count}
+     *      (exclusive)
+     * @return the lock (not {@code null})
+     */
+    public ExtendedLock getStripe(int index) {
+        return locks[index];
+    }
+
+    /**
+     * Get the lock of the stripe for the given hash code.
+     *
+     * @param hashCode the hash code
+     * @return the lock (not {@code null})
+     */
+    public ExtendedLock getLock(int hashCode) {
+        // spread the high bits down, since only the low bits select the stripe
+        final int h = hashCode ^ hashCode >>> 16;
+        return locks[h & mask];
+    }
+
+    /**
+     * Get the lock of the stripe for the given key, using its {@linkplain Object#hashCode() hash code}.
+     *
+     * @param key the key (must not be {@code null})
+     * @return the lock (not {@code null})
+     */
+    public ExtendedLock getLock(Object key) {
+        Assert.checkNotNullParam("key", key);
+        return getLock(key.hashCode());
+    }
+}
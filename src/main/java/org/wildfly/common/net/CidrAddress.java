@@ -305,11 +305,11 @@ public final class CidrAddress implements Serializable, Comparable<CidrAddress>
             i++;
             commonPrefix -= 8;
         }
-        while (commonPrefix > 0) {
-            final int bit = 1 << commonPrefix;
-            res = signum((cachedBytes[i] & bit) - (otherBytes[i] & bit));
+        if (commonPrefix > 0) {
+            // compare the remaining leading bits of the last partial byte
+            final int mask = 0xff << 8 - commonPrefix & 0xff;
+            res = signum((cachedBytes[i] & mask) - (otherBytes[i] & mask));
             if (res != 0) return res;
-            commonPrefix--;
         }
         // common prefix is a match; now the shortest mask wins
         return signum(netmaskBits - otherNetmaskBits);
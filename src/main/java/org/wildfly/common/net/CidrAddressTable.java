@@ -20,18 +20,33 @@ package org.wildfly.common.net;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.wildfly.common.Assert;
+import org.wildfly.common._private.CommonMessages;
 
 /**
  * A table for mapping IP addresses to objects using {@link CidrAddress} instances for matching.
+ * <p>
+ * The table is copy-on-write: each modification publishes a new immutable snapshot consisting of the sorted mappings
+ * along with a path-compressed trie over their ranges.  Lookups use the trie, so the cost of finding the longest
+ * matching prefix depends only on the length of the address, not on the number of mappings in the table.
+ * <p>
+ * Since each individual modification copies the table, large numbers of changes should be applied using
+ * {@link #builder()}, {@link #putAll(Map)}, or {@link #update(Consumer)}, which sort and link all of the changes in a
+ * single pass and publish them atomically.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -40,26 +55,310 @@ public final class CidrAddressTable<T> implements Iterable<CidrAddressTable.Mapp
     @SuppressWarnings("rawtypes")
     private static final Mapping[] NO_MAPPINGS = new Mapping[0];
 
-    private final AtomicReference<Mapping<T>[]> mappingsRef;
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static final Snapshot EMPTY = new Snapshot<>(NO_MAPPINGS, CidrTrie.EMPTY);
+
+    private static final Object REMOVED = new Object();
+
+    /**
+     * The number of addresses below which a parallel batch lookup is not split any further.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private final AtomicReference<Snapshot<T>> snapshotRef;
 
     public CidrAddressTable() {
-        mappingsRef = new AtomicReference<>(empty());
+        snapshotRef = new AtomicReference<>(emptySnapshot());
     }
 
-    private CidrAddressTable(Mapping<T>[] mappings) {
-        mappingsRef = new AtomicReference<>(mappings);
+    private CidrAddressTable(Snapshot<T> snapshot) {
+        snapshotRef = new AtomicReference<>(snapshot);
     }
 
     public T getOrDefault(InetAddress address, T defVal) {
         Assert.checkNotNullParam("address", address);
-        final Mapping<T> mapping = doGet(mappingsRef.get(), address.getAddress(), address instanceof Inet4Address ? 32 : 128, Inet.getScopeId(address));
-        return mapping == null ? defVal : mapping.value;
+        if (address instanceof Inet4Address) {
+            return getOrDefault(CidrTrie.ipv4Bits((Inet4Address) address), defVal);
+        }
+        final byte[] bytes = address.getAddress();
+        return getOrDefault(CidrTrie.hiBits(bytes), CidrTrie.loBits(bytes), Inet.getScopeId(address), defVal);
     }
 
     public T get(InetAddress address) {
         return getOrDefault(address, null);
     }
 
+    /**
+     * Get the value of the most specific mapping for the given IPv4 address.  This method does not allocate.
+     *
+     * @param ipv4 the IPv4 address bits, in network order (most significant byte first)
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public T getOrDefault(int ipv4, T defVal) {
+        final Snapshot<T> snapshot = snapshotRef.get();
+        final int idx = snapshot.trie.find4(ipv4);
+        return idx == -1 ? defVal : snapshot.mappings[idx].value;
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given IPv4 address.  This method does not allocate.
+     *
+     * @param ipv4 the IPv4 address bits, in network order (most significant byte first)
+     * @return the matching value, or {@code null} if there is no match
+     */
+    public T get(int ipv4) {
+        return getOrDefault(ipv4, null);
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given IPv6 address.  This method does not allocate.
+     *
+     * @param hi the upper 64 bits of the IPv6 address
+     * @param lo the lower 64 bits of the IPv6 address
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public T getOrDefault(long hi, long lo, int scopeId, T defVal) {
+        final Snapshot<T> snapshot = snapshotRef.get();
+        final int idx = snapshot.trie.find6(hi, lo, scopeId);
+        return idx == -1 ? defVal : snapshot.mappings[idx].value;
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given IPv6 address.  This method does not allocate.
+     *
+     * @param hi the upper 64 bits of the IPv6 address
+     * @param lo the lower 64 bits of the IPv6 address
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @return the matching value, or {@code null} if there is no match
+     */
+    public T get(long hi, long lo, int scopeId) {
+        return getOrDefault(hi, lo, scopeId, null);
+    }
+
+    /**
+     * Get the value of the most specific mapping for the address whose bytes are found in the given array.  This
+     * method does not allocate.
+     *
+     * @param bytes the array containing the address bytes (must not be {@code null})
+     * @param offs the offset of the address bytes in the array
+     * @param len the length of the address, which must be 4 for IPv4 or 16 for IPv6
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public T getOrDefault(byte[] bytes, int offs, int len, int scopeId, T defVal) {
+        Assert.checkNotNullParam("bytes", bytes);
+        Assert.checkArrayBounds(bytes, offs, len);
+        if (len == 4) {
+            return getOrDefault(CidrTrie.getInt(bytes, offs), defVal);
+        } else if (len == 16) {
+            return getOrDefault(CidrTrie.getLong(bytes, offs), CidrTrie.getLong(bytes, offs + 8), scopeId, defVal);
+        } else {
+            throw CommonMessages.msg.invalidAddressBytes(len);
+        }
+    }
+
+    /**
+     * Get the value of the most specific mapping for the address whose bytes are found in the given array.  This
+     * method does not allocate.
+     *
+     * @param bytes the array containing the address bytes (must not be {@code null})
+     * @param offs the offset of the address bytes in the array
+     * @param len the length of the address, which must be 4 for IPv4 or 16 for IPv6
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @return the matching value, or {@code null} if there is no match
+     */
+    public T get(byte[] bytes, int offs, int len, int scopeId) {
+        return getOrDefault(bytes, offs, len, scopeId, null);
+    }
+
+    /**
+     * Get the values of the most specific mappings for each of the given IPv4 addresses.  All of the lookups are
+     * performed against the same snapshot of the table.
+     *
+     * @param ipv4s the IPv4 address bits, in network order (must not be {@code null})
+     * @param results the array to store the results into, which must be at least as long as {@code ipv4s}; an entry
+     *      is set to {@code null} if there is no match (must not be {@code null})
+     */
+    public void getAll(int[] ipv4s, T[] results) {
+        Assert.checkNotNullParam("ipv4s", ipv4s);
+        Assert.checkNotNullParam("results", results);
+        Assert.checkArrayBounds(results, 0, ipv4s.length);
+        getAll4(snapshotRef.get(), ipv4s, results, 0, ipv4s.length);
+    }
+
+    /**
+     * Get the values of the most specific mappings for each of the given IPv6 addresses.  All of the lookups are
+     * performed against the same snapshot of the table.
+     *
+     * @param ipv6s the IPv6 addresses, each given as a pair of values holding the upper and lower 64 bits of the
+     *      address (must not be {@code null})
+     * @param results the array to store the results into, which must be at least half as long as {@code ipv6s}; an
+     *      entry is set to {@code null} if there is no match (must not be {@code null})
+     */
+    public void getAll(long[] ipv6s, T[] results) {
+        Assert.checkNotNullParam("ipv6s", ipv6s);
+        Assert.checkNotNullParam("results", results);
+        Assert.checkArrayBounds(results, 0, ipv6s.length >> 1);
+        getAll6(snapshotRef.get(), ipv6s, results, 0, ipv6s.length >> 1);
+    }
+
+    /**
+     * Get the values of the most specific mappings for each of the addresses packed into the given buffer.  The
+     * addresses are read starting at the buffer's position and are assumed to be in network order, regardless of the
+     * byte order of the buffer.  The buffer's position is advanced past each address that is read.  All of the lookups
+     * are performed against the same snapshot of the table.
+     *
+     * @param packedAddrs the buffer containing the packed addresses (must not be {@code null})
+     * @param addressLength the length of each address, which must be 4 for IPv4 or 16 for IPv6
+     * @param results the array to store the results into; an entry is set to {@code null} if there is no
+     *      match (must not be {@code null})
+     * @return the number of addresses that were looked up, which is limited by the number of complete addresses
+     *      remaining in the buffer and by the length of {@code results}
+     */
+    public int getAll(ByteBuffer packedAddrs, int addressLength, T[] results) {
+        Assert.checkNotNullParam("packedAddrs", packedAddrs);
+        Assert.checkNotNullParam("results", results);
+        if (addressLength != 4 && addressLength != 16) {
+            throw CommonMessages.msg.invalidAddressBytes(addressLength);
+        }
+        final Snapshot<T> snapshot = snapshotRef.get();
+        final Mapping<T>[] mappings = snapshot.mappings;
+        final CidrTrie trie = snapshot.trie;
+        final boolean swap = packedAddrs.order() != ByteOrder.BIG_ENDIAN;
+        final int cnt = Math.min(packedAddrs.remaining() / addressLength, results.length);
+        int idx;
+        if (addressLength == 4) {
+            for (int i = 0; i < cnt; i ++) {
+                final int ipv4 = packedAddrs.getInt();
+                idx = trie.find4(swap ? Integer.reverseBytes(ipv4) : ipv4);
+                results[i] = idx == -1 ? null : mappings[idx].value;
+            }
+        } else {
+            for (int i = 0; i < cnt; i ++) {
+                final long hi = packedAddrs.getLong();
+                final long lo = packedAddrs.getLong();
+                idx = swap ? trie.find6(Long.reverseBytes(hi), Long.reverseBytes(lo), 0) : trie.find6(hi, lo, 0);
+                results[i] = idx == -1 ? null : mappings[idx].value;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * Get the values of the most specific mappings for each of the given IPv4 addresses, splitting large batches
+     * across a fork-join pool.  If called from within a fork-join pool, that pool is used; otherwise, the
+     * {@linkplain java.util.concurrent.ForkJoinPool#commonPool() common pool} is used.  All of the lookups are
+     * performed against the same snapshot of the table.
+     *
+     * @param ipv4s the IPv4 address bits, in network order (must not be {@code null})
+     * @param results the array to store the results into, which must be at least as long as {@code ipv4s}; an entry
+     *      is set to {@code null} if there is no match (must not be {@code null})
+     */
+    public void parallelGetAll(int[] ipv4s, T[] results) {
+        Assert.checkNotNullParam("ipv4s", ipv4s);
+        Assert.checkNotNullParam("results", results);
+        Assert.checkArrayBounds(results, 0, ipv4s.length);
+        new BatchLookup<>(snapshotRef.get(), ipv4s, null, results, 0, ipv4s.length).invoke();
+    }
+
+    /**
+     * Get the values of the most specific mappings for each of the given IPv6 addresses, splitting large batches
+     * across a fork-join pool.  If called from within a fork-join pool, that pool is used; otherwise, the
+     * {@linkplain java.util.concurrent.ForkJoinPool#commonPool() common pool} is used.  All of the lookups are
+     * performed against the same snapshot of the table.
+     *
+     * @param ipv6s the IPv6 addresses, each given as a pair of values holding the upper and lower 64 bits of the
+     *      address (must not be {@code null})
+     * @param results the array to store the results into, which must be at least half as long as {@code ipv6s}; an
+     *      entry is set to {@code null} if there is no match (must not be {@code null})
+     */
+    public void parallelGetAll(long[] ipv6s, T[] results) {
+        Assert.checkNotNullParam("ipv6s", ipv6s);
+        Assert.checkNotNullParam("results", results);
+        Assert.checkArrayBounds(results, 0, ipv6s.length >> 1);
+        new BatchLookup<>(snapshotRef.get(), null, ipv6s, results, 0, ipv6s.length >> 1).invoke();
+    }
+
+    static <T> void getAll4(Snapshot<T> snapshot, int[] ipv4s, T[] results, int from, int to) {
+        final Mapping<T>[] mappings = snapshot.mappings;
+        final CidrTrie trie = snapshot.trie;
+        int idx;
+        for (int i = from; i < to; i ++) {
+            idx = trie.find4(ipv4s[i]);
+            results[i] = idx == -1 ? null : mappings[idx].value;
+        }
+    }
+
+    static <T> void getAll6(Snapshot<T> snapshot, long[] ipv6s, T[] results, int from, int to) {
+        final Mapping<T>[] mappings = snapshot.mappings;
+        final CidrTrie trie = snapshot.trie;
+        int idx;
+        for (int i = from; i < to; i ++) {
+            idx = trie.find6(ipv6s[i << 1], ipv6s[(i << 1) + 1], 0);
+            results[i] = idx == -1 ? null : mappings[idx].value;
+        }
+    }
+
+    /**
+     * Create a new builder for a table.  The builder collects mappings and then creates the table in a single pass,
+     * which is much less expensive than adding the mappings to a table one at a time.
+     *
+     * @param <T> the value type
+     * @return the new builder (not {@code null})
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Put all of the given mappings into this table.  The new mappings are published atomically, so concurrent readers
+     * will observe either none or all of them.  Existing mappings for the same blocks are replaced.
+     *
+     * @param map the mappings to add (must not be {@code null})
+     */
+    public void putAll(Map<CidrAddress, ? extends T> map) {
+        Assert.checkNotNullParam("map", map);
+        if (map.isEmpty()) {
+            return;
+        }
+        update(mutator -> mutator.putAll(map));
+    }
+
+    /**
+     * Apply a batch of changes to this table.  The given action is called with a mutator which records the changes to
+     * make; once the action returns, all of the changes are applied in a single pass and published atomically, so
+     * concurrent readers will observe either the table as it was before the update or the table with all of the
+     * changes applied.
+     * <p>
+     * If the table is concurrently modified while the update is being applied, the recorded changes are discarded and
+     * the action is called again with a new mutator, so the action should not have side effects other than those on
+     * the mutator.  The mutator may not be used after the action returns.
+     *
+     * @param action the update action (must not be {@code null})
+     */
+    public void update(Consumer<? super Mutator<T>> action) {
+        Assert.checkNotNullParam("action", action);
+        final AtomicReference<Snapshot<T>> snapshotRef = this.snapshotRef;
+        Snapshot<T> oldSnapshot, newSnapshot;
+        do {
+            oldSnapshot = snapshotRef.get();
+            final MutatorImpl<T> mutator = new MutatorImpl<>();
+            try {
+                action.accept(mutator);
+            } finally {
+                mutator.done = true;
+            }
+            if (! mutator.cleared && mutator.changes.isEmpty()) {
+                return;
+            }
+            newSnapshot = Snapshot.of(merge(mutator.cleared ? empty() : oldSnapshot.mappings, mutator.changes));
+        } while (! snapshotRef.compareAndSet(oldSnapshot, newSnapshot));
+    }
+
     public T put(CidrAddress block, T value) {
         Assert.checkNotNullParam("block", block);
         Assert.checkNotNullParam("value", value);
@@ -97,14 +396,16 @@ public final class CidrAddressTable<T> implements Iterable<CidrAddressTable.Mapp
 
     private T doPut(final CidrAddress block, final T expect, final T update, final boolean putIfAbsent, final boolean putIfPresent) {
         assert putIfAbsent || putIfPresent;
-        final AtomicReference<Mapping<T>[]> mappingsRef = this.mappingsRef;
+        final AtomicReference<Snapshot<T>> snapshotRef = this.snapshotRef;
         final byte[] bytes = block.getNetworkAddress().getAddress();
+        Snapshot<T> oldSnapshot;
         Mapping<T>[] oldVal, newVal;
         int idx;
         T existing;
         boolean matchesExpected;
         do {
-            oldVal = mappingsRef.get();
+            oldSnapshot = snapshotRef.get();
+            oldVal = oldSnapshot.mappings;
             idx = doFind(oldVal, bytes, block.getNetmaskBits(), block.getScopeId());
             if (idx < 0) {
                 if (! putIfAbsent) {
@@ -169,33 +470,103 @@ public final class CidrAddressTable<T> implements Iterable<CidrAddressTable.Mapp
                     }
                 }
             }
-        } while (! mappingsRef.compareAndSet(oldVal, newVal));
+        } while (! snapshotRef.compareAndSet(oldSnapshot, Snapshot.of(newVal)));
         return matchesExpected ? expect : existing;
     }
 
+    /**
+     * Merge a set of sorted changes into a sorted mapping array, producing a new array with freshly linked parents.
+     *
+     * @param mappings the original mappings
+     * @param changes the changes, where a value of {@link #REMOVED} indicates a removal
+     * @param <T> the value type
+     * @return the new mappings
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Mapping<T>[] merge(Mapping<T>[] mappings, TreeMap<CidrAddress, Object> changes) {
+        final int oldLen = mappings.length;
+        final CidrAddress[] ranges = new CidrAddress[oldLen + changes.size()];
+        final Object[] values = new Object[ranges.length];
+        int cnt = 0;
+        int i = 0;
+        for (Map.Entry<CidrAddress, Object> change : changes.entrySet()) {
+            final CidrAddress range = change.getKey();
+            int cmp = 1;
+            // copy over any existing mappings which sort before this change
+            while (i < oldLen && (cmp = mappings[i].range.compareTo(range)) < 0) {
+                ranges[cnt] = mappings[i].range;
+                values[cnt ++] = mappings[i ++].value;
+            }
+            if (cmp == 0) {
+                // replaced or removed
+                i ++;
+            }
+            final Object value = change.getValue();
+            if (value != REMOVED) {
+                ranges[cnt] = range;
+                values[cnt ++] = value;
+            }
+        }
+        while (i < oldLen) {
+            ranges[cnt] = mappings[i].range;
+            values[cnt ++] = mappings[i ++].value;
+        }
+        if (cnt == 0) {
+            return empty();
+        }
+        // link in one pass; in sorted order, every enclosing range precedes the ranges that it encloses
+        final Mapping<T>[] newVal = newArray(cnt);
+        final Mapping<T>[] stack = newArray(cnt);
+        int sp = 0;
+        for (int j = 0; j < cnt; j ++) {
+            final CidrAddress range = ranges[j];
+            while (sp > 0 && ! stack[sp - 1].range.matches(range)) {
+                sp --;
+            }
+            final Mapping<T> mapping = new Mapping<>(range, (T) values[j], sp == 0 ? null : stack[sp - 1]);
+            newVal[j] = mapping;
+            stack[sp ++] = mapping;
+        }
+        return newVal;
+    }
+
     @SuppressWarnings("unchecked")
     private static <T> Mapping<T>[] empty() {
         return NO_MAPPINGS;
     }
 
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static <T> Mapping<T>[] newArray(int length) {
+        return new Mapping[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Snapshot<T> emptySnapshot() {
+        return EMPTY;
+    }
+
     public void clear() {
-        mappingsRef.set(empty());
+        snapshotRef.set(emptySnapshot());
     }
 
     public int size() {
-        return mappingsRef.get().length;
+        return snapshotRef.get().mappings.length;
     }
 
     public boolean isEmpty() {
         return size() == 0;
     }
 
+    Snapshot<T> getSnapshot() {
+        return snapshotRef.get();
+    }
+
     public CidrAddressTable<T> clone() {
-        return new CidrAddressTable<>(mappingsRef.get());
+        return new CidrAddressTable<>(snapshotRef.get());
     }
 
     public Iterator<Mapping<T>> iterator() {
-        final Mapping<T>[] mappings = mappingsRef.get();
+        final Mapping<T>[] mappings = snapshotRef.get().mappings;
         return new Iterator<Mapping<T>>() {
             int idx;
 
@@ -211,13 +582,13 @@ public final class CidrAddressTable<T> implements Iterable<CidrAddressTable.Mapp
     }
 
     public Spliterator<Mapping<T>> spliterator() {
-        final Mapping<T>[] mappings = mappingsRef.get();
+        final Mapping<T>[] mappings = snapshotRef.get().mappings;
         return Spliterators.spliterator(mappings, Spliterator.IMMUTABLE | Spliterator.ORDERED);
     }
 
     public String toString() {
         StringBuilder b = new StringBuilder();
-        final Mapping<T>[] mappings = mappingsRef.get();
+        final Mapping<T>[] mappings = snapshotRef.get().mappings;
         b.append(mappings.length).append(" mappings");
         for (final Mapping<T> mapping : mappings) {
             b.append(System.lineSeparator()).append('\t').append(mapping.range);
@@ -281,6 +652,183 @@ public final class CidrAddressTable<T> implements Iterable<CidrAddressTable.Mapp
         return null;
     }
 
+    /**
+     * A mutator which records changes to be applied to a table in a single batch.
+     *
+     * @param <T> the value type
+     * @see #update(Consumer)
+     */
+    public interface Mutator<T> {
+        /**
+         * Record the addition of a mapping, replacing any existing mapping for the same block.
+         *
+         * @param block the address block (must not be {@code null})
+         * @param value the value (must not be {@code null})
+         */
+        void put(CidrAddress block, T value);
+
+        /**
+         * Record the removal of the mapping for exactly the given block, if there is one.
+         *
+         * @param block the address block (must not be {@code null})
+         */
+        void removeExact(CidrAddress block);
+
+        /**
+         * Record the removal of all existing mappings.  Changes recorded after this call are still applied.
+         */
+        void clear();
+
+        /**
+         * Record the addition of all of the given mappings, replacing any existing mappings for the same blocks.
+         *
+         * @param map the mappings to add (must not be {@code null})
+         */
+        default void putAll(Map<CidrAddress, ? extends T> map) {
+            Assert.checkNotNullParam("map", map);
+            map.forEach(this::put);
+        }
+    }
+
+    static final class MutatorImpl<T> implements Mutator<T> {
+        final TreeMap<CidrAddress, Object> changes = new TreeMap<>();
+        boolean cleared;
+        boolean done;
+
+        public void put(final CidrAddress block, final T value) {
+            Assert.checkNotNullParam("block", block);
+            Assert.checkNotNullParam("value", value);
+            checkDone();
+            changes.put(block, value);
+        }
+
+        public void removeExact(final CidrAddress block) {
+            Assert.checkNotNullParam("block", block);
+            checkDone();
+            if (cleared) {
+                changes.remove(block);
+            } else {
+                changes.put(block, REMOVED);
+            }
+        }
+
+        public void clear() {
+            checkDone();
+            changes.clear();
+            cleared = true;
+        }
+
+        private void checkDone() {
+            if (done) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * A builder for a table.
+     *
+     * @param <T> the value type
+     * @see #builder()
+     */
+    public static final class Builder<T> {
+        private final TreeMap<CidrAddress, Object> mappings = new TreeMap<>();
+
+        Builder() {
+        }
+
+        /**
+         * Add a mapping, replacing any mapping previously added for the same block.
+         *
+         * @param block the address block (must not be {@code null})
+         * @param value the value (must not be {@code null})
+         * @return this builder
+         */
+        public Builder<T> put(CidrAddress block, T value) {
+            Assert.checkNotNullParam("block", block);
+            Assert.checkNotNullParam("value", value);
+            mappings.put(block, value);
+            return this;
+        }
+
+        /**
+         * Add all of the given mappings, replacing any mappings previously added for the same blocks.
+         *
+         * @param map the mappings to add (must not be {@code null})
+         * @return this builder
+         */
+        public Builder<T> putAll(Map<CidrAddress, ? extends T> map) {
+            Assert.checkNotNullParam("map", map);
+            map.forEach(this::put);
+            return this;
+        }
+
+        /**
+         * Build a new table containing the mappings added so far.  The builder may continue to be used afterwards.
+         *
+         * @return the new table (not {@code null})
+         */
+        public CidrAddressTable<T> build() {
+            return new CidrAddressTable<>(Snapshot.of(merge(CidrAddressTable.<T>empty(), mappings)));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class BatchLookup<T> extends RecursiveAction {
+        private final Snapshot<T> snapshot;
+        private final int[] ipv4s;
+        private final long[] ipv6s;
+        private final T[] results;
+        private final int from;
+        private final int to;
+
+        BatchLookup(final Snapshot<T> snapshot, final int[] ipv4s, final long[] ipv6s, final T[] results, final int from, final int to) {
+            this.snapshot = snapshot;
+            this.ipv4s = ipv4s;
+            this.ipv6s = ipv6s;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            final int from = this.from;
+            final int to = this.to;
+            if (to - from <= PARALLEL_THRESHOLD) {
+                if (ipv4s != null) {
+                    getAll4(snapshot, ipv4s, results, from, to);
+                } else {
+                    getAll6(snapshot, ipv6s, results, from, to);
+                }
+            } else {
+                final int mid = from + to >>> 1;
+                invokeAll(new BatchLookup<>(snapshot, ipv4s, ipv6s, results, from, mid), new BatchLookup<>(snapshot, ipv4s, ipv6s, results, mid, to));
+            }
+        }
+    }
+
+    static final class Snapshot<T> {
+        final Mapping<T>[] mappings;
+        final CidrTrie trie;
+
+        Snapshot(final Mapping<T>[] mappings, final CidrTrie trie) {
+            this.mappings = mappings;
+            this.trie = trie;
+        }
+
+        static <T> Snapshot<T> of(Mapping<T>[] mappings) {
+            final int length = mappings.length;
+            if (length == 0) {
+                return emptySnapshot();
+            }
+            final CidrAddress[] ranges = new CidrAddress[length];
+            for (int i = 0; i < length; i ++) {
+                ranges[i] = mappings[i].range;
+            }
+            return new Snapshot<>(mappings, CidrTrie.build(ranges));
+        }
+    }
+
     /**
      * A single mapping in the table.
      *
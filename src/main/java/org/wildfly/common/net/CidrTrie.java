@@ -0,0 +1,470 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.net;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+import java.net.Inet4Address;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.wildfly.common._private.CommonMessages;
+
+/**
+ * An immutable path-compressed binary trie used to find the longest matching prefix of an address.  The trie is
+ * stored as a set of parallel arrays indexed by node number; each node holds the (masked) prefix bits that lead to it,
+ * so a single comparison verifies an entire compressed edge.  A lookup visits at most one node per distinct prefix
+ * length on the path to the address, independently of the total number of entries.
+ * <p>
+ * Entries are identified by their index in the array of ranges that the trie was built from, which allows the owner
+ * to keep its values in whatever form suits it.  Addresses are represented as two {@code long} values holding the
+ * high and low 64 bits of the address; IPv4 addresses occupy the upper 32 bits of the high value.
+ * <p>
+ * A trie can also be written to a flat, big-endian binary image (see {@link #writeImage(int[])}) which can be
+ * searched in place, for example from a memory-mapped file.  The image consists of a header of six {@code int}
+ * values (magic, version, entry count, node count, IPv4 root, IPv6 root), followed by each node (key high bits, key
+ * low bits, prefix length, zero child, one child, first entry), followed by each entry (next entry, scope ID, value).
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+final class CidrTrie {
+    static final int IMAGE_MAGIC = 0x43_49_44_52; // "CIDR"
+    static final int IMAGE_VERSION = 1;
+    static final int IMAGE_HEADER_SIZE = 6 * 4;
+    static final int IMAGE_NODE_SIZE = 2 * 8 + 4 * 4;
+    static final int IMAGE_ENTRY_SIZE = 3 * 4;
+
+    private static final int[] NO_INTS = new int[0];
+    private static final long[] NO_LONGS = new long[0];
+
+    static final CidrTrie EMPTY = new CidrTrie(NO_LONGS, NO_LONGS, NO_INTS, NO_INTS, NO_INTS, NO_INTS, NO_INTS, NO_INTS, -1, -1);
+
+    // per node
+    private final long[] keyHi;
+    private final long[] keyLo;
+    private final int[] bits;
+    private final int[] zero;
+    private final int[] one;
+    private final int[] entry;
+    // per entry
+    private final int[] next;
+    private final int[] scope;
+
+    private final int root4;
+    private final int root6;
+
+    private CidrTrie(final long[] keyHi, final long[] keyLo, final int[] bits, final int[] zero, final int[] one, final int[] entry, final int[] next, final int[] scope, final int root4, final int root6) {
+        this.keyHi = keyHi;
+        this.keyLo = keyLo;
+        this.bits = bits;
+        this.zero = zero;
+        this.one = one;
+        this.entry = entry;
+        this.next = next;
+        this.scope = scope;
+        this.root4 = root4;
+        this.root6 = root6;
+    }
+
+    /**
+     * Build a trie from the given ranges.
+     *
+     * @param ranges the ranges (must not be {@code null} and must not contain duplicates)
+     * @return the trie (not {@code null})
+     */
+    static CidrTrie build(CidrAddress[] ranges) {
+        final int cnt = ranges.length;
+        if (cnt == 0) {
+            return EMPTY;
+        }
+        return new Builder(cnt).addAll(ranges).build();
+    }
+
+    /**
+     * Find the entry with the longest prefix matching the given IPv4 address.
+     *
+     * @param address the address bits
+     * @return the entry index, or -1 if there is no match
+     */
+    int find4(int address) {
+        return find(root4, (address & 0xffff_ffffL) << 32, 0L, 32, 0);
+    }
+
+    /**
+     * Find the entry with the longest prefix matching the given IPv6 address.
+     *
+     * @param hi the upper 64 bits of the address
+     * @param lo the lower 64 bits of the address
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @return the entry index, or -1 if there is no match
+     */
+    int find6(long hi, long lo, int scopeId) {
+        return find(root6, hi, lo, 128, scopeId);
+    }
+
+    private int find(int node, final long hi, final long lo, final int maxBits, final int scopeId) {
+        final long[] keyHi = this.keyHi;
+        final long[] keyLo = this.keyLo;
+        final int[] bits = this.bits;
+        final int[] entry = this.entry;
+        int best = -1;
+        while (node != -1) {
+            final int nodeBits = bits[node];
+            if (commonPrefix(keyHi[node], keyLo[node], hi, lo) < nodeBits) {
+                break;
+            }
+            final int e = entry[node];
+            if (e != -1) {
+                final int match = matchScope(e, scopeId);
+                if (match != -1) {
+                    best = match;
+                }
+            }
+            if (nodeBits == maxBits) {
+                break;
+            }
+            node = bit(hi, lo, nodeBits) == 0 ? zero[node] : one[node];
+        }
+        return best;
+    }
+
+    private int matchScope(int e, final int scopeId) {
+        int wildcard = -1;
+        do {
+            final int entryScope = scope[e];
+            if (entryScope == scopeId) {
+                return e;
+            } else if (entryScope == 0) {
+                wildcard = e;
+            }
+            e = next[e];
+        } while (e != -1);
+        return wildcard;
+    }
+
+    /**
+     * Write this trie to a new binary image.
+     *
+     * @param values the value for each entry
+     * @return the image buffer, positioned at zero
+     */
+    ByteBuffer writeImage(int[] values) {
+        final int nodeCnt = bits.length;
+        final int entryCnt = next.length;
+        final ByteBuffer buf = ByteBuffer.allocate(IMAGE_HEADER_SIZE + nodeCnt * IMAGE_NODE_SIZE + entryCnt * IMAGE_ENTRY_SIZE);
+        buf.putInt(IMAGE_MAGIC).putInt(IMAGE_VERSION).putInt(entryCnt).putInt(nodeCnt).putInt(root4).putInt(root6);
+        for (int i = 0; i < nodeCnt; i ++) {
+            buf.putLong(keyHi[i]).putLong(keyLo[i]).putInt(bits[i]).putInt(zero[i]).putInt(one[i]).putInt(entry[i]);
+        }
+        for (int i = 0; i < entryCnt; i ++) {
+            buf.putInt(next[i]).putInt(scope[i]).putInt(values[i]);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Verify that the given buffer holds a well-formed image, so that searching it cannot fail or fail to terminate.
+     *
+     * @param image the image (big-endian, starting at position zero)
+     * @return the number of entries in the image
+     * @throws IllegalArgumentException if the image is not valid
+     */
+    static int checkImage(ByteBuffer image) {
+        final int capacity = image.capacity();
+        if (capacity < IMAGE_HEADER_SIZE || image.getInt(0) != IMAGE_MAGIC || image.getInt(4) != IMAGE_VERSION) {
+            throw CommonMessages.msg.invalidCidrTableImage();
+        }
+        final int entryCnt = image.getInt(8);
+        final int nodeCnt = image.getInt(12);
+        if (entryCnt < 0 || nodeCnt < 0 || IMAGE_HEADER_SIZE + (long) nodeCnt * IMAGE_NODE_SIZE + (long) entryCnt * IMAGE_ENTRY_SIZE > capacity) {
+            throw CommonMessages.msg.invalidCidrTableImage();
+        }
+        checkImageNode(image, image.getInt(16), nodeCnt, -1);
+        checkImageNode(image, image.getInt(20), nodeCnt, -1);
+        final int entries = IMAGE_HEADER_SIZE + nodeCnt * IMAGE_NODE_SIZE;
+        for (int i = 0; i < nodeCnt; i ++) {
+            final int offs = IMAGE_HEADER_SIZE + i * IMAGE_NODE_SIZE;
+            final int nodeBits = image.getInt(offs + 16);
+            if (nodeBits < 0 || nodeBits > 128) {
+                throw CommonMessages.msg.invalidCidrTableImage();
+            }
+            // prefix lengths must strictly increase towards the leaves
+            checkImageNode(image, image.getInt(offs + 20), nodeCnt, nodeBits);
+            checkImageNode(image, image.getInt(offs + 24), nodeCnt, nodeBits);
+            // entry chains must end, so each link must move backward
+            int e = image.getInt(offs + 28);
+            while (e != -1) {
+                if (e < 0 || e >= entryCnt) {
+                    throw CommonMessages.msg.invalidCidrTableImage();
+                }
+                final int n = image.getInt(entries + e * IMAGE_ENTRY_SIZE);
+                if (n != -1 && n >= e) {
+                    throw CommonMessages.msg.invalidCidrTableImage();
+                }
+                e = n;
+            }
+        }
+        return entryCnt;
+    }
+
+    private static void checkImageNode(ByteBuffer image, int node, int nodeCnt, int parentBits) {
+        if (node == -1) {
+            return;
+        }
+        if (node < 0 || node >= nodeCnt || image.getInt(IMAGE_HEADER_SIZE + node * IMAGE_NODE_SIZE + 16) <= parentBits) {
+            throw CommonMessages.msg.invalidCidrTableImage();
+        }
+    }
+
+    /**
+     * Find the value of the entry with the longest prefix matching the given address in a checked image.
+     *
+     * @param image the image
+     * @param v4 {@code true} to search for an IPv4 address, {@code false} to search for an IPv6 address
+     * @param hi the upper 64 bits of the address
+     * @param lo the lower 64 bits of the address
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    static int findInImage(ByteBuffer image, boolean v4, long hi, long lo, int scopeId, int defVal) {
+        final int entries = IMAGE_HEADER_SIZE + image.getInt(12) * IMAGE_NODE_SIZE;
+        final int maxBits = v4 ? 32 : 128;
+        int node = image.getInt(v4 ? 16 : 20);
+        int best = -1;
+        while (node != -1) {
+            final int offs = IMAGE_HEADER_SIZE + node * IMAGE_NODE_SIZE;
+            final int nodeBits = image.getInt(offs + 16);
+            if (commonPrefix(image.getLong(offs), image.getLong(offs + 8), hi, lo) < nodeBits) {
+                break;
+            }
+            int e = image.getInt(offs + 28);
+            int match = -1;
+            while (e != -1) {
+                final int entryScope = image.getInt(entries + e * IMAGE_ENTRY_SIZE + 4);
+                if (entryScope == scopeId) {
+                    match = e;
+                    break;
+                } else if (entryScope == 0) {
+                    match = e;
+                }
+                e = image.getInt(entries + e * IMAGE_ENTRY_SIZE);
+            }
+            if (match != -1) {
+                best = match;
+            }
+            if (nodeBits == maxBits) {
+                break;
+            }
+            node = image.getInt(offs + (bit(hi, lo, nodeBits) == 0 ? 20 : 24));
+        }
+        return best == -1 ? defVal : image.getInt(entries + best * IMAGE_ENTRY_SIZE + 8);
+    }
+
+    static int commonPrefix(long hi1, long lo1, long hi2, long lo2) {
+        final long x = hi1 ^ hi2;
+        return x != 0 ? numberOfLeadingZeros(x) : 64 + numberOfLeadingZeros(lo1 ^ lo2);
+    }
+
+    static int bit(long hi, long lo, int pos) {
+        return pos < 64 ? (int) (hi >>> 63 - pos) & 1 : (int) (lo >>> 127 - pos) & 1;
+    }
+
+    /**
+     * Get the bits of the given IPv4 address without cloning its address bytes.  This relies on
+     * {@link Inet4Address#hashCode()} returning the address bits, most significant byte first, which is how the JDK
+     * implements it but is not part of its specification; {@code CidrTrieTest} checks it against
+     * {@link Inet4Address#getAddress()} so that a JDK which differs fails the build.
+     *
+     * @param address the address (must not be {@code null})
+     * @return the address bits
+     */
+    static int ipv4Bits(Inet4Address address) {
+        return address.hashCode();
+    }
+
+    static long hiBits(byte[] bytes) {
+        if (bytes.length == 4) {
+            return (getInt(bytes, 0) & 0xffff_ffffL) << 32;
+        }
+        return getLong(bytes, 0);
+    }
+
+    static long loBits(byte[] bytes) {
+        if (bytes.length == 4) {
+            return 0;
+        }
+        return getLong(bytes, 8);
+    }
+
+    static long getLong(byte[] bytes, int offs) {
+        return (long) getInt(bytes, offs) << 32 | getInt(bytes, offs + 4) & 0xffff_ffffL;
+    }
+
+    static int getInt(byte[] bytes, int offs) {
+        return (bytes[offs] & 0xff) << 24 | (bytes[offs + 1] & 0xff) << 16 | (bytes[offs + 2] & 0xff) << 8 | bytes[offs + 3] & 0xff;
+    }
+
+    static final class Builder {
+        private final long[] keyHi;
+        private final long[] keyLo;
+        private final int[] bits;
+        private final int[] zero;
+        private final int[] one;
+        private final int[] entry;
+        private final int[] next;
+        private final int[] scope;
+        private int nodeCnt;
+        private int root4 = -1;
+        private int root6 = -1;
+
+        Builder(int entryCnt) {
+            // each insertion adds at most two nodes
+            final int nodeCap = entryCnt << 1;
+            keyHi = new long[nodeCap];
+            keyLo = new long[nodeCap];
+            bits = new int[nodeCap];
+            zero = new int[nodeCap];
+            one = new int[nodeCap];
+            entry = new int[nodeCap];
+            next = new int[entryCnt];
+            scope = new int[entryCnt];
+        }
+
+        Builder addAll(CidrAddress[] ranges) {
+            for (int i = 0; i < ranges.length; i ++) {
+                add(i, ranges[i]);
+            }
+            return this;
+        }
+
+        void add(final int idx, final CidrAddress range) {
+            final byte[] bytes = range.getNetworkAddress().getAddress();
+            final long hi = hiBits(bytes);
+            final long lo = loBits(bytes);
+            final int plen = range.getNetmaskBits();
+            final boolean v4 = bytes.length == 4;
+            scope[idx] = range.getScopeId();
+            next[idx] = -1;
+            int node = v4 ? root4 : root6;
+            if (node == -1) {
+                setRoot(v4, newNode(hi, lo, plen, idx));
+                return;
+            }
+            int parent = -1;
+            int parentBit = 0;
+            for (;;) {
+                final int nodeBits = bits[node];
+                final int common = Math.min(commonPrefix(keyHi[node], keyLo[node], hi, lo), Math.min(nodeBits, plen));
+                if (common == nodeBits) {
+                    if (plen == nodeBits) {
+                        // same prefix (differing scope)
+                        next[idx] = entry[node];
+                        entry[node] = idx;
+                        return;
+                    }
+                    final int b = bit(hi, lo, nodeBits);
+                    final int child = b == 0 ? zero[node] : one[node];
+                    if (child == -1) {
+                        setChild(node, b, newNode(hi, lo, plen, idx));
+                        return;
+                    }
+                    parent = node;
+                    parentBit = b;
+                    node = child;
+                } else if (common == plen) {
+                    // the new prefix is on the compressed edge leading to this node
+                    final int inserted = newNode(hi, lo, plen, idx);
+                    setChild(inserted, bit(keyHi[node], keyLo[node], plen), node);
+                    replace(v4, parent, parentBit, inserted);
+                    return;
+                } else {
+                    // the new prefix diverges from the compressed edge leading to this node
+                    final int split = newNode(mask(hi, common), common <= 64 ? 0 : mask(lo, common - 64), common, -1);
+                    final int leaf = newNode(hi, lo, plen, idx);
+                    if (bit(hi, lo, common) == 0) {
+                        zero[split] = leaf;
+                        one[split] = node;
+                    } else {
+                        zero[split] = node;
+                        one[split] = leaf;
+                    }
+                    replace(v4, parent, parentBit, split);
+                    return;
+                }
+            }
+        }
+
+        private static long mask(long val, int bits) {
+            return bits <= 0 ? 0 : bits >= 64 ? val : val & -1L << 64 - bits;
+        }
+
+        private int newNode(long hi, long lo, int plen, int idx) {
+            final int node = nodeCnt++;
+            keyHi[node] = hi;
+            keyLo[node] = lo;
+            bits[node] = plen;
+            zero[node] = -1;
+            one[node] = -1;
+            entry[node] = idx;
+            return node;
+        }
+
+        private void setChild(int node, int bit, int child) {
+            if (bit == 0) {
+                zero[node] = child;
+            } else {
+                one[node] = child;
+            }
+        }
+
+        private void setRoot(boolean v4, int node) {
+            if (v4) {
+                root4 = node;
+            } else {
+                root6 = node;
+            }
+        }
+
+        private void replace(boolean v4, int parent, int parentBit, int node) {
+            if (parent == -1) {
+                setRoot(v4, node);
+            } else {
+                setChild(parent, parentBit, node);
+            }
+        }
+
+        CidrTrie build() {
+            final int nodeCnt = this.nodeCnt;
+            return new CidrTrie(
+                Arrays.copyOf(keyHi, nodeCnt),
+                Arrays.copyOf(keyLo, nodeCnt),
+                Arrays.copyOf(bits, nodeCnt),
+                Arrays.copyOf(zero, nodeCnt),
+                Arrays.copyOf(one, nodeCnt),
+                Arrays.copyOf(entry, nodeCnt),
+                next,
+                scope,
+                root4,
+                root6
+            );
+        }
+    }
+}
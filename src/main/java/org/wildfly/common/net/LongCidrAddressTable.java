@@ -0,0 +1,311 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.net;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjLongConsumer;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A table for mapping IP addresses to {@code long} values using {@link CidrAddress} instances for matching.  This
+ * table has the same copy-on-write semantics as {@link CidrAddressTable}, but stores its values in a primitive array
+ * parallel to the sorted array of address blocks rather than in a {@code Mapping} object per entry.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class LongCidrAddressTable {
+
+    private static final Snapshot EMPTY = new Snapshot(new CidrAddress[0], new long[0], CidrTrie.EMPTY);
+
+    private final AtomicReference<Snapshot> snapshotRef;
+
+    public LongCidrAddressTable() {
+        snapshotRef = new AtomicReference<>(EMPTY);
+    }
+
+    private LongCidrAddressTable(Snapshot snapshot) {
+        snapshotRef = new AtomicReference<>(snapshot);
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given address.
+     *
+     * @param address the address (must not be {@code null})
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public long getLong(InetAddress address, long defVal) {
+        Assert.checkNotNullParam("address", address);
+        if (address instanceof Inet4Address) {
+            return getLong(CidrTrie.ipv4Bits((Inet4Address) address), defVal);
+        }
+        final byte[] bytes = address.getAddress();
+        return getLong(CidrTrie.hiBits(bytes), CidrTrie.loBits(bytes), Inet.getScopeId(address), defVal);
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given IPv4 address.  This method does not allocate.
+     *
+     * @param ipv4 the IPv4 address bits, in network order (most significant byte first)
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public long getLong(int ipv4, long defVal) {
+        final Snapshot snapshot = snapshotRef.get();
+        final int idx = snapshot.trie.find4(ipv4);
+        return idx == -1 ? defVal : snapshot.values[idx];
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given IPv6 address.  This method does not allocate.
+     *
+     * @param hi the upper 64 bits of the IPv6 address
+     * @param lo the lower 64 bits of the IPv6 address
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public long getLong(long hi, long lo, int scopeId, long defVal) {
+        final Snapshot snapshot = snapshotRef.get();
+        final int idx = snapshot.trie.find6(hi, lo, scopeId);
+        return idx == -1 ? defVal : snapshot.values[idx];
+    }
+
+    /**
+     * Get the value mapped to exactly the given block.
+     *
+     * @param block the address block (must not be {@code null})
+     * @param defVal the value to return if there is no mapping for the block
+     * @return the mapped value, or {@code defVal} if there is none
+     */
+    public long getExact(CidrAddress block, long defVal) {
+        Assert.checkNotNullParam("block", block);
+        final Snapshot snapshot = snapshotRef.get();
+        final int idx = Arrays.binarySearch(snapshot.ranges, block);
+        return idx < 0 ? defVal : snapshot.values[idx];
+    }
+
+    /**
+     * Map the given block to the given value, replacing any existing mapping for the block.
+     *
+     * @param block the address block (must not be {@code null})
+     * @param value the value
+     */
+    public void put(CidrAddress block, long value) {
+        Assert.checkNotNullParam("block", block);
+        doPut(block, value, true);
+    }
+
+    /**
+     * Map the given block to the given value if there is no existing mapping for the block.
+     *
+     * @param block the address block (must not be {@code null})
+     * @param value the value
+     * @return {@code true} if the mapping was added, or {@code false} if the block was already mapped
+     */
+    public boolean putIfAbsent(CidrAddress block, long value) {
+        Assert.checkNotNullParam("block", block);
+        return doPut(block, value, false);
+    }
+
+    private boolean doPut(final CidrAddress block, final long value, final boolean replace) {
+        final AtomicReference<Snapshot> snapshotRef = this.snapshotRef;
+        Snapshot oldVal, newVal;
+        do {
+            oldVal = snapshotRef.get();
+            final CidrAddress[] oldRanges = oldVal.ranges;
+            final long[] oldValues = oldVal.values;
+            final int idx = Arrays.binarySearch(oldRanges, block);
+            if (idx >= 0) {
+                if (! replace) {
+                    return false;
+                }
+                if (oldValues[idx] == value) {
+                    return true;
+                }
+                // the ranges do not change, so neither does the trie
+                final long[] newValues = oldValues.clone();
+                newValues[idx] = value;
+                newVal = new Snapshot(oldRanges, newValues, oldVal.trie);
+            } else {
+                final int ins = -idx - 1;
+                final int oldLen = oldRanges.length;
+                final CidrAddress[] newRanges = new CidrAddress[oldLen + 1];
+                final long[] newValues = new long[oldLen + 1];
+                System.arraycopy(oldRanges, 0, newRanges, 0, ins);
+                System.arraycopy(oldValues, 0, newValues, 0, ins);
+                newRanges[ins] = block;
+                newValues[ins] = value;
+                System.arraycopy(oldRanges, ins, newRanges, ins + 1, oldLen - ins);
+                System.arraycopy(oldValues, ins, newValues, ins + 1, oldLen - ins);
+                newVal = Snapshot.of(newRanges, newValues);
+            }
+        } while (! snapshotRef.compareAndSet(oldVal, newVal));
+        return true;
+    }
+
+    /**
+     * Put all of the given mappings into this table.  The new mappings are merged in a single pass and published
+     * atomically, so concurrent readers will observe either none or all of them.  Existing mappings for the same
+     * blocks are replaced.
+     *
+     * @param map the mappings to add (must not be {@code null}, and must not contain {@code null} keys or values)
+     */
+    public void putAll(Map<CidrAddress, ? extends Long> map) {
+        Assert.checkNotNullParam("map", map);
+        if (map.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<CidrAddress, ? extends Long> entry : map.entrySet()) {
+            Assert.checkNotNullParam("map key", entry.getKey());
+            Assert.checkNotNullParam("map value", entry.getValue());
+        }
+        final TreeMap<CidrAddress, Long> changes = new TreeMap<>(map);
+        final AtomicReference<Snapshot> snapshotRef = this.snapshotRef;
+        Snapshot oldVal, newVal;
+        do {
+            oldVal = snapshotRef.get();
+            final CidrAddress[] oldRanges = oldVal.ranges;
+            final long[] oldValues = oldVal.values;
+            final int oldLen = oldRanges.length;
+            final CidrAddress[] newRanges = new CidrAddress[oldLen + changes.size()];
+            final long[] newValues = new long[newRanges.length];
+            int cnt = 0;
+            int i = 0;
+            for (Map.Entry<CidrAddress, Long> change : changes.entrySet()) {
+                final CidrAddress range = change.getKey();
+                final long value = change.getValue().longValue();
+                int cmp = 1;
+                while (i < oldLen && (cmp = oldRanges[i].compareTo(range)) < 0) {
+                    newRanges[cnt] = oldRanges[i];
+                    newValues[cnt ++] = oldValues[i ++];
+                }
+                if (cmp == 0) {
+                    i ++;
+                }
+                newRanges[cnt] = range;
+                newValues[cnt ++] = value;
+            }
+            final int rem = oldLen - i;
+            System.arraycopy(oldRanges, i, newRanges, cnt, rem);
+            System.arraycopy(oldValues, i, newValues, cnt, rem);
+            cnt += rem;
+            newVal = Snapshot.of(Arrays.copyOf(newRanges, cnt), Arrays.copyOf(newValues, cnt));
+        } while (! snapshotRef.compareAndSet(oldVal, newVal));
+    }
+
+    /**
+     * Remove the mapping for exactly the given block, if there is one.
+     *
+     * @param block the address block (must not be {@code null})
+     * @return {@code true} if a mapping was removed, or {@code false} if there was none
+     */
+    public boolean removeExact(CidrAddress block) {
+        Assert.checkNotNullParam("block", block);
+        final AtomicReference<Snapshot> snapshotRef = this.snapshotRef;
+        Snapshot oldVal, newVal;
+        do {
+            oldVal = snapshotRef.get();
+            final CidrAddress[] oldRanges = oldVal.ranges;
+            final long[] oldValues = oldVal.values;
+            final int idx = Arrays.binarySearch(oldRanges, block);
+            if (idx < 0) {
+                return false;
+            }
+            final int newLen = oldRanges.length - 1;
+            if (newLen == 0) {
+                newVal = EMPTY;
+            } else {
+                final CidrAddress[] newRanges = new CidrAddress[newLen];
+                final long[] newValues = new long[newLen];
+                System.arraycopy(oldRanges, 0, newRanges, 0, idx);
+                System.arraycopy(oldValues, 0, newValues, 0, idx);
+                System.arraycopy(oldRanges, idx + 1, newRanges, idx, newLen - idx);
+                System.arraycopy(oldValues, idx + 1, newValues, idx, newLen - idx);
+                newVal = Snapshot.of(newRanges, newValues);
+            }
+        } while (! snapshotRef.compareAndSet(oldVal, newVal));
+        return true;
+    }
+
+    public void clear() {
+        snapshotRef.set(EMPTY);
+    }
+
+    public int size() {
+        return snapshotRef.get().ranges.length;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Call the given action for each mapping in a snapshot of this table, in order.
+     *
+     * @param action the action to call (must not be {@code null})
+     */
+    public void forEach(ObjLongConsumer<? super CidrAddress> action) {
+        Assert.checkNotNullParam("action", action);
+        final Snapshot snapshot = snapshotRef.get();
+        final CidrAddress[] ranges = snapshot.ranges;
+        final long[] values = snapshot.values;
+        for (int i = 0; i < ranges.length; i ++) {
+            action.accept(ranges[i], values[i]);
+        }
+    }
+
+    public LongCidrAddressTable clone() {
+        return new LongCidrAddressTable(snapshotRef.get());
+    }
+
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        final Snapshot snapshot = snapshotRef.get();
+        final CidrAddress[] ranges = snapshot.ranges;
+        final long[] values = snapshot.values;
+        b.append(ranges.length).append(" mappings");
+        for (int i = 0; i < ranges.length; i ++) {
+            b.append(System.lineSeparator()).append('\t').append(ranges[i]).append(" -> ").append(values[i]);
+        }
+        return b.toString();
+    }
+
+    static final class Snapshot {
+        final CidrAddress[] ranges;
+        final long[] values;
+        final CidrTrie trie;
+
+        Snapshot(final CidrAddress[] ranges, final long[] values, final CidrTrie trie) {
+            this.ranges = ranges;
+            this.values = values;
+            this.trie = trie;
+        }
+
+        static Snapshot of(CidrAddress[] ranges, long[] values) {
+            return ranges.length == 0 ? EMPTY : new Snapshot(ranges, values, CidrTrie.build(ranges));
+        }
+    }
+}
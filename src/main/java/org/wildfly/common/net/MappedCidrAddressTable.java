@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.net;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToIntFunction;
+
+import org.wildfly.common.Assert;
+
+/**
+ * A read-only table for mapping IP addresses to {@code int} values, which performs lookups directly against a compact
+ * binary image of a {@link CidrAddressTable} snapshot.  The image is typically written once using
+ * {@link #write(CidrAddressTable, ToIntFunction, Path)} and subsequently {@linkplain #open(Path) opened} from a
+ * memory-mapped file, so that no per-mapping objects need to be constructed on the heap in order to use it.
+ * <p>
+ * The image used by a table can be replaced atomically, for example when a new version of the underlying data
+ * is available.  Concurrent lookups observe either the old image or the new one.  A file mapping which is no longer
+ * in use is released when it is garbage collected.
+ * <p>
+ * Tables of object values can be stored by mapping each value to an index into an array of values.
+ *
+ * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
+ */
+public final class MappedCidrAddressTable {
+
+    private final AtomicReference<Image> imageRef;
+
+    private MappedCidrAddressTable(final Image image) {
+        imageRef = new AtomicReference<>(image);
+    }
+
+    /**
+     * Create a binary image of the current contents of the given table.
+     *
+     * @param table the table (must not be {@code null})
+     * @param valueFunction the function which maps each value to the {@code int} to store (must not be {@code null})
+     * @param <T> the table value type
+     * @return the image buffer (not {@code null})
+     */
+    public static <T> ByteBuffer createImage(CidrAddressTable<T> table, ToIntFunction<? super T> valueFunction) {
+        Assert.checkNotNullParam("table", table);
+        Assert.checkNotNullParam("valueFunction", valueFunction);
+        final CidrAddressTable.Snapshot<T> snapshot = table.getSnapshot();
+        final CidrAddressTable.Mapping<T>[] mappings = snapshot.mappings;
+        final int[] values = new int[mappings.length];
+        for (int i = 0; i < mappings.length; i ++) {
+            values[i] = valueFunction.applyAsInt(mappings[i].getValue());
+        }
+        return snapshot.trie.writeImage(values);
+    }
+
+    /**
+     * Write a binary image of the current contents of the given table to a file.  The image is first written to a
+     * temporary file in the same directory, which is then moved into place, so that a concurrent reader never
+     * observes a partially written image.
+     *
+     * @param table the table (must not be {@code null})
+     * @param valueFunction the function which maps each value to the {@code int} to store (must not be {@code null})
+     * @param path the path of the file to write (must not be {@code null})
+     * @param <T> the table value type
+     * @throws IOException if writing the file failed
+     */
+    public static <T> void write(CidrAddressTable<T> table, ToIntFunction<? super T> valueFunction, Path path) throws IOException {
+        Assert.checkNotNullParam("path", path);
+        final ByteBuffer image = createImage(table, valueFunction);
+        final Path absolutePath = path.toAbsolutePath();
+        final Path tmp = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (image.hasRemaining()) {
+                    channel.write(image);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Open a table from the image file at the given path by mapping it into memory.
+     *
+     * @param path the path of the image file (must not be {@code null})
+     * @return the table (not {@code null})
+     * @throws IOException if mapping the file failed
+     * @throws IllegalArgumentException if the file does not contain a valid image
+     */
+    public static MappedCidrAddressTable open(Path path) throws IOException {
+        return new MappedCidrAddressTable(Image.of(map(path)));
+    }
+
+    /**
+     * Create a table which uses the image contained in the given buffer.  The image starts at the buffer's position
+     * and extends to its limit.  The buffer's content must not be modified afterwards.
+     *
+     * @param image the image buffer (must not be {@code null})
+     * @return the table (not {@code null})
+     * @throws IllegalArgumentException if the buffer does not contain a valid image
+     */
+    public static MappedCidrAddressTable wrap(ByteBuffer image) {
+        Assert.checkNotNullParam("image", image);
+        return new MappedCidrAddressTable(Image.of(image));
+    }
+
+    /**
+     * Atomically replace the image of this table with the image file at the given path, which is mapped into memory.
+     *
+     * @param path the path of the image file (must not be {@code null})
+     * @throws IOException if mapping the file failed
+     * @throws IllegalArgumentException if the file does not contain a valid image
+     */
+    public void replace(Path path) throws IOException {
+        imageRef.set(Image.of(map(path)));
+    }
+
+    /**
+     * Atomically replace the image of this table with the image contained in the given buffer.  The image starts at
+     * the buffer's position and extends to its limit.  The buffer's content must not be modified afterwards.
+     *
+     * @param image the image buffer (must not be {@code null})
+     * @throws IllegalArgumentException if the buffer does not contain a valid image
+     */
+    public void replace(ByteBuffer image) {
+        Assert.checkNotNullParam("image", image);
+        imageRef.set(Image.of(image));
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        Assert.checkNotNullParam("path", path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given address.
+     *
+     * @param address the address (must not be {@code null})
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public int getInt(InetAddress address, int defVal) {
+        Assert.checkNotNullParam("address", address);
+        if (address instanceof Inet4Address) {
+            return getInt(CidrTrie.ipv4Bits((Inet4Address) address), defVal);
+        }
+        final byte[] bytes = address.getAddress();
+        return getInt(CidrTrie.hiBits(bytes), CidrTrie.loBits(bytes), Inet.getScopeId(address), defVal);
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given IPv4 address.  This method does not allocate.
+     *
+     * @param ipv4 the IPv4 address bits, in network order (most significant byte first)
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public int getInt(int ipv4, int defVal) {
+        return CidrTrie.findInImage(imageRef.get().buffer, true, (ipv4 & 0xffff_ffffL) << 32, 0L, 0, defVal);
+    }
+
+    /**
+     * Get the value of the most specific mapping for the given IPv6 address.  This method does not allocate.
+     *
+     * @param hi the upper 64 bits of the IPv6 address
+     * @param lo the lower 64 bits of the IPv6 address
+     * @param scopeId the scope ID of the address, or 0 for none
+     * @param defVal the value to return if there is no match
+     * @return the matching value, or {@code defVal} if there is no match
+     */
+    public int getInt(long hi, long lo, int scopeId, int defVal) {
+        return CidrTrie.findInImage(imageRef.get().buffer, false, hi, lo, scopeId, defVal);
+    }
+
+    /**
+     * Get the number of mappings in the current image.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return imageRef.get().size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    static final class Image {
+        final ByteBuffer buffer;
+        final int size;
+
+        Image(final ByteBuffer buffer, final int size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        static Image of(ByteBuffer buffer) {
+            // absolute reads of an unshared view are safe for concurrent use
+            final ByteBuffer view = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+            return new Image(view, CidrTrie.checkImage(view));
+        }
+    }
+}
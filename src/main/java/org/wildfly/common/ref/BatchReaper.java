@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.ref;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cleaner for dead objects which can process many references at once.  When a reaper thread removes more than one
+ * reference from the reference queue at a time, all of the references which share the same batch reaper instance are
+ * passed to a single invocation of {@link #reapBatch(List)}, allowing, for example, a single bulk removal from a map
+ * instead of many individual removals.
+ *
+ * @param <T> the reference type
+ * @param <A> the reference attachment type
+ */
+@FunctionalInterface
+public interface BatchReaper<T, A> extends Reaper<T, A> {
+
+    /**
+     * Perform the cleanup action for a batch of references.  The list is only valid for the duration of the call.
+     *
+     * @param references the references (not {@code null}, not empty)
+     */
+    void reapBatch(List<Reference<T, A>> references);
+
+    /**
+     * Perform the cleanup action for a single reference.  The default implementation calls {@link #reapBatch(List)}
+     * with a singleton list.
+     *
+     * @param reference the reference
+     */
+    default void reap(Reference<T, A> reference) {
+        reapBatch(Collections.singletonList(reference));
+    }
+}
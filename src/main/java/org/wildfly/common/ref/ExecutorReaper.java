@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.ref;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A reaper which hands the reaping of each batch of references off to an executor, so that slow reapers do not occupy
+ * the reaper threads.
+ *
+ * @param <T> the reference value type
+ * @param <A> the reference attachment type
+ */
+final class ExecutorReaper<T, A> implements BatchReaper<T, A> {
+    private final Executor executor;
+    private final Reaper<T, A> delegate;
+
+    ExecutorReaper(final Executor executor, final Reaper<T, A> delegate) {
+        this.executor = executor;
+        this.delegate = delegate;
+    }
+
+    public void reapBatch(final List<Reference<T, A>> references) {
+        final ReaperStatistics statistics = References.ReaperThread.STATISTICS;
+        final long start = System.nanoTime();
+        // the caller's list is only valid for the duration of this call
+        final List<Reference<T, A>> copy = new ArrayList<>(references);
+        statistics.handedOff();
+        try {
+            executor.execute(() -> {
+                statistics.handOffStarted();
+                run(copy, start);
+            });
+        } catch (RejectedExecutionException e) {
+            // reap on this thread instead, so that the cleanup is not lost
+            statistics.handOffStarted();
+            run(copy, start);
+        }
+    }
+
+    private void run(final List<Reference<T, A>> references, final long start) {
+        final ReaperStatistics statistics = References.ReaperThread.STATISTICS;
+        final Reaper<T, A> delegate = this.delegate;
+        if (delegate instanceof BatchReaper) {
+            try {
+                ((BatchReaper<T, A>) delegate).reapBatch(references);
+                statistics.reaped(references.size(), System.nanoTime() - start);
+            } catch (Throwable cause) {
+                statistics.failed();
+                Log.log.reapFailed(cause);
+            }
+        } else {
+            for (Reference<T, A> reference : references) {
+                try {
+                    delegate.reap(reference);
+                    statistics.reaped(System.nanoTime() - start);
+                } catch (Throwable cause) {
+                    statistics.failed();
+                    Log.log.reapFailed(cause);
+                }
+            }
+        }
+    }
+}
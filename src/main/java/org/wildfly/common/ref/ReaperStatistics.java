@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.ref;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of the reference reaper threads.  All values are cumulative since the start of the JVM, and are updated
+ * concurrently, so a set of values read from this object is not necessarily a consistent snapshot.
+ * <p>
+ * The reap latency of a reference is the time from when a reaper thread finishes removing its batch of references from
+ * the reference queue and running any cleaners until its {@link Reaper} has completed, including any time that it spends waiting for an {@link java.util.concurrent.Executor}
+ * when the reaper was created by {@link References#executorReaper(java.util.concurrent.Executor, Reaper)}.
+ *
+ * @see References#getReaperStatistics()
+ */
+public final class ReaperStatistics {
+    private final int threadCount;
+    private final LongAdder active = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder reaped = new LongAdder();
+    private final LongAdder totalReapLatency = new LongAdder();
+    private final LongAccumulator maxReapLatency = new LongAccumulator(Math::max, 0);
+    private final LongAdder pendingHandOffs = new LongAdder();
+
+    ReaperStatistics(final int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Get the number of reaper threads.
+     *
+     * @return the number of reaper threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Get the number of reaper threads which are currently processing a reference.
+     *
+     * @return the number of active reaper threads
+     */
+    public int getActiveThreadCount() {
+        return active.intValue();
+    }
+
+    /**
+     * Get the number of references which have been removed from the reference queue by the reaper threads.
+     *
+     * @return the number of processed references
+     */
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    /**
+     * Get the number of reaper or batch reaper invocations which have failed with an exception.
+     *
+     * @return the number of failures
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Get the number of references whose reaper has completed.  A {@linkplain BatchReaper batch reaper} invocation
+     * counts once for each reference in the batch.
+     *
+     * @return the number of reaped references
+     */
+    public long getReapedCount() {
+        return reaped.sum();
+    }
+
+    /**
+     * Get the total reap latency of all reaped references, in nanoseconds.
+     *
+     * @return the total reap latency
+     */
+    public long getTotalReapLatency() {
+        return totalReapLatency.sum();
+    }
+
+    /**
+     * Get the largest reap latency of any reaped reference, in nanoseconds.
+     *
+     * @return the maximum reap latency
+     */
+    public long getMaxReapLatency() {
+        return maxReapLatency.get();
+    }
+
+    /**
+     * Get the number of references which have been handed off to an executor for reaping, but whose reaper has not
+     * yet started to run.
+     *
+     * @return the hand-off queue depth
+     */
+    public int getHandOffQueueDepth() {
+        return pendingHandOffs.intValue();
+    }
+
+    public String toString() {
+        return String.format("ReaperStatistics[threads=%d, active=%d, processed=%d, reaped=%d, failures=%d, totalLatency=%dns, maxLatency=%dns, handOffQueueDepth=%d]",
+            getThreadCount(), getActiveThreadCount(), getProcessedCount(), getReapedCount(), getFailureCount(), getTotalReapLatency(), getMaxReapLatency(), getHandOffQueueDepth());
+    }
+
+    void begin(final int count) {
+        active.increment();
+        processed.add(count);
+    }
+
+    void end() {
+        active.decrement();
+    }
+
+    void reaped(final long latency) {
+        reaped.increment();
+        totalReapLatency.add(latency);
+        maxReapLatency.accumulate(latency);
+    }
+
+    void reaped(final int count, final long latency) {
+        reaped.add(count);
+        totalReapLatency.add(latency * count);
+        maxReapLatency.accumulate(latency);
+    }
+
+    void failed() {
+        failures.increment();
+    }
+
+    void handedOff() {
+        pendingHandOffs.increment();
+    }
+
+    void handOffStarted() {
+        pendingHandOffs.decrement();
+    }
+}
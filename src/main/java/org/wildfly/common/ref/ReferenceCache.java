@@ -0,0 +1,463 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.ref;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.wildfly.common.Assert;
+import org.wildfly.common._private.CommonMessages;
+
+/**
+ * A concurrent cache whose keys and values may each be held by {@linkplain Reference.Type#STRONG strong},
+ * {@linkplain Reference.Type#WEAK weak}, or {@linkplain Reference.Type#SOFT soft} references.  Entries whose key or
+ * value has been cleared are removed ("expunged") by the reaper threads, and any such entry which is encountered
+ * by a lookup before then is removed eagerly.
+ * <p>
+ * Keys are compared using {@link Object#equals(Object)}.  Neither keys nor values may be {@code null}.
+ * <p>
+ * A cache may optionally be bounded in size.  When a bounded cache is full, entries are evicted in approximately
+ * least-recently-used order, using a "second chance" scan over the entries in insertion order.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class ReferenceCache<K, V> {
+    private final ConcurrentHashMap<Object, Node<V>> map = new ConcurrentHashMap<>();
+    private final Reference.Type keyType;
+    private final Reference.Type valueType;
+    private final int maximumSize;
+    private final ConcurrentLinkedQueue<Node<V>> evictionQueue;
+    private final AtomicInteger liveCount;
+    private final AtomicInteger deadCount;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expunged = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final BatchReaper<Object, KeyRef> keyReaper = refs -> {
+        for (Reference<Object, KeyRef> ref : refs) {
+            final Node<V> node = map.remove(ref.getAttachment());
+            if (node != null) {
+                removed(node);
+                expunged.increment();
+            }
+        }
+    };
+    private final BatchReaper<V, Node<V>> valueReaper = refs -> {
+        for (Reference<V, Node<V>> ref : refs) {
+            if (removeNode(ref.getAttachment())) {
+                expunged.increment();
+            }
+        }
+    };
+
+    /**
+     * Construct a new unbounded instance.
+     *
+     * @param keyType the key reference type (must be {@code STRONG}, {@code WEAK}, or {@code SOFT})
+     * @param valueType the value reference type (must be {@code STRONG}, {@code WEAK}, or {@code SOFT})
+     */
+    public ReferenceCache(final Reference.Type keyType, final Reference.Type valueType) {
+        this(keyType, valueType, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param keyType the key reference type (must be {@code STRONG}, {@code WEAK}, or {@code SOFT})
+     * @param valueType the value reference type (must be {@code STRONG}, {@code WEAK}, or {@code SOFT})
+     * @param maximumSize the maximum number of entries, or {@link Integer#MAX_VALUE} for an unbounded cache (must be
+     *      greater than zero)
+     */
+    public ReferenceCache(final Reference.Type keyType, final Reference.Type valueType, final int maximumSize) {
+        Assert.checkNotNullParam("keyType", keyType);
+        Assert.checkNotNullParam("valueType", valueType);
+        if (! keyType.in(Reference.Type.STRONG, Reference.Type.WEAK, Reference.Type.SOFT)) {
+            throw CommonMessages.msg.invalidReferenceType(keyType, "keyType");
+        }
+        if (! valueType.in(Reference.Type.STRONG, Reference.Type.WEAK, Reference.Type.SOFT)) {
+            throw CommonMessages.msg.invalidReferenceType(valueType, "valueType");
+        }
+        Assert.checkMinimumParameter("maximumSize", 1, maximumSize);
+        this.keyType = keyType;
+        this.valueType = valueType;
+        this.maximumSize = maximumSize;
+        if (maximumSize == Integer.MAX_VALUE) {
+            evictionQueue = null;
+            liveCount = null;
+            deadCount = null;
+        } else {
+            evictionQueue = new ConcurrentLinkedQueue<>();
+            liveCount = new AtomicInteger();
+            deadCount = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Get the value for the given key.
+     *
+     * @param key the key (must not be {@code null})
+     * @return the value, or {@code null} if there is no entry or its key or value has been cleared
+     */
+    public V get(final K key) {
+        Assert.checkNotNullParam("key", key);
+        final Node<V> node = map.get(lookupKey(key));
+        final V value = node == null ? null : getValue(node);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            node.accessed = true;
+        }
+        return value;
+    }
+
+    /**
+     * Store a value for the given key, replacing any existing value.
+     *
+     * @param key the key (must not be {@code null})
+     * @param value the value (must not be {@code null})
+     * @return the previous value, or {@code null} if there was none
+     */
+    public V put(final K key, final V value) {
+        Assert.checkNotNullParam("key", key);
+        Assert.checkNotNullParam("value", value);
+        final Object lookupKey = lookupKey(key);
+        Node<V> node;
+        for (;;) {
+            node = map.get(lookupKey);
+            if (node == null) {
+                final Node<V> newNode = new Node<>(mapKey(key), value, valueType, valueReaper);
+                if (map.putIfAbsent(newNode.mapKey, newNode) == null) {
+                    added(newNode);
+                    return null;
+                }
+            } else {
+                // keep the existing map key so that it can be expunged
+                final Node<V> newNode = new Node<>(node.mapKey, value, valueType, valueReaper);
+                if (map.replace(node.mapKey, node, newNode)) {
+                    removed(node);
+                    added(newNode);
+                    return node.value.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * Store a value for the given key if there is no existing value.
+     *
+     * @param key the key (must not be {@code null})
+     * @param value the value (must not be {@code null})
+     * @return the existing value, or {@code null} if the given value was stored
+     */
+    public V putIfAbsent(final K key, final V value) {
+        Assert.checkNotNullParam("key", key);
+        Assert.checkNotNullParam("value", value);
+        return putIfAbsent(key, lookupKey(key), value);
+    }
+
+    /**
+     * Get the value for the given key, computing and storing it if there is no existing value.  The function may be
+     * called more than once concurrently for the same key, in which case only one of the results is stored.
+     *
+     * @param key the key (must not be {@code null})
+     * @param function the function which computes the value (must not be {@code null})
+     * @return the existing or computed value, or {@code null} if the function returned {@code null}
+     */
+    public V computeIfAbsent(final K key, final Function<? super K, ? extends V> function) {
+        Assert.checkNotNullParam("key", key);
+        Assert.checkNotNullParam("function", function);
+        final Object lookupKey = lookupKey(key);
+        final Node<V> node = map.get(lookupKey);
+        V value = node == null ? null : getValue(node);
+        if (value != null) {
+            hits.increment();
+            node.accessed = true;
+            return value;
+        }
+        misses.increment();
+        value = function.apply(key);
+        if (value == null) {
+            return null;
+        }
+        final V existing = putIfAbsent(key, lookupKey, value);
+        return existing == null ? value : existing;
+    }
+
+    /**
+     * Remove the entry for the given key.
+     *
+     * @param key the key (must not be {@code null})
+     * @return the removed value, or {@code null} if there was none
+     */
+    public V remove(final K key) {
+        Assert.checkNotNullParam("key", key);
+        final Node<V> node = map.remove(lookupKey(key));
+        if (node == null) {
+            return null;
+        }
+        removed(node);
+        return node.value.get();
+    }
+
+    /**
+     * Remove all entries from this cache.
+     */
+    public void clear() {
+        for (Node<V> node : map.values()) {
+            removeNode(node);
+        }
+    }
+
+    /**
+     * Get the number of entries in this cache.  The count may include entries whose key or value has been cleared but
+     * which have not yet been expunged.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Get the key reference type.
+     *
+     * @return the key reference type
+     */
+    public Reference.Type getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * Get the value reference type.
+     *
+     * @return the value reference type
+     */
+    public Reference.Type getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Get the maximum size of this cache.
+     *
+     * @return the maximum size, or {@link Integer#MAX_VALUE} if the cache is unbounded
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Get the number of lookups which found a value.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups which did not find a value.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of entries which were removed because their key or value was cleared.
+     *
+     * @return the expunge count
+     */
+    public long getExpungeCount() {
+        return expunged.sum();
+    }
+
+    /**
+     * Get the number of entries which were removed to keep the cache within its maximum size.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evicted.sum();
+    }
+
+    public String toString() {
+        return String.format("ReferenceCache[keys=%s, values=%s, size=%d, hits=%d, misses=%d, expunged=%d, evicted=%d]",
+            keyType, valueType, size(), getHitCount(), getMissCount(), getExpungeCount(), getEvictionCount());
+    }
+
+    int evictionQueueLength() {
+        return evictionQueue == null ? 0 : evictionQueue.size();
+    }
+
+    private V putIfAbsent(final K key, final Object lookupKey, final V value) {
+        Node<V> node;
+        V existing;
+        for (;;) {
+            node = map.get(lookupKey);
+            if (node == null) {
+                final Node<V> newNode = new Node<>(mapKey(key), value, valueType, valueReaper);
+                if (map.putIfAbsent(newNode.mapKey, newNode) == null) {
+                    added(newNode);
+                    return null;
+                }
+            } else if ((existing = node.value.get()) != null) {
+                return existing;
+            } else {
+                // the value was cleared but not yet expunged
+                final Node<V> newNode = new Node<>(node.mapKey, value, valueType, valueReaper);
+                if (map.replace(node.mapKey, node, newNode)) {
+                    removed(node);
+                    added(newNode);
+                    return null;
+                }
+            }
+        }
+    }
+
+    private V getValue(final Node<V> node) {
+        final V value = node.value.get();
+        if (value == null && removeNode(node)) {
+            expunged.increment();
+        }
+        return value;
+    }
+
+    private boolean removeNode(final Node<V> node) {
+        if (map.remove(node.mapKey, node)) {
+            removed(node);
+            return true;
+        }
+        return false;
+    }
+
+    private Object lookupKey(final K key) {
+        return keyType == Reference.Type.STRONG ? key : new Lookup(key);
+    }
+
+    private Object mapKey(final K key) {
+        return keyType == Reference.Type.STRONG ? key : new KeyRef(key, keyType, keyReaper);
+    }
+
+    private void added(final Node<V> node) {
+        final ConcurrentLinkedQueue<Node<V>> queue = this.evictionQueue;
+        if (queue == null) {
+            return;
+        }
+        final AtomicInteger liveCount = this.liveCount;
+        queue.add(node);
+        liveCount.incrementAndGet();
+        Node<V> victim;
+        while (liveCount.get() > maximumSize && (victim = queue.poll()) != null) {
+            if (victim.removed) {
+                deadCount.decrementAndGet();
+            } else if (victim.accessed) {
+                // second chance
+                victim.accessed = false;
+                queue.add(victim);
+            } else if (removeNode(victim)) {
+                // the victim is no longer in the queue
+                deadCount.decrementAndGet();
+                evicted.increment();
+            }
+        }
+    }
+
+    private void removed(final Node<V> node) {
+        node.removed = true;
+        final ConcurrentLinkedQueue<Node<V>> queue = this.evictionQueue;
+        if (queue == null) {
+            return;
+        }
+        liveCount.decrementAndGet();
+        // removed nodes are normally discarded by eviction; purge them in bulk if they accumulate without it
+        final AtomicInteger deadCount = this.deadCount;
+        if (deadCount.incrementAndGet() > maximumSize && deadCount.getAndSet(0) > maximumSize) {
+            queue.removeIf(n -> n.removed);
+        }
+    }
+
+    static final class Node<V> {
+        final Object mapKey;
+        final Reference<V, Node<V>> value;
+        volatile boolean accessed;
+        volatile boolean removed;
+
+        Node(final Object mapKey, final V value, final Reference.Type valueType, final Reaper<V, Node<V>> reaper) {
+            this.mapKey = mapKey;
+            this.value = References.create(valueType, value, this, reaper);
+        }
+    }
+
+    abstract static class KeyHandle {
+        private final int hashCode;
+
+        KeyHandle(final int hashCode) {
+            this.hashCode = hashCode;
+        }
+
+        abstract Object getKey();
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (! (obj instanceof KeyHandle) || obj.hashCode() != hashCode) {
+                return false;
+            }
+            final Object key = getKey();
+            // a cleared key is only equal to itself
+            return key != null && key.equals(((KeyHandle) obj).getKey());
+        }
+    }
+
+    static final class KeyRef extends KeyHandle {
+        private final Reference<Object, KeyRef> reference;
+
+        KeyRef(final Object key, final Reference.Type keyType, final Reaper<Object, KeyRef> reaper) {
+            super(key.hashCode());
+            reference = References.create(keyType, key, this, reaper);
+        }
+
+        Object getKey() {
+            return reference.get();
+        }
+    }
+
+    static final class Lookup extends KeyHandle {
+        private final Object key;
+
+        Lookup(final Object key) {
+            super(key.hashCode());
+            this.key = key;
+        }
+
+        Object getKey() {
+            return key;
+        }
+    }
+}
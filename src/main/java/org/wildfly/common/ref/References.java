@@ -22,12 +22,23 @@ import static java.security.AccessController.doPrivileged;
 
 import java.lang.ref.ReferenceQueue;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.wildfly.common.Assert;
 
 /**
  * A set of utility methods for reference types.
+ * <p>
+ * References which are created with a {@link Reaper} are reaped by a pool of daemon threads.  The size of the pool
+ * defaults to three threads, and may be configured using the {@code org.wildfly.common.ref.reaper-threads} system
+ * property.  Reapers which may be slow should be {@linkplain #executorReaper(Executor, Reaper) wrapped} so that they
+ * are run by an executor instead, so that they do not delay the reaping of other references.  Reapers which can clean
+ * up many references more efficiently at once may implement {@link BatchReaper}.
  */
 public final class References {
     private References() {
@@ -56,8 +67,15 @@ public final class References {
 
     static final class ReaperThread extends Thread {
         static final ReferenceQueue<Object> REAPER_QUEUE = new ReferenceQueue<Object>();
+        static final ReaperStatistics STATISTICS;
+        /**
+         * The maximum number of references which are removed from the queue at once.
+         */
+        static final int MAX_BATCH = 1024;
 
         static {
+            final int threadCount = doPrivileged((PrivilegedAction<Integer>) () -> Integer.getInteger("org.wildfly.common.ref.reaper-threads", 3)).intValue();
+            STATISTICS = new ReaperStatistics(Math.max(1, threadCount));
             final AtomicInteger cnt = new AtomicInteger(1);
             final PrivilegedAction<Void> action = () -> {
                 final ReaperThread thr = new ReaperThread();
@@ -66,30 +84,99 @@ public final class References {
                 thr.start();
                 return null;
             };
-            for (int i = 0; i < 3; i ++) {
+            for (int i = 0; i < STATISTICS.getThreadCount(); i ++) {
                 doPrivileged(action);
             }
         }
 
+        private final ArrayList<java.lang.ref.Reference<?>> batch = new ArrayList<>();
+        private final IdentityHashMap<BatchReaper<?, ?>, List<Reference<?, ?>>> batches = new IdentityHashMap<>();
+
         public void run() {
+            final ReaperStatistics statistics = STATISTICS;
+            final ArrayList<java.lang.ref.Reference<?>> batch = this.batch;
             for (;;) try {
-                final java.lang.ref.Reference<?> ref = REAPER_QUEUE.remove();
-                if (ref instanceof CleanerReference) {
-                    ((CleanerReference<?, ?>) ref).clean();
+                batch.add(REAPER_QUEUE.remove());
+                java.lang.ref.Reference<?> ref;
+                while (batch.size() < MAX_BATCH && (ref = REAPER_QUEUE.poll()) != null) {
+                    batch.add(ref);
                 }
-                if (ref instanceof Reapable) {
-                    reap((Reapable<?, ?>) ref);
+                statistics.begin(batch.size());
+                try {
+                    processBatch();
+                } finally {
+                    batch.clear();
+                    batches.clear();
+                    statistics.end();
                 }
             } catch (InterruptedException ignored) {
                 // we consume interrupts.
             } catch (Throwable cause) {
+                STATISTICS.failed();
+                Log.log.reapFailed(cause);
+            }
+        }
+
+        private void processBatch() {
+            final ArrayList<java.lang.ref.Reference<?>> batch = this.batch;
+            final int size = batch.size();
+            java.lang.ref.Reference<?> ref;
+            // run the cleaners first, so that they are not delayed by slow reapers
+            for (int i = 0; i < size; i ++) {
+                ref = batch.get(i);
+                if (ref instanceof CleanerReference) try {
+                    ((CleanerReference<?, ?>) ref).clean();
+                } catch (Throwable cause) {
+                    STATISTICS.failed();
+                    Log.log.reapFailed(cause);
+                }
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < size; i ++) {
+                ref = batch.get(i);
+                if (ref instanceof Reapable) {
+                    final Reaper<?, ?> reaper = ((Reapable<?, ?>) ref).getReaper();
+                    if (reaper instanceof BatchReaper) {
+                        batches.computeIfAbsent((BatchReaper<?, ?>) reaper, r -> new ArrayList<>()).add((Reference<?, ?>) ref);
+                    } else if (reaper != null) {
+                        reap(reaper, (Reference<?, ?>) ref, start);
+                    }
+                }
+            }
+            if (! batches.isEmpty()) {
+                for (Map.Entry<BatchReaper<?, ?>, List<Reference<?, ?>>> entry : batches.entrySet()) {
+                    reapBatch(entry.getKey(), entry.getValue(), start);
+                }
+            }
+        }
+
+        @SuppressWarnings({ "unchecked" })
+        private static <T, A> void reap(final Reaper<T, A> reaper, final Reference<?, ?> reference, final long start) {
+            try {
+                reaper.reap((Reference<T, A>) reference);
+            } catch (Throwable cause) {
+                STATISTICS.failed();
                 Log.log.reapFailed(cause);
+                return;
+            }
+            if (! (reaper instanceof ExecutorReaper)) {
+                // executor reapers record their own statistics
+                STATISTICS.reaped(System.nanoTime() - start);
             }
         }
 
         @SuppressWarnings({ "unchecked" })
-        private static <T, A> void reap(final Reapable<T, A> reapable) {
-            reapable.getReaper().reap((Reference<T, A>) reapable);
+        private static <T, A> void reapBatch(final BatchReaper<T, A> reaper, final List<Reference<?, ?>> references, final long start) {
+            try {
+                reaper.reapBatch((List<Reference<T, A>>) (List<?>) references);
+            } catch (Throwable cause) {
+                STATISTICS.failed();
+                Log.log.reapFailed(cause);
+                return;
+            }
+            if (! (reaper instanceof ExecutorReaper)) {
+                STATISTICS.reaped(references.size(), System.nanoTime() - start);
+            }
         }
     }
 
@@ -190,6 +277,33 @@ public final class References {
         }
     }
 
+    /**
+     * Create a reaper which hands the reaping of each reference off to the given executor, rather than running the
+     * given reaper on a reaper thread.  This prevents a slow reaper from delaying the reaping of other references.  Each
+     * batch of references is handed off as a single task, and is passed to the given reaper as a batch if it is a
+     * {@link BatchReaper}.  If the executor rejects a task, the reaper is run on the reaper thread instead.
+     *
+     * @param executor the executor (must not be {@code null})
+     * @param reaper the reaper to run (must not be {@code null})
+     * @param <T> the reference value type
+     * @param <A> the reference attachment type
+     * @return the reaper
+     */
+    public static <T, A> Reaper<T, A> executorReaper(Executor executor, Reaper<T, A> reaper) {
+        Assert.checkNotNullParam("executor", executor);
+        Assert.checkNotNullParam("reaper", reaper);
+        return new ExecutorReaper<>(executor, reaper);
+    }
+
+    /**
+     * Get the statistics of the reaper threads.
+     *
+     * @return the reaper statistics (not {@code null})
+     */
+    public static ReaperStatistics getReaperStatistics() {
+        return ReaperThread.STATISTICS;
+    }
+
     /**
      * Get a null reference.  This reference type is always cleared and does not retain an attachment; as such
      * there is only one single instance of it.
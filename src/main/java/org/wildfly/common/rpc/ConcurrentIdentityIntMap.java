@@ -0,0 +1,373 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.rpc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+import org.wildfly.common.Assert;
+
+/**
+ * An efficient concurrent identity object map whose keys are objects and whose values are {@code int}s.  Mappings can
+ * only be added (never replaced or removed individually), which makes this map suitable for interning or back-reference
+ * tables which are shared by several threads.
+ * <p>
+ * Lookups are lock-free.  Insertion claims an empty slot by compare-and-set.  When the table must grow, a larger table
+ * is linked to the current one, and the threads which insert into the map cooperate to migrate the old table to the
+ * new one, in chunks.  Migrated slots are marked so that lookups and insertions which encounter them continue in the
+ * new table.  An insertion whose probe sequence has passed a migrated key may not add its key to the old table, since
+ * the key might already have been added to the new table; instead it seals the empty slot which ends the sequence
+ * and continues in the new table.
+ *
+ * @param <T> the key type
+ */
+public final class ConcurrentIdentityIntMap<T> {
+    // marks a slot which was empty when it was migrated or sealed; ends the probe sequence in this table
+    private static final Object MOVED_EMPTY = new Object();
+    // marks a slot whose key was copied to the next table; the probe sequence continues past it
+    private static final Object MOVED_KEY = new Object();
+    private static final int TRANSFER_CHUNK = 64;
+    private static final long FOUND = 1L << 32;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ConcurrentIdentityIntMap, Table> tableUpdater = AtomicReferenceFieldUpdater.newUpdater(ConcurrentIdentityIntMap.class, Table.class, "table");
+
+    private final int initialCapacity;
+    private final float loadFactor;
+    private final LongAdder size = new LongAdder();
+    private volatile Table table;
+
+    /**
+     * Construct a new instance with the given initial capacity and load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor
+     */
+    public ConcurrentIdentityIntMap(int initialCapacity, final float loadFactor) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be > 0");
+        }
+        if (loadFactor <= 0.0f || loadFactor >= 1.0f) {
+            throw new IllegalArgumentException("loadFactor must be > 0.0 and < 1.0");
+        }
+        if (initialCapacity < 16) {
+            initialCapacity = 16;
+        } else {
+            // round up
+            final int c = Integer.highestOneBit(initialCapacity) - 1;
+            initialCapacity = Integer.highestOneBit(initialCapacity + c);
+        }
+        this.initialCapacity = initialCapacity;
+        this.loadFactor = loadFactor;
+        table = new Table(initialCapacity, loadFactor);
+    }
+
+    /**
+     * Construct a new instance with the given load factor and an initial capacity of 64.
+     *
+     * @param loadFactor the load factor
+     */
+    public ConcurrentIdentityIntMap(final float loadFactor) {
+        this(64, loadFactor);
+    }
+
+    /**
+     * Construct a new instance with the given initial capacity and a load factor of {@code 0.5}.
+     *
+     * @param initialCapacity the initial capacity
+     */
+    public ConcurrentIdentityIntMap(final int initialCapacity) {
+        this(initialCapacity, 0.5f);
+    }
+
+    /**
+     * Construct a new instance with an initial capacity of 64 and a load factor of {@code 0.5}.
+     */
+    public ConcurrentIdentityIntMap() {
+        this(0.5f);
+    }
+
+    /**
+     * Get a value from the map.
+     *
+     * @param key the key (must not be {@code null})
+     * @param defVal the value to return if the key is not found
+     * @return the map value at the given key, or the value of {@code defVal} if it's not found
+     */
+    public int get(T key, int defVal) {
+        Assert.checkNotNullParam("key", key);
+        final long result = find(key);
+        return result == 0 ? defVal : (int) result;
+    }
+
+    /**
+     * Put a value into the map if the key is not already mapped.
+     *
+     * @param key the key (must not be {@code null})
+     * @param value the value to store
+     * @param defVal the value to return if the mapping was added
+     * @return the existing value of the key, or the value of {@code defVal} if the mapping was added
+     */
+    public int putIfAbsent(T key, int value, int defVal) {
+        Assert.checkNotNullParam("key", key);
+        final long result = insert(table, key, value, false);
+        return (result & FOUND) == 0 ? defVal : (int) result;
+    }
+
+    /**
+     * Get the value of the given key, computing and adding it if the key is not already mapped.  If several threads
+     * concurrently compute a value for the same key, all of them get the value which was added first.
+     *
+     * @param key the key (must not be {@code null})
+     * @param function the function used to compute a value for the key (must not be {@code null})
+     * @return the existing or added value of the key
+     */
+    public int computeIfAbsent(T key, ToIntFunction<? super T> function) {
+        Assert.checkNotNullParam("key", key);
+        Assert.checkNotNullParam("function", function);
+        final long result = find(key);
+        if (result != 0) {
+            return (int) result;
+        }
+        return (int) insert(table, key, function.applyAsInt(key), false);
+    }
+
+    /**
+     * Get the number of mappings in this map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return size.intValue();
+    }
+
+    /**
+     * Remove all mappings from this map.  Mappings which are added concurrently may or may not be retained.
+     */
+    public void clear() {
+        table = new Table(initialCapacity, loadFactor);
+        size.reset();
+    }
+
+    /**
+     * Get a string summary representation of this map.
+     *
+     * @return a string representation
+     */
+    public String toString() {
+        final Table table = this.table;
+        return "Concurrent map length = " + table.keys.length() + ", count = " + size() + (table.next == null ? "" : " (resizing)");
+    }
+
+    /**
+     * Find the value of a key.
+     *
+     * @param key the key
+     * @return {@code FOUND} combined with the value, or 0 if the key is not found
+     */
+    private long find(final Object key) {
+        final int hc = System.identityHashCode(key);
+        Table t = table;
+        for (;;) {
+            final AtomicReferenceArray<Object> keys = t.keys;
+            final int mask = keys.length() - 1;
+            int idx = hc & mask;
+            boolean moved = false;
+            for (int i = 0; i <= mask; i ++) {
+                final Object v = keys.get(idx);
+                if (v == key) {
+                    return FOUND | t.values[idx] & 0xffff_ffffL;
+                } else if (v == null) {
+                    if (moved) {
+                        // the key might have been migrated
+                        break;
+                    }
+                    return 0;
+                } else if (v == MOVED_EMPTY) {
+                    break;
+                } else if (v == MOVED_KEY) {
+                    moved = true;
+                } else if (v instanceof Reservation && ((Reservation) v).key == key) {
+                    return FOUND | ((Reservation) v).value & 0xffff_ffffL;
+                }
+                idx = idx + 1 & mask;
+            }
+            // the key may have been added to the next table, if any
+            t = t.next;
+            if (t == null) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Add a mapping, starting in the given table.
+     *
+     * @param t the table to start from
+     * @param key the key
+     * @param value the value
+     * @param copy {@code true} if this is a migrated mapping, {@code false} if it is a new mapping
+     * @return {@code FOUND} combined with the existing value, or the value if it was added
+     */
+    private long insert(Table t, final Object key, final int value, final boolean copy) {
+        final int hc = System.identityHashCode(key);
+        Reservation reservation = null;
+        outer: for (;;) {
+            final AtomicReferenceArray<Object> keys = t.keys;
+            final int mask = keys.length() - 1;
+            int idx = hc & mask;
+            boolean moved = false;
+            for (int i = 0; i <= mask; i ++) {
+                Object v = keys.get(idx);
+                if (v == null && moved) {
+                    // the key might have been migrated, so it must be added to the next table instead
+                    if (keys.compareAndSet(idx, null, MOVED_EMPTY)) {
+                        t = helpTransfer(t);
+                        continue outer;
+                    }
+                    v = keys.get(idx);
+                } else if (v == null) {
+                    if (reservation == null) {
+                        reservation = new Reservation(key, value);
+                    }
+                    if (keys.compareAndSet(idx, null, reservation)) {
+                        t.values[idx] = value;
+                        // publishes the value
+                        keys.set(idx, key);
+                        if (! copy) {
+                            size.increment();
+                        }
+                        if (t.count.incrementAndGet() > t.threshold) {
+                            helpTransfer(t);
+                        }
+                        return value & 0xffff_ffffL;
+                    }
+                    // lost the race; a slot never becomes empty again
+                    v = keys.get(idx);
+                }
+                if (v == key) {
+                    return FOUND | t.values[idx] & 0xffff_ffffL;
+                } else if (v == MOVED_EMPTY) {
+                    t = helpTransfer(t);
+                    continue outer;
+                } else if (v == MOVED_KEY) {
+                    moved = true;
+                } else if (v instanceof Reservation && ((Reservation) v).key == key) {
+                    return FOUND | ((Reservation) v).value & 0xffff_ffffL;
+                }
+                idx = idx + 1 & mask;
+            }
+            // no empty slots are left in this table
+            t = helpTransfer(t);
+        }
+    }
+
+    /**
+     * Help to migrate the given table to its next table, creating the next table if needed.
+     *
+     * @param t the table
+     * @return the next table
+     */
+    private Table helpTransfer(final Table t) {
+        Table next = t.next;
+        if (next == null) {
+            final int length = t.keys.length();
+            if (length >= 0x40000000) {
+                throw new IllegalStateException("Table full");
+            }
+            final Table newTable = new Table(length << 1, loadFactor);
+            next = Table.nextUpdater.compareAndSet(t, null, newTable) ? newTable : t.next;
+        }
+        final AtomicReferenceArray<Object> keys = t.keys;
+        final int length = keys.length();
+        int start;
+        while (t.transferIndex.get() < length && (start = t.transferIndex.getAndAdd(TRANSFER_CHUNK)) < length) {
+            final int end = Math.min(length, start + TRANSFER_CHUNK);
+            for (int idx = start; idx < end; idx ++) {
+                for (;;) {
+                    final Object v = keys.get(idx);
+                    if (v == null) {
+                        if (keys.compareAndSet(idx, null, MOVED_EMPTY)) {
+                            break;
+                        }
+                    } else if (v == MOVED_EMPTY) {
+                        // sealed by an insertion
+                        break;
+                    } else if (v instanceof Reservation) {
+                        // the inserting thread is about to publish the key
+                        Thread.yield();
+                    } else {
+                        insert(next, v, t.values[idx], true);
+                        keys.set(idx, MOVED_KEY);
+                        break;
+                    }
+                }
+            }
+            if (t.transferred.addAndGet(end - start) == length) {
+                advance();
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Replace the current table with its successor for as long as the current table is completely migrated.
+     */
+    private void advance() {
+        Table t;
+        while ((t = table).next != null && t.transferred.get() == t.keys.length()) {
+            tableUpdater.compareAndSet(this, t, t.next);
+        }
+    }
+
+    static final class Table {
+        @SuppressWarnings("unchecked")
+        static final AtomicReferenceFieldUpdater<Table, Table> nextUpdater = AtomicReferenceFieldUpdater.newUpdater(Table.class, Table.class, "next");
+
+        final AtomicReferenceArray<Object> keys;
+        final int[] values;
+        final int threshold;
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicInteger transferIndex = new AtomicInteger();
+        final AtomicInteger transferred = new AtomicInteger();
+        volatile Table next;
+
+        Table(final int length, final float loadFactor) {
+            keys = new AtomicReferenceArray<>(length);
+            values = new int[length];
+            threshold = (int) ((double) length * (double) loadFactor);
+        }
+    }
+
+    /**
+     * A slot which has been claimed for a key whose value is not yet published.
+     */
+    static final class Reservation {
+        final Object key;
+        final int value;
+
+        Reservation(final Object key, final int value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.rpc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The public instance fields of an exception class, in name order, with a getter method handle for each one.
+ */
+final class FieldExtractor {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Throwable.class);
+    private static final String[] NO_NAMES = new String[0];
+    private static final MethodHandle[] NO_GETTERS = new MethodHandle[0];
+
+    static final ClassValue<FieldExtractor> EXTRACTORS = new ClassValue<FieldExtractor>() {
+        protected FieldExtractor computeValue(final Class<?> type) {
+            // a later field of the same name hides an earlier one
+            final TreeMap<String, Field> map = new TreeMap<>();
+            for (Field field : type.getFields()) {
+                if ((field.getModifiers() & (Modifier.STATIC | Modifier.PUBLIC)) == Modifier.PUBLIC) {
+                    map.put(field.getName(), field);
+                }
+            }
+            if (map.isEmpty()) {
+                return new FieldExtractor(type.getName(), NO_NAMES, NO_GETTERS);
+            }
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final String[] names = new String[map.size()];
+            final MethodHandle[] getters = new MethodHandle[names.length];
+            int i = 0;
+            for (Map.Entry<String, Field> entry : map.entrySet()) {
+                try {
+                    getters[i] = lookup.unreflectGetter(entry.getValue()).asType(GETTER_TYPE);
+                } catch (IllegalAccessException e) {
+                    // the field belongs to a class which is not accessible
+                    continue;
+                }
+                names[i ++] = entry.getKey();
+            }
+            if (i == 0) {
+                return new FieldExtractor(type.getName(), NO_NAMES, NO_GETTERS);
+            } else if (i < names.length) {
+                return new FieldExtractor(type.getName(), Arrays.copyOf(names, i), Arrays.copyOf(getters, i));
+            } else {
+                return new FieldExtractor(type.getName(), names, getters);
+            }
+        }
+    };
+
+    private final String className;
+    private final String[] names;
+    private final MethodHandle[] getters;
+
+    private FieldExtractor(final String className, final String[] names, final MethodHandle[] getters) {
+        this.className = className;
+        this.names = names;
+        this.getters = getters;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String getName(int idx) {
+        return names[idx];
+    }
+
+    String getValue(int idx, Throwable t) {
+        final Object value;
+        try {
+            value = getters[idx].invokeExact(t);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // impossible
+            throw new IllegalStateException(e);
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Get the field names and values of the given exception in alternation, in name order.
+     */
+    String[] getFieldArray(Throwable t) {
+        final int size = names.length;
+        if (size == 0) {
+            return NO_NAMES;
+        }
+        final String[] array = new String[size << 1];
+        for (int i = 0; i < size; i ++) {
+            array[i << 1] = names[i];
+            array[(i << 1) + 1] = getValue(i, t);
+        }
+        return array;
+    }
+}
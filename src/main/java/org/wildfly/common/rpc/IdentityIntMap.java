@@ -22,10 +22,16 @@ import java.util.Arrays;
 
 /**
  * An efficient identity object map whose keys are objects and whose values are {@code int}s.
+ * <p>
+ * Each slot is stamped with the generation in which it was filled, and only slots of the current generation are
+ * considered to be occupied.  This allows the map to be {@linkplain #clear() cleared} in constant time, so that it may
+ * be reused cheaply.
  */
 final class IdentityIntMap<T> implements Cloneable {
     private int[] values;
     private Object[] keys;
+    private int[] stamps;
+    private int generation = 1;
     private int count;
     private int resizeCount;
 
@@ -51,6 +57,7 @@ final class IdentityIntMap<T> implements Cloneable {
         }
         keys = new Object[initialCapacity];
         values = new int[initialCapacity];
+        stamps = new int[initialCapacity];
         resizeCount = (int) ((double) initialCapacity * (double) loadFactor);
     }
 
@@ -65,6 +72,7 @@ final class IdentityIntMap<T> implements Cloneable {
             final IdentityIntMap<T> clone = (IdentityIntMap<T>) super.clone();
             clone.values = values.clone();
             clone.keys = keys.clone();
+            clone.stamps = stamps.clone();
             return clone;
         } catch (CloneNotSupportedException e) {
             throw new IllegalStateException();
@@ -105,18 +113,18 @@ final class IdentityIntMap<T> implements Cloneable {
      */
     public int get(T key, int defVal) {
         final Object[] keys = this.keys;
+        final int[] stamps = this.stamps;
+        final int generation = this.generation;
         final int mask = keys.length - 1;
         int hc = System.identityHashCode(key) & mask;
-        Object v;
         for (;;) {
-            v = keys[hc];
-            if (v == key) {
-                return values[hc];
-            }
-            if (v == null) {
+            if (stamps[hc] != generation) {
                 // not found
                 return defVal;
             }
+            if (keys[hc] == key) {
+                return values[hc];
+            }
             hc = (hc + 1) & mask;
         }
     }
@@ -131,19 +139,20 @@ final class IdentityIntMap<T> implements Cloneable {
         final Object[] keys = this.keys;
         final int mask = keys.length - 1;
         final int[] values = this.values;
-        Object v;
+        final int[] stamps = this.stamps;
+        final int generation = this.generation;
         int hc = System.identityHashCode(key) & mask;
         for (int idx = hc;; idx = hc++ & mask) {
-            v = keys[idx];
-            if (v == null) {
+            if (stamps[idx] != generation) {
                 keys[idx] = key;
                 values[idx] = value;
+                stamps[idx] = generation;
                 if (++count > resizeCount) {
                     resize();
                 }
                 return;
             }
-            if (v == key) {
+            if (keys[idx] == key) {
                 values[idx] = value;
                 return;
             }
@@ -154,6 +163,8 @@ final class IdentityIntMap<T> implements Cloneable {
         final Object[] oldKeys = keys;
         final int oldsize = oldKeys.length;
         final int[] oldValues = values;
+        final int[] oldStamps = stamps;
+        final int generation = this.generation;
         if (oldsize >= 0x40000000) {
             throw new IllegalStateException("Table full");
         }
@@ -161,21 +172,23 @@ final class IdentityIntMap<T> implements Cloneable {
         final int mask = newsize - 1;
         final Object[] newKeys = new Object[newsize];
         final int[] newValues = new int[newsize];
+        final int[] newStamps = new int[newsize];
         keys = newKeys;
         values = newValues;
+        stamps = newStamps;
         if ((resizeCount <<= 1) == 0) {
             resizeCount = Integer.MAX_VALUE;
         }
         for (int oi = 0; oi < oldsize; oi ++) {
-            final Object key = oldKeys[oi];
-            if (key != null) {
+            if (oldStamps[oi] == generation) {
+                final Object key = oldKeys[oi];
                 int ni = System.identityHashCode(key) & mask;
                 for (;;) {
-                    final Object v = newKeys[ni];
-                    if (v == null) {
+                    if (newStamps[ni] != generation) {
                         // found
                         newKeys[ni] = key;
                         newValues[ni] = oldValues[oi];
+                        newStamps[ni] = generation;
                         break;
                     }
                     ni = (ni + 1) & mask;
@@ -184,11 +197,46 @@ final class IdentityIntMap<T> implements Cloneable {
         }
     }
 
+    /**
+     * Remove all mappings from the map in constant time.  The keys of the removed mappings remain referenced by the
+     * map until they are overwritten, or until the map is {@linkplain #purge() purged}.
+     */
     public void clear() {
-        Arrays.fill(keys, null);
+        if (++generation == 0) {
+            // wrapped around; old stamps could appear to be current again
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
         count = 0;
     }
 
+    /**
+     * Remove all mappings from the map, releasing all references to keys.  This takes time proportional to the
+     * capacity of the map.
+     */
+    public void purge() {
+        Arrays.fill(keys, null);
+        clear();
+    }
+
+    /**
+     * Get the number of mappings in the map.
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the current capacity of the map.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
     /**
      * Get a string summary representation of this map.
      *
@@ -199,7 +247,7 @@ final class IdentityIntMap<T> implements Cloneable {
         builder.append("Map length = ").append(keys.length).append(", count = ").append(count).append(", resize count = ").append(resizeCount).append('\n');
         for (int i = 0; i < keys.length; i ++) {
             builder.append('[').append(i).append("] = ");
-            if (keys[i] != null) {
+            if (stamps[i] == generation) {
                 final int hc = System.identityHashCode(keys[i]);
                 builder.append("{ ").append(keys[i]).append(" (hash ").append(hc).append(", modulus ").append(hc % keys.length).append(") => ").append(values[i]).append(" }");
             } else {
@@ -20,10 +20,12 @@ package org.wildfly.common.rpc;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.Serializable;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -31,12 +33,16 @@ import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.function.Function;
 
 import org.wildfly.common.Assert;
 import org.wildfly.common._private.CommonMessages;
+import org.wildfly.common.bytes.ByteStringBuilder;
+import org.wildfly.common.collection.ObjectIntMap;
+import org.wildfly.common.iteration.ByteIterator;
 
 /**
  * A remote exception cause.  Instances of this class are intended to aid with diagnostics and are not intended to be
@@ -47,54 +53,14 @@ import org.wildfly.common._private.CommonMessages;
 public final class RemoteExceptionCause extends Throwable {
     private static final long serialVersionUID = 7849011228540958997L;
 
-    private static final ClassValue<Function<Throwable, Map<String, String>>> fieldGetterValue = new ClassValue<Function<Throwable, Map<String, String>>>() {
-        protected Function<Throwable, Map<String, String>> computeValue(final Class<?> type) {
-            final Field[] fields = type.getFields();
-            final int length = fields.length;
-            int i, j;
-            for (i = 0, j = 0; i < length; i ++) {
-                if ((fields[i].getModifiers() & (Modifier.STATIC | Modifier.PUBLIC)) == Modifier.PUBLIC) {
-                    fields[j ++] = fields[i];
-                }
-            }
-            final int finalLength = j;
-            final Field[] finalFields;
-            if (j < i) {
-                finalFields = Arrays.copyOf(fields, j);
-            } else {
-                finalFields = fields;
-            }
-            if (finalLength == 0) {
-                return t -> Collections.emptyMap();
-            } else if (finalLength == 1) {
-                final Field field = finalFields[0];
-                return t -> {
-                    try {
-                        return Collections.singletonMap(field.getName(), String.valueOf(field.get(t)));
-                    } catch (IllegalAccessException e) {
-                        // impossible
-                        throw new IllegalStateException(e);
-                    }
-                };
-            }
-            return t -> {
-                Map<String, String> map = new TreeMap<>();
-                for (Field field : finalFields) {
-                    try {
-                        map.put(field.getName(), String.valueOf(field.get(t)));
-                    } catch (IllegalAccessException e) {
-                        // impossible
-                        throw new IllegalStateException(e);
-                    }
-                }
-                return Collections.unmodifiableMap(map);
-            };
-        }
-    };
     private static final StackTraceElement[] EMPTY_STACK = new StackTraceElement[0];
 
     private final String exceptionClassName;
-    private final Map<String, String> fields;
+    /**
+     * The names and values of the public fields in alternation, or {@code null} if the fields were given as a map.
+     */
+    private final String[] fieldArray;
+    private volatile Map<String, String> fields;
     private transient String toString;
 
     RemoteExceptionCause(final String msg, final RemoteExceptionCause cause, final String exceptionClassName, final Map<String, String> fields, boolean cloneFields) {
@@ -104,6 +70,7 @@ public final class RemoteExceptionCause extends Throwable {
         }
         Assert.checkNotNullParam("exceptionClassName", exceptionClassName);
         this.exceptionClassName = exceptionClassName;
+        fieldArray = null;
         if (cloneFields) {
             final Iterator<Map.Entry<String, String>> iterator = fields.entrySet().iterator();
             if (! iterator.hasNext()) {
@@ -132,6 +99,13 @@ public final class RemoteExceptionCause extends Throwable {
         }
     }
 
+    RemoteExceptionCause(final String msg, final String exceptionClassName, final String[] fieldArray) {
+        super(msg);
+        Assert.checkNotNullParam("exceptionClassName", exceptionClassName);
+        this.exceptionClassName = exceptionClassName;
+        this.fieldArray = fieldArray;
+    }
+
     /**
      * Constructs a new {@code RemoteExceptionCause} instance with an initial message.  No
      * cause is specified.
@@ -186,10 +160,25 @@ public final class RemoteExceptionCause extends Throwable {
      * @return the remote exception cause, or {@code null} if {@code null} was passed in
      */
     public static RemoteExceptionCause of(Throwable t) {
-        return of(t, new IdentityHashMap<>());
+        return of(t, new IdentityHashMap<>(), null, 0, null);
+    }
+
+    /**
+     * Get a remote exception cause for the given {@link Throwable}, trimming the stack traces and nested exceptions
+     * according to the given policy.  Frames and exceptions which are removed are replaced by
+     * {@linkplain TrimPolicy#isElided(StackTraceElement) elided frame markers}.  If the throwable, or one of its nested
+     * exceptions, is already a remote exception cause, it is used as-is.
+     *
+     * @param t the throwable, or {@code null}
+     * @param policy the trim policy (must not be {@code null})
+     * @return the remote exception cause, or {@code null} if {@code null} was passed in
+     */
+    public static RemoteExceptionCause of(Throwable t, TrimPolicy policy) {
+        Assert.checkNotNullParam("policy", policy);
+        return of(t, new IdentityHashMap<>(), policy, 0, null);
     }
 
-    private static RemoteExceptionCause of(Throwable t, IdentityHashMap<Throwable, RemoteExceptionCause> seen) {
+    private static RemoteExceptionCause of(Throwable t, IdentityHashMap<Throwable, RemoteExceptionCause> seen, TrimPolicy policy, int depth, StackTraceElement[] enclosing) {
         if (t == null) return null;
         if (t instanceof RemoteExceptionCause) {
             return (RemoteExceptionCause) t;
@@ -198,13 +187,24 @@ public final class RemoteExceptionCause extends Throwable {
             if (existing != null) {
                 return existing;
             }
-            final RemoteExceptionCause e = new RemoteExceptionCause(t.getMessage(), t.getClass().getName(), fieldGetterValue.get(t.getClass()).apply(t));
-            e.setStackTrace(t.getStackTrace());
+            final FieldExtractor extractor = FieldExtractor.EXTRACTORS.get(t.getClass());
+            final RemoteExceptionCause e = new RemoteExceptionCause(t.getMessage(), extractor.getClassName(), extractor.getFieldArray(t));
+            final StackTraceElement[] stackTrace = t.getStackTrace();
+            Throwable cause = t.getCause();
+            Throwable[] suppressed = t.getSuppressed();
+            if (policy == null) {
+                e.setStackTrace(stackTrace);
+            } else if (policy.isNestedAllowed(depth)) {
+                e.setStackTrace(policy.trim(stackTrace, enclosing, 0));
+            } else {
+                e.setStackTrace(policy.trim(stackTrace, enclosing, suppressed.length + (cause == null ? 0 : 1)));
+                cause = null;
+                suppressed = NO_REMOTE_EXCEPTION_CAUSES;
+            }
             seen.put(t, e);
-            final Throwable cause = t.getCause();
-            if (cause != null) e.initCause(of(cause, seen));
-            for (Throwable throwable : t.getSuppressed()) {
-                e.addSuppressed(of(throwable, seen));
+            if (cause != null) e.initCause(of(cause, seen, policy, depth + 1, stackTrace));
+            for (Throwable throwable : suppressed) {
+                e.addSuppressed(of(throwable, seen, policy, depth + 1, stackTrace));
             }
             return e;
         }
@@ -241,7 +241,7 @@ public final class RemoteExceptionCause extends Throwable {
      * @return the field names of the remote exception
      */
     public Set<String> getFieldNames() {
-        return fields.keySet();
+        return getFields().keySet();
     }
 
     /**
@@ -252,7 +252,7 @@ public final class RemoteExceptionCause extends Throwable {
      */
     public String getFieldValue(String fieldName) {
         Assert.checkNotNullParam("fieldName", fieldName);
-        return fields.get(fieldName);
+        return getFields().get(fieldName);
     }
 
     /**
@@ -268,7 +268,7 @@ public final class RemoteExceptionCause extends Throwable {
             final String message = getMessage();
             StringBuilder b = new StringBuilder();
             b.append(message == null ? CommonMessages.msg.remoteException(exceptionClassName) : CommonMessages.msg.remoteException(exceptionClassName, message));
-            Iterator<Map.Entry<String, String>> iterator = fields.entrySet().iterator();
+            Iterator<Map.Entry<String, String>> iterator = getFields().entrySet().iterator();
             if (iterator.hasNext()) {
                 b.append("\n\tPublic fields:");
                 do {
@@ -289,6 +289,13 @@ public final class RemoteExceptionCause extends Throwable {
     //   null | caused-by
     //   count suppressed*
     // Add new data to the end; old versions must ignore extra data
+    //
+    // A stream which uses a dictionary begins with ST_VERSION, the stream version, and the log2 of the dictionary
+    // capacity.  Every string and stack element which is written in full is then also added to the dictionary of both
+    // peers, and may be referred to by ST_DICT_REF and its two-byte dictionary index in later messages.
+    //
+    // Frames and nested exceptions which are removed by a TrimPolicy are replaced by ordinary stack elements which are
+    // recognized by TrimPolicy.isElided, so the format is unchanged and older peers show them as plain frames.
 
     private static final int ST_NULL = 0;
     private static final int ST_NEW_STRING = 1; // utf8 data follows
@@ -298,10 +305,19 @@ public final class RemoteExceptionCause extends Throwable {
     private static final int ST_INT8 = 5; // one byte
     private static final int ST_INT16 = 6; // two bytes
     private static final int ST_INT32 = 7; // four bytes
+    private static final int ST_VERSION = 8; // version byte, dictionary size byte
+    private static final int ST_DICT_REF = 9; // two bytes of dictionary index
     private static final int ST_INT_MINI = 0x20; // low 5 bits == signed value
     private static final int ST_BACKREF_FAR = 0x40; // low 6 bits + next byte are distance
     private static final int ST_BACKREF_NEAR = 0x80; // low 7 bits are distance
 
+    /**
+     * The newest stream version supported by this implementation.  Version 0 is the original format, which is written
+     * when no {@link ConnectionDictionary} is used and which every version can read.  Version 1 adds connection-scoped
+     * dictionaries.  Peers should only use a dictionary once both have indicated that they support version 1 or later.
+     */
+    public static final int STREAM_VERSION = 1;
+
     /**
      * Write this remote exception cause to the given stream, without using serialization.
      *
@@ -310,10 +326,77 @@ public final class RemoteExceptionCause extends Throwable {
      */
     public void writeToStream(DataOutput output) throws IOException {
         Assert.checkNotNullParam("output", output);
-        writeToStream(output, new IdentityIntMap<Object>(), new HashMap<String,String>(), 0);
+        write(new WireOutput.OfDataOutput(output), new WriteContext());
+    }
+
+    /**
+     * Write this remote exception cause to the given stream, without using serialization, reusing the tables of the
+     * given context.  The output is identical to that of {@link #writeToStream(DataOutput)}.
+     *
+     * @param output the output stream (must not be {@code null})
+     * @param context the write context (must not be {@code null})
+     * @throws IOException if an error occurs writing the data
+     */
+    public void writeToStream(DataOutput output, WriteContext context) throws IOException {
+        Assert.checkNotNullParam("output", output);
+        Assert.checkNotNullParam("context", context);
+        write(new WireOutput.OfDataOutput(output), context);
     }
 
-    private static int readPackedInt(DataInput is) throws IOException {
+    /**
+     * Write this remote exception cause directly into the given buffer.  The output is identical to that of
+     * {@link #writeToStream(DataOutput)}, regardless of the byte order of the buffer.  If the buffer does not have
+     * enough space, a {@link BufferOverflowException} is thrown and the buffer position is undefined.
+     *
+     * @param buffer the buffer (must not be {@code null})
+     * @throws IOException if a string is too long to be encoded
+     */
+    public void writeTo(ByteBuffer buffer) throws IOException {
+        Assert.checkNotNullParam("buffer", buffer);
+        write(new WireOutput.OfByteBuffer(buffer), new WriteContext());
+    }
+
+    /**
+     * Write this remote exception cause directly into the given buffer, reusing the tables of the given context.
+     *
+     * @param buffer the buffer (must not be {@code null})
+     * @param context the write context (must not be {@code null})
+     * @throws IOException if a string is too long to be encoded
+     * @see #writeTo(ByteBuffer)
+     */
+    public void writeTo(ByteBuffer buffer, WriteContext context) throws IOException {
+        Assert.checkNotNullParam("buffer", buffer);
+        Assert.checkNotNullParam("context", context);
+        write(new WireOutput.OfByteBuffer(buffer), context);
+    }
+
+    /**
+     * Append this remote exception cause to the given byte string builder.  The output is identical to that of
+     * {@link #writeToStream(DataOutput)}.
+     *
+     * @param builder the byte string builder (must not be {@code null})
+     * @throws IOException if a string is too long to be encoded
+     */
+    public void writeTo(ByteStringBuilder builder) throws IOException {
+        Assert.checkNotNullParam("builder", builder);
+        write(new WireOutput.OfByteStringBuilder(builder), new WriteContext());
+    }
+
+    /**
+     * Append this remote exception cause to the given byte string builder, reusing the tables of the given context.
+     *
+     * @param builder the byte string builder (must not be {@code null})
+     * @param context the write context (must not be {@code null})
+     * @throws IOException if a string is too long to be encoded
+     * @see #writeTo(ByteStringBuilder)
+     */
+    public void writeTo(ByteStringBuilder builder, WriteContext context) throws IOException {
+        Assert.checkNotNullParam("builder", builder);
+        Assert.checkNotNullParam("context", context);
+        write(new WireOutput.OfByteStringBuilder(builder), context);
+    }
+
+    private static int readPackedInt(WireInput is) throws IOException {
         final int b = is.readUnsignedByte();
         if ((b & 0xE0) == ST_INT_MINI) {
             // sign-extend it
@@ -329,74 +412,167 @@ public final class RemoteExceptionCause extends Throwable {
         }
     }
 
-    private static void writePackedInt(DataOutput os, int val) throws IOException {
+    private static void writePackedInt(WireOutput os, int val) throws IOException {
         if (-0x10 <= val && val < 0x10) {
-            os.write(ST_INT_MINI | val & 0b01_1111);
+            os.writeByte(ST_INT_MINI | val & 0b01_1111);
         } else if (-0x80 <= val && val < 0x80) {
-            os.write(ST_INT8);
-            os.write(val);
+            os.writeByte(ST_INT8);
+            os.writeByte(val);
         } else if (-0x8000 <= val && val < 0x8000) {
-            os.write(ST_INT16);
+            os.writeByte(ST_INT16);
             os.writeShort(val);
         } else {
-            os.write(ST_INT32);
+            os.writeByte(ST_INT32);
             os.writeInt(val);
         }
     }
 
-    private int writeToStream(DataOutput output, IdentityIntMap<Object> seen, HashMap<String, String> stringCache, int cnt) throws IOException {
+    private void write(WireOutput output, WriteContext context) throws IOException {
+        context.reset();
+        final ConnectionDictionary dictionary = context.dictionary;
+        if (dictionary == null) {
+            writeToStream(output, this, context, 0);
+            return;
+        }
+        dictionary.initWriter();
+        boolean ok = false;
+        try {
+            output.writeByte(ST_VERSION);
+            output.writeByte(1);
+            output.writeByte(dictionary.bits);
+            writeToStream(output, this, context, 0);
+            ok = true;
+        } finally {
+            // the peer only sees the new entries if the message is complete
+            dictionary.finishWrite(ok);
+        }
+    }
+
+    /**
+     * Write the given exception.  Exceptions other than remote exception causes are written directly, producing the
+     * same bytes as their {@linkplain #of(Throwable) converted} form would.
+     */
+    private static int writeToStream(WireOutput output, Throwable throwable, WriteContext context, int cnt) throws IOException {
+        final RemoteExceptionCause remote;
+        final FieldExtractor extractor;
+        if (throwable instanceof RemoteExceptionCause) {
+            remote = (RemoteExceptionCause) throwable;
+            extractor = null;
+        } else {
+            remote = null;
+            extractor = FieldExtractor.EXTRACTORS.get(throwable.getClass());
+        }
         // register in cycle map
-        seen.put(this, cnt++);
+        context.seen.put(throwable, cnt++);
         // write the header byte
         output.writeByte(ST_NEW_EXCEPTION_CAUSE);
         // first write class name
-        cnt = writeString(output, exceptionClassName, seen, stringCache, cnt);
+        cnt = writeString(output, remote == null ? extractor.getClassName() : remote.exceptionClassName, context, cnt);
         // null or message
-        cnt = writeString(output, getMessage(), seen, stringCache, cnt);
+        cnt = writeString(output, throwable.getMessage(), context, cnt);
+        final StackTraceElement[] stackTrace = throwable.getStackTrace();
+        Throwable cause = throwable.getCause();
+        Throwable[] suppressed = throwable.getSuppressed();
+        final TrimPolicy policy = context.policy;
+        if (policy == null) {
+            // stack trace
+            cnt = writeStackTrace(output, stackTrace, context, cnt);
+            // fields
+            cnt = remote == null ? writeFields(output, throwable, extractor, context, cnt) : remote.writeFields(output, context, cnt);
+            return writeNested(output, cause, suppressed, context, cnt);
+        }
+        final int depth = context.depth;
+        int dropped = 0;
+        if (! policy.isNestedAllowed(depth)) {
+            dropped = suppressed.length + (cause == null ? 0 : 1);
+            cause = null;
+            suppressed = NO_REMOTE_EXCEPTION_CAUSES;
+        }
         // stack trace
-        cnt = writeStackTrace(output, getStackTrace(), seen, stringCache, cnt);
+        cnt = writeStackTrace(output, policy.trim(stackTrace, context.enclosing, dropped), context, cnt);
         // fields
-        cnt = writeFields(output, fields, seen, stringCache, cnt);
+        cnt = remote == null ? writeFields(output, throwable, extractor, context, cnt) : remote.writeFields(output, context, cnt);
+        final StackTraceElement[] enclosing = context.enclosing;
+        context.enclosing = stackTrace;
+        context.depth = depth + 1;
+        try {
+            return writeNested(output, cause, suppressed, context, cnt);
+        } finally {
+            context.enclosing = enclosing;
+            context.depth = depth;
+        }
+    }
+
+    private static int writeNested(final WireOutput output, final Throwable cause, final Throwable[] suppressed, final WriteContext context, int cnt) throws IOException {
         // caused-by
-        cnt = writeThrowable(output, getCause(), seen, stringCache, cnt);
+        cnt = writeThrowable(output, cause, context, cnt);
         // suppressed
-        final Throwable[] suppressed = getSuppressed();
         writePackedInt(output, suppressed.length);
         for (final Throwable t : suppressed) {
-            cnt = writeThrowable(output, t, seen, stringCache, cnt);
+            cnt = writeThrowable(output, t, context, cnt);
         }
         return cnt;
     }
 
-    private int writeFields(final DataOutput output, final Map<String, String> fields, final IdentityIntMap<Object> seen, final HashMap<String, String> stringCache, int cnt) throws IOException {
+    private int writeFields(final WireOutput output, final WriteContext context, int cnt) throws IOException {
+        final String[] fieldArray = this.fieldArray;
+        if (fieldArray == null) {
+            return writeFields(output, fields, context, cnt);
+        }
+        writePackedInt(output, fieldArray.length >> 1);
+        for (String string : fieldArray) {
+            cnt = writeString(output, string, context, cnt);
+        }
+        return cnt;
+    }
+
+    private static int writeFields(final WireOutput output, final Map<String, String> fields, final WriteContext context, int cnt) throws IOException {
         writePackedInt(output, fields.size());
         for (Map.Entry<String, String> entry : fields.entrySet()) {
-            cnt = writeString(output, entry.getKey(), seen, stringCache, cnt);
-            cnt = writeString(output, entry.getValue(), seen, stringCache, cnt);
+            cnt = writeString(output, entry.getKey(), context, cnt);
+            cnt = writeString(output, entry.getValue(), context, cnt);
+        }
+        return cnt;
+    }
+
+    private static int writeFields(final WireOutput output, final Throwable throwable, final FieldExtractor extractor, final WriteContext context, int cnt) throws IOException {
+        final int size = extractor.size();
+        writePackedInt(output, size);
+        for (int i = 0; i < size; i ++) {
+            cnt = writeString(output, extractor.getName(i), context, cnt);
+            cnt = writeString(output, extractor.getValue(i, throwable), context, cnt);
         }
         return cnt;
     }
 
-    private int writeStackTrace(final DataOutput output, final StackTraceElement[] stackTrace, final IdentityIntMap<Object> seen, final HashMap<String, String> stringCache, int cnt) throws IOException {
+    private static int writeStackTrace(final WireOutput output, final StackTraceElement[] stackTrace, final WriteContext context, int cnt) throws IOException {
         // don't bother recording in seen because stack traces are always copied
         final int length = stackTrace.length;
         writePackedInt(output, length);
         for (StackTraceElement element : stackTrace) {
-            cnt = writeStackElement(output, element, seen, stringCache, cnt);
+            cnt = writeStackElement(output, element, context, cnt);
         }
         return cnt;
     }
 
-    private int writeStackElement(final DataOutput output, final StackTraceElement element, final IdentityIntMap<Object> seen, final HashMap<String, String> stringCache, int cnt) throws IOException {
+    private static int writeStackElement(final WireOutput output, final StackTraceElement element, final WriteContext context, int cnt) throws IOException {
+        final IdentityIntMap<Object> seen = context.seen;
         final int idx = seen.get(element, - 1);
         final int distance = cnt - idx;
         if (idx == -1 || distance > (1 << 14) - 1) {
-            output.write(ST_NEW_STACK_ELEMENT_V8);
-            cnt = writeString(output, element.getClassName(), seen, stringCache, cnt);
-            cnt = writeString(output, element.getMethodName(), seen, stringCache, cnt);
-            cnt = writeString(output, element.getFileName(), seen, stringCache, cnt);
+            final ConnectionDictionary dictionary = context.dictionary;
+            if (dictionary != null && dictionary.writeReference(output, element)) {
+                return cnt;
+            }
+            output.writeByte(ST_NEW_STACK_ELEMENT_V8);
+            cnt = writeString(output, element.getClassName(), context, cnt);
+            cnt = writeString(output, element.getMethodName(), context, cnt);
+            cnt = writeString(output, element.getFileName(), context, cnt);
             writePackedInt(output, element.getLineNumber());
             seen.put(element, cnt++);
+            if (dictionary != null) {
+                dictionary.stage(element);
+            }
             return cnt;
         } else {
             if (distance < 127) {
@@ -410,22 +586,16 @@ public final class RemoteExceptionCause extends Throwable {
         }
     }
 
-    private int writeThrowable(final DataOutput output, final Throwable throwable, final IdentityIntMap<Object> seen, final HashMap<String, String> stringCache, final int cnt) throws IOException {
+    private static int writeThrowable(final WireOutput output, final Throwable throwable, final WriteContext context, final int cnt) throws IOException {
         if (throwable == null) {
-            output.write(ST_NULL);
+            output.writeByte(ST_NULL);
             return cnt;
         } else {
+            final IdentityIntMap<Object> seen = context.seen;
             final int idx = seen.get(throwable, - 1);
             final int distance = cnt - idx;
             if (idx == - 1 || distance >= 0x4000) {
-                RemoteExceptionCause nested;
-                if (throwable instanceof RemoteExceptionCause) {
-                    nested = (RemoteExceptionCause) throwable;
-                } else {
-                    seen.put(throwable, cnt); // do not increment yet
-                    nested = of(throwable);
-                }
-                return nested.writeToStream(output, seen, stringCache, cnt); // this will increment it
+                return writeToStream(output, throwable, context, cnt);
             } else {
                 if (distance < 127) {
                     output.writeByte(ST_BACKREF_NEAR | distance);
@@ -439,19 +609,27 @@ public final class RemoteExceptionCause extends Throwable {
         }
     }
 
-    private int writeString(final DataOutput output, String string, final IdentityIntMap<Object> seen, final HashMap<String, String> stringCache, final int cnt) throws IOException {
+    private static int writeString(final WireOutput output, String string, final WriteContext context, final int cnt) throws IOException {
         if (string == null) {
-            output.write(ST_NULL);
+            output.writeByte(ST_NULL);
             return cnt;
         }
         // make sure we never duplicate a string
-        string = stringCache.computeIfAbsent(string, Function.identity());
+        string = context.stringCache.computeIfAbsent(string, Function.identity());
+        final IdentityIntMap<Object> seen = context.seen;
         final int idx = seen.get(string, - 1);
         final int distance = cnt - idx;
         if (idx == -1 || distance > (1 << 14) - 1) {
+            final ConnectionDictionary dictionary = context.dictionary;
+            if (dictionary != null && dictionary.writeReference(output, string)) {
+                return cnt;
+            }
             seen.put(string, cnt);
-            output.write(ST_NEW_STRING);
+            output.writeByte(ST_NEW_STRING);
             output.writeUTF(string);
+            if (dictionary != null) {
+                dictionary.stage(string);
+            }
             return cnt + 1;
         } else {
             if (distance < 127) {
@@ -465,12 +643,129 @@ public final class RemoteExceptionCause extends Throwable {
         }
     }
 
+    /**
+     * Read a remote exception cause from the given stream.
+     *
+     * @param input the input stream (must not be {@code null})
+     * @return the remote exception cause (not {@code null})
+     * @throws IOException if an error occurs reading the data or the data is corrupted
+     */
     public static RemoteExceptionCause readFromStream(DataInput input) throws IOException {
-        return readObject(input, RemoteExceptionCause.class, new ArrayList<>(), false);
+        Assert.checkNotNullParam("input", input);
+        return read(new WireInput.OfDataInput(input), null);
+    }
+
+    /**
+     * Read a remote exception cause from the given stream, using the given connection-scoped dictionary.
+     *
+     * @param input the input stream (must not be {@code null})
+     * @param dictionary the dictionary of the peer (must not be {@code null})
+     * @return the remote exception cause (not {@code null})
+     * @throws IOException if an error occurs reading the data or the data is corrupted
+     * @see ConnectionDictionary
+     */
+    public static RemoteExceptionCause readFromStream(DataInput input, ConnectionDictionary dictionary) throws IOException {
+        Assert.checkNotNullParam("input", input);
+        Assert.checkNotNullParam("dictionary", dictionary);
+        return read(new WireInput.OfDataInput(input), dictionary);
+    }
+
+    /**
+     * Read a remote exception cause directly from the given buffer.  On success, the buffer is positioned after the
+     * end of the encoded exception.  The byte order of the buffer is ignored.
+     *
+     * @param buffer the buffer (must not be {@code null})
+     * @return the remote exception cause (not {@code null})
+     * @throws EOFException if the buffer ends before the end of the encoded exception
+     * @throws IOException if the data is corrupted
+     */
+    public static RemoteExceptionCause readFrom(ByteBuffer buffer) throws IOException {
+        Assert.checkNotNullParam("buffer", buffer);
+        return readFrom0(buffer, null);
+    }
+
+    /**
+     * Read a remote exception cause directly from the given buffer, using the given connection-scoped dictionary.
+     *
+     * @param buffer the buffer (must not be {@code null})
+     * @param dictionary the dictionary of the peer (must not be {@code null})
+     * @return the remote exception cause (not {@code null})
+     * @throws EOFException if the buffer ends before the end of the encoded exception
+     * @throws IOException if the data is corrupted
+     * @see #readFrom(ByteBuffer)
+     */
+    public static RemoteExceptionCause readFrom(ByteBuffer buffer, ConnectionDictionary dictionary) throws IOException {
+        Assert.checkNotNullParam("buffer", buffer);
+        Assert.checkNotNullParam("dictionary", dictionary);
+        return readFrom0(buffer, dictionary);
+    }
+
+    private static RemoteExceptionCause readFrom0(ByteBuffer buffer, ConnectionDictionary dictionary) throws IOException {
+        try {
+            return read(new WireInput.OfByteBuffer(buffer), dictionary);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+    }
+
+    /**
+     * Read a remote exception cause from the given byte iterator, such as one obtained from
+     * {@link ByteStringBuilder#iterate()}.
+     *
+     * @param iterator the byte iterator (must not be {@code null})
+     * @return the remote exception cause (not {@code null})
+     * @throws EOFException if the iterator ends before the end of the encoded exception
+     * @throws IOException if the data is corrupted
+     */
+    public static RemoteExceptionCause readFrom(ByteIterator iterator) throws IOException {
+        Assert.checkNotNullParam("iterator", iterator);
+        return readFrom0(iterator, null);
+    }
+
+    /**
+     * Read a remote exception cause from the given byte iterator, using the given connection-scoped dictionary.
+     *
+     * @param iterator the byte iterator (must not be {@code null})
+     * @param dictionary the dictionary of the peer (must not be {@code null})
+     * @return the remote exception cause (not {@code null})
+     * @throws EOFException if the iterator ends before the end of the encoded exception
+     * @throws IOException if the data is corrupted
+     * @see #readFrom(ByteIterator)
+     */
+    public static RemoteExceptionCause readFrom(ByteIterator iterator, ConnectionDictionary dictionary) throws IOException {
+        Assert.checkNotNullParam("iterator", iterator);
+        Assert.checkNotNullParam("dictionary", dictionary);
+        return readFrom0(iterator, dictionary);
+    }
+
+    private static RemoteExceptionCause readFrom0(ByteIterator iterator, ConnectionDictionary dictionary) throws IOException {
+        try {
+            return read(new WireInput.OfByteIterator(iterator), dictionary);
+        } catch (NoSuchElementException e) {
+            throw new EOFException();
+        }
     }
 
-    private static <T> T readObject(DataInput input, Class<T> expect, ArrayList<Object> cache, final boolean allowNull) throws IOException {
-        final int b = input.readUnsignedByte();
+    private static RemoteExceptionCause read(WireInput input, ConnectionDictionary dictionary) throws IOException {
+        int b = input.readUnsignedByte();
+        if (b == ST_VERSION) {
+            final int version = input.readUnsignedByte();
+            if (version != 1 || dictionary == null || input.readUnsignedByte() != dictionary.bits) {
+                throw CommonMessages.msg.corruptedStream();
+            }
+            b = input.readUnsignedByte();
+        } else {
+            // the peer did not use a dictionary for this message
+            dictionary = null;
+        }
+        return readObject(b, input, RemoteExceptionCause.class, new ArrayList<>(), false, dictionary);
+    }
+
+    private static <T> T readObject(WireInput input, Class<T> expect, ArrayList<Object> cache, final boolean allowNull, final ConnectionDictionary dictionary) throws IOException {
+        return readObject(input.readUnsignedByte(), input, expect, cache, allowNull, dictionary);
+    }
+
+    private static <T> T readObject(final int b, WireInput input, Class<T> expect, ArrayList<Object> cache, final boolean allowNull, final ConnectionDictionary dictionary) throws IOException {
         if (b == ST_NULL) {
             if (! allowNull) {
                 throw CommonMessages.msg.corruptedStream();
@@ -482,49 +777,15 @@ public final class RemoteExceptionCause extends Throwable {
             }
             final String str = input.readUTF();
             cache.add(str);
+            if (dictionary != null) {
+                dictionary.add(str);
+            }
             return expect.cast(str);
         } else if (b == ST_NEW_EXCEPTION_CAUSE) {
             if (expect != RemoteExceptionCause.class) {
                 throw CommonMessages.msg.corruptedStream();
             }
-            final int idx = cache.size();
-            cache.add(null);
-            String exClassName = readObject(input, String.class, cache, false);
-            String exMessage = readObject(input, String.class, cache, true);
-            int length = readPackedInt(input);
-            StackTraceElement[] stackTrace;
-            if (length == 0) {
-                stackTrace = EMPTY_STACK;
-            } else {
-                stackTrace = new StackTraceElement[length];
-                for (int i = 0; i < length; i++) {
-                    stackTrace[i] = readObject(input, StackTraceElement.class, cache, false);
-                }
-            }
-            Map<String, String> fields;
-            length = readPackedInt(input);
-            if (length == 0) {
-                fields = Collections.emptyMap();
-            } else if (length == 1) {
-                fields = Collections.singletonMap(readObject(input, String.class, cache, false), readObject(input, String.class, cache, false));
-            } else {
-                fields = new HashMap<>(length);
-                for (int i = 0; i < length; i++) {
-                    fields.put(readObject(input, String.class, cache, false), readObject(input, String.class, cache, false));
-                }
-            }
-            final RemoteExceptionCause result = new RemoteExceptionCause(exMessage, null, exClassName, fields, false);
-            cache.set(idx, result);
-            RemoteExceptionCause causedBy = readObject(input, RemoteExceptionCause.class, cache, true);
-            result.initCause(causedBy);
-            length = readPackedInt(input);
-            result.setStackTrace(stackTrace);
-            for (int i = 0; i < length; i++) {
-                // this can't actually be null because we passed {@code false} in to allowNull
-                //noinspection ConstantConditions
-                result.addSuppressed(readObject(input, RemoteExceptionCause.class, cache, false));
-            }
-            return expect.cast(result);
+            return expect.cast(readCause(input, cache, dictionary));
         } else if (b == ST_NEW_STACK_ELEMENT_V8) {
             if (expect != StackTraceElement.class) {
                 throw CommonMessages.msg.corruptedStream();
@@ -532,31 +793,45 @@ public final class RemoteExceptionCause extends Throwable {
             // this can't actually be null because we passed {@code false} in to allowNull
             //noinspection ConstantConditions
             final StackTraceElement element = new StackTraceElement(
-                readObject(input, String.class, cache, false),
-                readObject(input, String.class, cache, false),
-                readObject(input, String.class, cache, true),
+                readObject(input, String.class, cache, false, dictionary),
+                readObject(input, String.class, cache, false, dictionary),
+                readObject(input, String.class, cache, true, dictionary),
                 readPackedInt(input)
             );
             cache.add(element);
+            if (dictionary != null) {
+                dictionary.add(element);
+            }
             return expect.cast(element);
         } else if (b == ST_NEW_STACK_ELEMENT_V9) {
             if (expect != StackTraceElement.class) {
                 throw CommonMessages.msg.corruptedStream();
             }
             // discard CL name, module name, and module version
-            readObject(input, String.class, cache, true);
-            readObject(input, String.class, cache, true);
-            readObject(input, String.class, cache, true);
+            readObject(input, String.class, cache, true, dictionary);
+            readObject(input, String.class, cache, true, dictionary);
+            readObject(input, String.class, cache, true, dictionary);
             // this can't actually be null because we passed {@code false} in to allowNull
             //noinspection ConstantConditions
             final StackTraceElement element = new StackTraceElement(
-                readObject(input, String.class, cache, false),
-                readObject(input, String.class, cache, false),
-                readObject(input, String.class, cache, true),
+                readObject(input, String.class, cache, false, dictionary),
+                readObject(input, String.class, cache, false, dictionary),
+                readObject(input, String.class, cache, true, dictionary),
                 readPackedInt(input)
             );
             cache.add(element);
+            if (dictionary != null) {
+                dictionary.add(element);
+            }
             return expect.cast(element);
+        } else if (b == ST_DICT_REF) {
+            final int idx = input.readShort() & 0xffff;
+            final Object obj = dictionary == null ? null : dictionary.get(idx);
+            if (expect.isInstance(obj)) {
+                return expect.cast(obj);
+            } else {
+                throw CommonMessages.msg.corruptedStream();
+            }
         } else if ((b & ST_BACKREF_NEAR) != 0) {
             int idx = b & 0x7f;
             if (idx > cache.size()) {
@@ -585,6 +860,49 @@ public final class RemoteExceptionCause extends Throwable {
         }
     }
 
+    /**
+     * Read the body of an exception cause, after its header byte.
+     */
+    private static RemoteExceptionCause readCause(WireInput input, ArrayList<Object> cache, ConnectionDictionary dictionary) throws IOException {
+        final int idx = cache.size();
+        cache.add(null);
+        String exClassName = readObject(input, String.class, cache, false, dictionary);
+        String exMessage = readObject(input, String.class, cache, true, dictionary);
+        int length = readPackedInt(input);
+        StackTraceElement[] stackTrace;
+        if (length == 0) {
+            stackTrace = EMPTY_STACK;
+        } else {
+            stackTrace = new StackTraceElement[length];
+            for (int i = 0; i < length; i++) {
+                stackTrace[i] = readObject(input, StackTraceElement.class, cache, false, dictionary);
+            }
+        }
+        // the field map is only built if it is asked for
+        String[] fieldArray;
+        length = readPackedInt(input);
+        if (length == 0) {
+            fieldArray = NO_STRINGS;
+        } else {
+            fieldArray = new String[length << 1];
+            for (int i = 0; i < fieldArray.length; i++) {
+                fieldArray[i] = readObject(input, String.class, cache, false, dictionary);
+            }
+        }
+        final RemoteExceptionCause result = new RemoteExceptionCause(exMessage, exClassName, fieldArray);
+        cache.set(idx, result);
+        RemoteExceptionCause causedBy = readObject(input, RemoteExceptionCause.class, cache, true, dictionary);
+        result.initCause(causedBy);
+        length = readPackedInt(input);
+        result.setStackTrace(stackTrace);
+        for (int i = 0; i < length; i++) {
+            // this can't actually be null because we passed {@code false} in to allowNull
+            //noinspection ConstantConditions
+            result.addSuppressed(readObject(input, RemoteExceptionCause.class, cache, false, dictionary));
+        }
+        return result;
+    }
+
     private static final String[] NO_STRINGS = new String[0];
     private static final RemoteExceptionCause[] NO_REMOTE_EXCEPTION_CAUSES = new RemoteExceptionCause[0];
 
@@ -600,16 +918,19 @@ public final class RemoteExceptionCause extends Throwable {
                 suppressed[i] = of(origSuppressed[i]);
             }
         }
-        String[] fieldArray;
-        final int size = fields.size();
-        if (size == 0) {
-            fieldArray = NO_STRINGS;
-        } else {
-            fieldArray = new String[size << 1];
-            int i = 0;
-            for (Map.Entry<String, String> entry : fields.entrySet()) {
-                fieldArray[i++] = entry.getKey();
-                fieldArray[i++] = entry.getValue();
+        String[] fieldArray = this.fieldArray;
+        if (fieldArray == null) {
+            final Map<String, String> fields = this.fields;
+            final int size = fields.size();
+            if (size == 0) {
+                fieldArray = NO_STRINGS;
+            } else {
+                fieldArray = new String[size << 1];
+                int i = 0;
+                for (Map.Entry<String, String> entry : fields.entrySet()) {
+                    fieldArray[i++] = entry.getKey();
+                    fieldArray[i++] = entry.getValue();
+                }
             }
         }
         return new Serialized(getMessage(), exceptionClassName, of(getCause()), suppressed, getStackTrace(), fieldArray);
@@ -619,6 +940,405 @@ public final class RemoteExceptionCause extends Throwable {
         return (RemoteExceptionCause) super.getCause();
     }
 
+    private Map<String, String> getFields() {
+        Map<String, String> fields = this.fields;
+        if (fields == null) {
+            this.fields = fields = toFieldMap(fieldArray);
+        }
+        return fields;
+    }
+
+    static Map<String, String> toFieldMap(final String[] f) {
+        final int fl = f.length;
+        if ((fl & 1) != 0) {
+            throw CommonMessages.msg.invalidOddFields();
+        } else if (fl == 0) {
+            return Collections.emptyMap();
+        } else if (fl == 2) {
+            return Collections.singletonMap(f[0], f[1]);
+        } else {
+            final TreeMap<String, String> map = new TreeMap<>();
+            for (int i = 0; i < fl; i += 2) {
+                map.put(f[i], f[i + 1]);
+            }
+            return Collections.unmodifiableMap(map);
+        }
+    }
+
+    /**
+     * A reusable context for {@linkplain #writeToStream(DataOutput, WriteContext) writing} remote exception causes.
+     * Reusing a context avoids allocating new back-reference tables for every exception that is written, which is
+     * useful when many exceptions are written in quick succession.  A context may not be used by more than one thread
+     * at a time.
+     * <p>
+     * Tables are cleared in constant time between uses, so the context retains references to some of the most
+     * recently written objects until they are overwritten; callers should not keep a context for longer than it is
+     * useful (for example, longer than the life of the connection on which it is used).
+     */
+    public static final class WriteContext {
+        // tables which have grown beyond this size are discarded rather than retained
+        private static final int MAX_RETAINED_CAPACITY = 4096;
+
+        IdentityIntMap<Object> seen = new IdentityIntMap<>();
+        final HashMap<String, String> stringCache = new HashMap<>();
+        final ConnectionDictionary dictionary;
+        final TrimPolicy policy;
+        // the nesting depth and untrimmed stack trace of the exception being written
+        int depth;
+        StackTraceElement[] enclosing;
+
+        /**
+         * Construct a new instance.
+         */
+        public WriteContext() {
+            dictionary = null;
+            policy = null;
+        }
+
+        /**
+         * Construct a new instance which writes with the given connection-scoped dictionary.  The output is written
+         * in stream version 1, and can only be read by a peer which supports it.
+         *
+         * @param dictionary the dictionary (must not be {@code null})
+         * @see ConnectionDictionary
+         */
+        public WriteContext(ConnectionDictionary dictionary) {
+            Assert.checkNotNullParam("dictionary", dictionary);
+            this.dictionary = dictionary;
+            policy = null;
+        }
+
+        /**
+         * Construct a new instance which trims the written exceptions according to the given policy.
+         *
+         * @param policy the trim policy (must not be {@code null})
+         * @see TrimPolicy
+         */
+        public WriteContext(TrimPolicy policy) {
+            Assert.checkNotNullParam("policy", policy);
+            dictionary = null;
+            this.policy = policy;
+        }
+
+        /**
+         * Construct a new instance which writes with the given connection-scoped dictionary, and which trims the
+         * written exceptions according to the given policy.
+         *
+         * @param dictionary the dictionary (must not be {@code null})
+         * @param policy the trim policy (must not be {@code null})
+         */
+        public WriteContext(ConnectionDictionary dictionary, TrimPolicy policy) {
+            Assert.checkNotNullParam("dictionary", dictionary);
+            Assert.checkNotNullParam("policy", policy);
+            this.dictionary = dictionary;
+            this.policy = policy;
+        }
+
+        void reset() {
+            depth = 0;
+            enclosing = null;
+            if (seen.capacity() > MAX_RETAINED_CAPACITY) {
+                seen = new IdentityIntMap<>();
+            } else {
+                seen.clear();
+            }
+            stringCache.clear();
+        }
+    }
+
+    /**
+     * A connection-scoped dictionary of strings and stack trace elements.  The writer and the reader of a connection
+     * each keep a dictionary of the same capacity, and both add every string and stack trace element which is written
+     * in full to it, so that the same values in later messages can be written as a short reference instead.  When the
+     * dictionary is full, the oldest entry is replaced.
+     * <p>
+     * The writer's dictionary is used by way of a {@linkplain WriteContext#WriteContext(ConnectionDictionary) write
+     * context}, and the reader's dictionary is passed to the {@code read} methods.  Because both dictionaries must see
+     * exactly the same sequence of messages, messages must be read in the order in which they were written, and each
+     * message must be read in full.  The writer's dictionary is only updated once a message has been completely
+     * written, so a message which could not be written (for example because the target buffer is too small) may be
+     * retried or dropped.  If a message is lost, or cannot be completely read, both dictionaries must be discarded.  A
+     * dictionary may not be used by more than one thread at a time.
+     */
+    public static final class ConnectionDictionary {
+        final int bits;
+        private final int mask;
+        private final Object[] entries;
+        // only used by writers
+        private ObjectIntMap<Object> indexes;
+        // only used by writers: the entries of the message being written, which are added once it is complete
+        private ArrayList<Object> staged;
+        private int next;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param capacity the number of entries, which is rounded up to a power of two (must be between 1 and 65536)
+         */
+        public ConnectionDictionary(int capacity) {
+            Assert.checkMinimumParameter("capacity", 1, capacity);
+            Assert.checkMaximumParameter("capacity", 1 << 16, capacity);
+            bits = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+            entries = new Object[1 << bits];
+            mask = entries.length - 1;
+        }
+
+        /**
+         * Get the capacity of this dictionary.
+         *
+         * @return the capacity
+         */
+        public int getCapacity() {
+            return entries.length;
+        }
+
+        boolean writeReference(WireOutput output, Object obj) throws IOException {
+            final ObjectIntMap<Object> indexes = this.indexes;
+            final int idx = indexes == null ? -1 : indexes.get(obj, -1);
+            if (idx == -1 || isReplaced(idx)) {
+                return false;
+            }
+            output.writeByte(ST_DICT_REF);
+            output.writeShort(idx);
+            return true;
+        }
+
+        void add(Object obj) {
+            final int idx = next++ & mask;
+            final Object[] entries = this.entries;
+            final Object old = entries[idx];
+            entries[idx] = obj;
+            if (indexes != null) {
+                if (old != null && indexes.get(old, -1) == idx) {
+                    indexes.remove(old, -1);
+                }
+                indexes.put(obj, idx);
+            }
+        }
+
+        void stage(Object obj) {
+            staged.add(obj);
+        }
+
+        /**
+         * Determine whether the entry at the given index is replaced by an entry of the message being written; the
+         * reader adds each entry as soon as it is read, so such an entry may not be referred to.
+         */
+        private boolean isReplaced(int idx) {
+            final int size = staged.size();
+            return size > mask || (idx - next & mask) < size;
+        }
+
+        void finishWrite(boolean commit) {
+            final ArrayList<Object> staged = this.staged;
+            if (commit) {
+                for (Object obj : staged) {
+                    add(obj);
+                }
+            }
+            staged.clear();
+        }
+
+        Object get(int idx) {
+            return idx > mask ? null : entries[idx];
+        }
+
+        void initWriter() {
+            if (indexes == null) {
+                indexes = new ObjectIntMap<>();
+                staged = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * A policy for trimming the stack traces and nested exceptions of remote exception causes before they are sent to a
+     * peer.  Runs of frames which are removed are replaced by a single marker frame, which records the number of
+     * frames that it stands for and which prints like {@code org.jboss.invocation.<elided>(12 frames)}.  A policy may
+     * limit:
+     * <ul>
+     *     <li>the number of frames which are kept for each exception,</li>
+     *     <li>the depth of nested causes and suppressed exceptions,</li>
+     *     <li>the frames of given packages, whose consecutive runs are collapsed, and</li>
+     *     <li>the frames which a nested exception has in common with its enclosing exception, like the
+     *     {@code ... N more} lines of {@link Throwable#printStackTrace()}.</li>
+     * </ul>
+     * Instances are immutable; the {@code with} methods return a modified copy.
+     */
+    public static final class TrimPolicy {
+        /**
+         * The policy which does not trim anything.
+         */
+        public static final TrimPolicy UNLIMITED = new TrimPolicy(Integer.MAX_VALUE, Integer.MAX_VALUE, NO_STRINGS, false);
+
+        private static final String ELIDED = "<elided>";
+        private static final String OTHER_LABEL = "...";
+
+        private final int maxFrames;
+        private final int maxDepth;
+        private final String[] collapsed;
+        private final boolean elideCommon;
+
+        private TrimPolicy(final int maxFrames, final int maxDepth, final String[] collapsed, final boolean elideCommon) {
+            this.maxFrames = maxFrames;
+            this.maxDepth = maxDepth;
+            this.collapsed = collapsed;
+            this.elideCommon = elideCommon;
+        }
+
+        /**
+         * Get a copy of this policy which keeps at most the given number of frames for each exception, not counting
+         * the marker frames for common frames and nested exceptions.
+         *
+         * @param maxFrames the maximum number of frames (must be zero or greater)
+         * @return the new policy (not {@code null})
+         */
+        public TrimPolicy withMaximumFrames(int maxFrames) {
+            Assert.checkMinimumParameter("maxFrames", 0, maxFrames);
+            return new TrimPolicy(maxFrames, maxDepth, collapsed, elideCommon);
+        }
+
+        /**
+         * Get a copy of this policy which keeps nested causes and suppressed exceptions up to the given depth.  The
+         * outermost exception has a depth of zero; a depth of zero therefore removes all nested exceptions.
+         *
+         * @param maxDepth the maximum depth (must be zero or greater)
+         * @return the new policy (not {@code null})
+         */
+        public TrimPolicy withMaximumDepth(int maxDepth) {
+            Assert.checkMinimumParameter("maxDepth", 0, maxDepth);
+            return new TrimPolicy(maxFrames, maxDepth, collapsed, elideCommon);
+        }
+
+        /**
+         * Get a copy of this policy which collapses consecutive frames of classes in the given package or its
+         * subpackages into a single marker frame.  The package may be given as {@code org.jboss.invocation} or
+         * {@code org.jboss.invocation.*}.
+         *
+         * @param packageName the package name (must not be {@code null})
+         * @return the new policy (not {@code null})
+         */
+        public TrimPolicy withCollapsedPackage(String packageName) {
+            Assert.checkNotNullParam("packageName", packageName);
+            String prefix = packageName.endsWith("*") ? packageName.substring(0, packageName.length() - 1) : packageName;
+            if (! prefix.endsWith(".")) {
+                prefix = prefix + ".";
+            }
+            final String[] collapsed = Arrays.copyOf(this.collapsed, this.collapsed.length + 1);
+            collapsed[collapsed.length - 1] = prefix;
+            return new TrimPolicy(maxFrames, maxDepth, collapsed, elideCommon);
+        }
+
+        /**
+         * Get a copy of this policy which does or does not elide the frames that a nested exception has in common
+         * with its enclosing exception.
+         *
+         * @param elideCommon {@code true} to elide common frames, {@code false} to keep them
+         * @return the new policy (not {@code null})
+         */
+        public TrimPolicy withCommonFramesElided(boolean elideCommon) {
+            return new TrimPolicy(maxFrames, maxDepth, collapsed, elideCommon);
+        }
+
+        /**
+         * Determine whether the given stack element is a marker for elided frames or nested exceptions.
+         *
+         * @param element the stack element (must not be {@code null})
+         * @return {@code true} if the element is a marker, {@code false} otherwise
+         */
+        public static boolean isElided(StackTraceElement element) {
+            Assert.checkNotNullParam("element", element);
+            return ELIDED.equals(element.getMethodName()) && element.getLineNumber() <= -3;
+        }
+
+        /**
+         * Get the number of frames or nested exceptions which the given marker stands for.
+         *
+         * @param element the stack element (must not be {@code null})
+         * @return the number of elided items, or 0 if the element is not a marker
+         */
+        public static int getElidedCount(StackTraceElement element) {
+            return isElided(element) ? -3 - element.getLineNumber() : 0;
+        }
+
+        boolean isNestedAllowed(int depth) {
+            return depth < maxDepth;
+        }
+
+        StackTraceElement[] trim(final StackTraceElement[] stackTrace, final StackTraceElement[] enclosing, final int droppedNested) {
+            final int length = stackTrace.length;
+            int common = 0;
+            if (elideCommon && enclosing != null) {
+                int m = length - 1;
+                int n = enclosing.length - 1;
+                while (m >= 0 && n >= 0 && stackTrace[m].equals(enclosing[n])) {
+                    m --;
+                    n --;
+                }
+                common = length - 1 - m;
+            }
+            final String[] collapsed = this.collapsed;
+            if (common == 0 && collapsed.length == 0 && length <= maxFrames && droppedNested == 0) {
+                return stackTrace;
+            }
+            final int end = length - common;
+            final ArrayList<StackTraceElement> list = new ArrayList<>(Math.min(end, maxFrames) + 3);
+            int i = 0;
+            while (i < end) {
+                final String prefix = findCollapsed(stackTrace[i].getClassName());
+                if (prefix != null) {
+                    int j = i + 1;
+                    while (j < end && stackTrace[j].getClassName().startsWith(prefix)) {
+                        j ++;
+                    }
+                    if (j - i > 1) {
+                        int count = 0;
+                        for (int k = i; k < j; k ++) {
+                            count += frameCount(stackTrace[k]);
+                        }
+                        list.add(marker(prefix.substring(0, prefix.length() - 1), count, " frames"));
+                        i = j;
+                        continue;
+                    }
+                }
+                list.add(stackTrace[i ++]);
+            }
+            final int size = list.size();
+            if (size > maxFrames) {
+                int count = 0;
+                for (int k = maxFrames; k < size; k ++) {
+                    count += frameCount(list.get(k));
+                }
+                list.subList(maxFrames, size).clear();
+                list.add(marker(OTHER_LABEL, count, " frames"));
+            }
+            if (common > 0) {
+                list.add(marker(OTHER_LABEL, common, " more"));
+            }
+            if (droppedNested > 0) {
+                list.add(marker(OTHER_LABEL, droppedNested, " nested"));
+            }
+            return list.toArray(EMPTY_STACK);
+        }
+
+        private String findCollapsed(final String className) {
+            for (String prefix : collapsed) {
+                if (className.startsWith(prefix)) {
+                    return prefix;
+                }
+            }
+            return null;
+        }
+
+        private static int frameCount(final StackTraceElement element) {
+            return isElided(element) ? getElidedCount(element) : 1;
+        }
+
+        private static StackTraceElement marker(final String label, final int count, final String suffix) {
+            return new StackTraceElement(label, ELIDED, count + suffix, -3 - count);
+        }
+    }
+
     static final class Serialized implements Serializable {
         private static final long serialVersionUID = - 2201431870774913071L;
 
@@ -641,25 +1361,7 @@ public final class RemoteExceptionCause extends Throwable {
         }
 
         Object readResolve() {
-            final Map<String, String> fields;
-            if (f == null) {
-                fields = Collections.emptyMap();
-            } else {
-                final int fl = f.length;
-                if ((fl & 1) != 0) {
-                    throw CommonMessages.msg.invalidOddFields();
-                } else if (fl == 0) {
-                    fields = Collections.emptyMap();
-                } else if (fl == 2) {
-                    fields = Collections.singletonMap(f[0], f[1]);
-                } else {
-                    final TreeMap<String, String> map = new TreeMap<>();
-                    for (int i = 0; i < fl; i += 2) {
-                        map.put(f[i], f[i + 1]);
-                    }
-                    fields = Collections.unmodifiableMap(map);
-                }
-            }
+            final Map<String, String> fields = f == null ? Collections.<String, String>emptyMap() : toFieldMap(f);
             final RemoteExceptionCause ex = new RemoteExceptionCause(m, c, cn, fields, false);
             ex.setStackTrace(st);
             final RemoteExceptionCause[] suppressed = s;
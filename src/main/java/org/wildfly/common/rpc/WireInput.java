@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.rpc;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.wildfly.common.iteration.ByteIterator;
+
+/**
+ * A source of the encoded form of a remote exception cause.  Strings are read in the modified UTF-8 format of
+ * {@link DataInput#readUTF()}.
+ */
+abstract class WireInput {
+    WireInput() {
+    }
+
+    abstract int readUnsignedByte() throws IOException;
+
+    abstract int readByte() throws IOException;
+
+    abstract int readShort() throws IOException;
+
+    abstract int readInt() throws IOException;
+
+    String readUTF() throws IOException {
+        final int utfLength = readShort() & 0xffff;
+        final char[] chars = new char[utfLength];
+        int cnt = 0;
+        int a, b, c;
+        for (int i = 0; i < utfLength; i ++) {
+            a = readUnsignedByte();
+            if (a < 0x80) {
+                chars[cnt++] = (char) a;
+            } else if ((a & 0xe0) == 0xc0 && i + 1 < utfLength) {
+                b = readUnsignedByte();
+                if ((b & 0xc0) != 0x80) throw malformed(i);
+                chars[cnt++] = (char) ((a & 0x1f) << 6 | b & 0x3f);
+                i ++;
+            } else if ((a & 0xf0) == 0xe0 && i + 2 < utfLength) {
+                b = readUnsignedByte();
+                c = readUnsignedByte();
+                if ((b & 0xc0) != 0x80 || (c & 0xc0) != 0x80) throw malformed(i);
+                chars[cnt++] = (char) ((a & 0x0f) << 12 | (b & 0x3f) << 6 | c & 0x3f);
+                i += 2;
+            } else {
+                throw malformed(i);
+            }
+        }
+        return new String(chars, 0, cnt);
+    }
+
+    private static UTFDataFormatException malformed(int index) {
+        return new UTFDataFormatException("malformed input around byte " + index);
+    }
+
+    static final class OfDataInput extends WireInput {
+        private final DataInput input;
+
+        OfDataInput(final DataInput input) {
+            this.input = input;
+        }
+
+        int readUnsignedByte() throws IOException {
+            return input.readUnsignedByte();
+        }
+
+        int readByte() throws IOException {
+            return input.readByte();
+        }
+
+        int readShort() throws IOException {
+            return input.readShort();
+        }
+
+        int readInt() throws IOException {
+            return input.readInt();
+        }
+
+        String readUTF() throws IOException {
+            return input.readUTF();
+        }
+    }
+
+    static final class OfByteBuffer extends WireInput {
+        private final ByteBuffer buffer;
+
+        OfByteBuffer(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int readUnsignedByte() {
+            return buffer.get() & 0xff;
+        }
+
+        int readByte() {
+            return buffer.get();
+        }
+
+        // big-endian regardless of the byte order of the buffer
+
+        int readShort() {
+            final ByteBuffer buffer = this.buffer;
+            return (short) (buffer.get() << 8 | buffer.get() & 0xff);
+        }
+
+        int readInt() {
+            final ByteBuffer buffer = this.buffer;
+            return buffer.get() << 24 | (buffer.get() & 0xff) << 16 | (buffer.get() & 0xff) << 8 | buffer.get() & 0xff;
+        }
+
+        String readUTF() throws IOException {
+            final ByteBuffer buffer = this.buffer;
+            final int utfLength = readShort() & 0xffff;
+            if (buffer.hasArray()) {
+                // fast path for all-ASCII strings in heap buffers
+                final byte[] array = buffer.array();
+                final int start = buffer.arrayOffset() + buffer.position();
+                if (utfLength <= buffer.remaining()) {
+                    int i = 0;
+                    while (i < utfLength && array[start + i] > 0) {
+                        i ++;
+                    }
+                    if (i == utfLength) {
+                        buffer.position(buffer.position() + utfLength);
+                        return new String(array, start, utfLength, StandardCharsets.ISO_8859_1);
+                    }
+                }
+            }
+            buffer.position(buffer.position() - 2);
+            return super.readUTF();
+        }
+    }
+
+    static final class OfByteIterator extends WireInput {
+        private final ByteIterator iterator;
+
+        OfByteIterator(final ByteIterator iterator) {
+            this.iterator = iterator;
+        }
+
+        int readUnsignedByte() {
+            return iterator.next();
+        }
+
+        int readByte() {
+            return (byte) iterator.next();
+        }
+
+        int readShort() {
+            return (short) iterator.getBE16();
+        }
+
+        int readInt() {
+            return iterator.getBE32();
+        }
+    }
+}
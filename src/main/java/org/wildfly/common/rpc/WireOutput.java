@@ -0,0 +1,185 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.rpc;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+import org.wildfly.common.bytes.ByteStringBuilder;
+
+/**
+ * A destination for the encoded form of a remote exception cause.  Strings are written in the modified UTF-8 format
+ * of {@link DataOutput#writeUTF(String)}, so every implementation produces identical bytes.
+ */
+abstract class WireOutput {
+    WireOutput() {
+    }
+
+    abstract void writeByte(int b) throws IOException;
+
+    abstract void writeShort(int s) throws IOException;
+
+    abstract void writeInt(int i) throws IOException;
+
+    abstract void writeUTF(String s) throws IOException;
+
+    /**
+     * Get the length of the modified UTF-8 encoding of the given string.
+     */
+    static int utfLength(final String s) throws UTFDataFormatException {
+        final int length = s.length();
+        int utfLength = length;
+        char c;
+        for (int i = 0; i < length; i ++) {
+            c = s.charAt(i);
+            if (c == 0 || c > 0x7f) {
+                utfLength += c > 0x7ff ? 2 : 1;
+            }
+        }
+        if (utfLength > 0xffff) {
+            throw new UTFDataFormatException("encoded string too long: " + utfLength + " bytes");
+        }
+        return utfLength;
+    }
+
+    static final class OfDataOutput extends WireOutput {
+        private final DataOutput output;
+
+        OfDataOutput(final DataOutput output) {
+            this.output = output;
+        }
+
+        void writeByte(final int b) throws IOException {
+            output.writeByte(b);
+        }
+
+        void writeShort(final int s) throws IOException {
+            output.writeShort(s);
+        }
+
+        void writeInt(final int i) throws IOException {
+            output.writeInt(i);
+        }
+
+        void writeUTF(final String s) throws IOException {
+            output.writeUTF(s);
+        }
+    }
+
+    static final class OfByteBuffer extends WireOutput {
+        private final ByteBuffer buffer;
+
+        OfByteBuffer(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void writeByte(final int b) {
+            buffer.put((byte) b);
+        }
+
+        // big-endian regardless of the byte order of the buffer
+
+        void writeShort(final int s) {
+            final ByteBuffer buffer = this.buffer;
+            buffer.put((byte) (s >> 8));
+            buffer.put((byte) s);
+        }
+
+        void writeInt(final int i) {
+            final ByteBuffer buffer = this.buffer;
+            buffer.put((byte) (i >> 24));
+            buffer.put((byte) (i >> 16));
+            buffer.put((byte) (i >> 8));
+            buffer.put((byte) i);
+        }
+
+        void writeUTF(final String s) throws UTFDataFormatException {
+            final ByteBuffer buffer = this.buffer;
+            final int length = s.length();
+            final int utfLength = utfLength(s);
+            writeShort(utfLength);
+            char c;
+            if (utfLength == length) {
+                // all ASCII
+                for (int i = 0; i < length; i ++) {
+                    buffer.put((byte) s.charAt(i));
+                }
+            } else for (int i = 0; i < length; i ++) {
+                c = s.charAt(i);
+                if (c != 0 && c <= 0x7f) {
+                    buffer.put((byte) c);
+                } else if (c <= 0x7ff) {
+                    buffer.put((byte) (0xc0 | c >> 6));
+                    buffer.put((byte) (0x80 | c & 0x3f));
+                } else {
+                    buffer.put((byte) (0xe0 | c >> 12));
+                    buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+                    buffer.put((byte) (0x80 | c & 0x3f));
+                }
+            }
+        }
+    }
+
+    static final class OfByteStringBuilder extends WireOutput {
+        private final ByteStringBuilder builder;
+
+        OfByteStringBuilder(final ByteStringBuilder builder) {
+            this.builder = builder;
+        }
+
+        void writeByte(final int b) {
+            builder.append((byte) b);
+        }
+
+        void writeShort(final int s) {
+            builder.appendBE((short) s);
+        }
+
+        void writeInt(final int i) {
+            builder.appendBE(i);
+        }
+
+        void writeUTF(final String s) throws UTFDataFormatException {
+            final ByteStringBuilder builder = this.builder;
+            final int length = s.length();
+            final int utfLength = utfLength(s);
+            builder.appendBE((short) utfLength);
+            if (utfLength == length) {
+                // all ASCII
+                builder.appendLatin1(s);
+                return;
+            }
+            char c;
+            for (int i = 0; i < length; i ++) {
+                c = s.charAt(i);
+                if (c != 0 && c <= 0x7f) {
+                    builder.append((byte) c);
+                } else if (c <= 0x7ff) {
+                    builder.append((byte) (0xc0 | c >> 6));
+                    builder.append((byte) (0x80 | c & 0x3f));
+                } else {
+                    builder.append((byte) (0xe0 | c >> 12));
+                    builder.append((byte) (0x80 | c >> 6 & 0x3f));
+                    builder.append((byte) (0x80 | c & 0x3f));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Supplier;
+
+import org.junit.Assume;
+
+/**
+ * Measures the memory footprint of data structures by the number of bytes allocated to build them.
+ */
+final class Footprint {
+    private Footprint() {}
+
+    static long measure(Supplier<?> builder) {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+        final long id = Thread.currentThread().getId();
+        // warm up, so that class loading and compilation are not measured
+        builder.get();
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i ++) {
+            final long before = bean.getThreadAllocatedBytes(id);
+            builder.get();
+            min = Math.min(min, bean.getThreadAllocatedBytes(id) - before);
+        }
+        return min;
+    }
+}
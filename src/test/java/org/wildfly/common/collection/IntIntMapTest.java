@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.wildfly.common.iteration.IntIterator;
+
+public class IntIntMapTest {
+
+    @Test
+    public void testBasic() {
+        final IntIntMap map = new IntIntMap();
+        assertTrue(map.isEmpty());
+        map.put(0, 10);
+        map.put(1, 11);
+        map.put(-1, 12);
+        assertEquals(3, map.size());
+        assertEquals(10, map.get(0, -1));
+        assertEquals(11, map.get(1, -1));
+        assertEquals(12, map.get(-1, -1));
+        assertEquals(-1, map.get(2, -1));
+        assertFalse(map.putIfAbsent(0, 20));
+        assertTrue(map.putIfAbsent(2, 13));
+        assertEquals(10, map.remove(0, -1));
+        assertEquals(-1, map.remove(0, -1));
+        assertFalse(map.containsKey(0));
+        assertTrue(map.containsKey(2));
+        final IntIntMap clone = map.clone();
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(3, clone.size());
+        assertEquals(13, clone.get(2, -1));
+        final IntIterator iterator = map.keyIterator();
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail("Expected exception");
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        final Random random = new Random(0x1717L);
+        final IntIntMap map = new IntIntMap();
+        final Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i ++) {
+            // a small key range produces long clusters and many removals
+            final int key = random.nextInt(4096) - 64;
+            final int value = random.nextInt();
+            switch (random.nextInt(3)) {
+                case 0:
+                case 1: {
+                    map.put(key, value);
+                    expected.put(Integer.valueOf(key), Integer.valueOf(value));
+                    break;
+                }
+                default: {
+                    final Integer removed = expected.remove(Integer.valueOf(key));
+                    assertEquals(removed == null ? 0x7fff_ffff : removed.intValue(), map.remove(key, 0x7fff_ffff));
+                    break;
+                }
+            }
+            if (i % 10_000 == 0) {
+                check(expected, map);
+            }
+        }
+        check(expected, map);
+    }
+
+    @Test
+    public void testFootprint() {
+        final int cnt = 100_000;
+        final long primitive = Footprint.measure(() -> {
+            final IntIntMap map = new IntIntMap(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(i + 1000, i + 1000);
+            }
+            return map;
+        });
+        final long boxed = Footprint.measure(() -> {
+            final Map<Integer, Integer> map = new HashMap<>(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(Integer.valueOf(i + 1000), Integer.valueOf(i + 1000));
+            }
+            return map;
+        });
+        assertTrue("primitive=" + primitive + " boxed=" + boxed, primitive * 3 < boxed);
+    }
+
+    private static void check(final Map<Integer, Integer> expected, final IntIntMap map) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey().intValue(), 0x7fff_ffff));
+        }
+        final IntIterator keys = map.keyIterator();
+        final IntIterator values = map.valueIterator();
+        int cnt = 0;
+        while (keys.hasNext()) {
+            assertTrue(values.hasNext());
+            final int key = keys.peekNext();
+            assertEquals(key, keys.next());
+            assertEquals(expected.get(Integer.valueOf(key)).intValue(), values.next());
+            cnt ++;
+        }
+        assertFalse(values.hasNext());
+        assertEquals(expected.size(), cnt);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.wildfly.common.iteration.IntIterator;
+
+public class IntObjectMapTest {
+
+    @Test
+    public void testBasic() {
+        final IntObjectMap<String> map = new IntObjectMap<>();
+        assertNull(map.put(0, "zero"));
+        assertNull(map.put(-5, "minus five"));
+        assertEquals("zero", map.put(0, "nothing"));
+        assertEquals("nothing", map.putIfAbsent(0, "zero"));
+        assertNull(map.putIfAbsent(7, "seven"));
+        assertEquals(3, map.size());
+        assertEquals("nothing", map.get(0));
+        assertNull(map.get(1));
+        assertEquals("minus five", map.remove(-5));
+        assertNull(map.remove(-5));
+        final String string = map.toString();
+        assertTrue(string.equals("{0=nothing, 7=seven}") || string.equals("{7=seven, 0=nothing}"));
+        try {
+            map.put(1, null);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.keyIterator().hasNext());
+    }
+
+    @Test
+    public void testRandom() {
+        final Random random = new Random(0x10b1L);
+        final IntObjectMap<Object> map = new IntObjectMap<>();
+        final Map<Integer, Object> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i ++) {
+            final int key = random.nextInt(4096) * 65536;
+            if (random.nextInt(3) < 2) {
+                final Object value = new Object();
+                assertSame(expected.put(Integer.valueOf(key), value), map.put(key, value));
+            } else {
+                assertSame(expected.remove(Integer.valueOf(key)), map.remove(key));
+            }
+            if (i % 10_000 == 0) {
+                check(expected, map);
+            }
+        }
+        check(expected, map);
+    }
+
+    @Test
+    public void testFootprint() {
+        final int cnt = 100_000;
+        final Object[] values = new Object[cnt];
+        for (int i = 0; i < cnt; i ++) {
+            values[i] = new Object();
+        }
+        final long primitive = Footprint.measure(() -> {
+            final IntObjectMap<Object> map = new IntObjectMap<>(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(i + 1000, values[i]);
+            }
+            return map;
+        });
+        final long boxed = Footprint.measure(() -> {
+            final Map<Integer, Object> map = new HashMap<>(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(Integer.valueOf(i + 1000), values[i]);
+            }
+            return map;
+        });
+        assertTrue("primitive=" + primitive + " boxed=" + boxed, primitive * 2 < boxed);
+    }
+
+    private static void check(final Map<Integer, Object> expected, final IntObjectMap<Object> map) {
+        assertEquals(expected.size(), map.size());
+        final IntIterator keys = map.keyIterator();
+        final Iterator<Object> values = map.valueIterator();
+        int cnt = 0;
+        while (keys.hasNext()) {
+            final int key = keys.next();
+            assertSame(expected.get(Integer.valueOf(key)), values.next());
+            assertSame(expected.get(Integer.valueOf(key)), map.get(key));
+            cnt ++;
+        }
+        assertFalse(values.hasNext());
+        assertEquals(expected.size(), cnt);
+        final int[] forEachCnt = new int[1];
+        map.forEach((v, k) -> {
+            assertSame(expected.get(Integer.valueOf(k)), v);
+            forEachCnt[0] ++;
+        });
+        assertEquals(expected.size(), forEachCnt[0]);
+    }
+}
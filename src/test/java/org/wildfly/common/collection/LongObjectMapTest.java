@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void testRandom() {
+        final Random random = new Random(0x1096L);
+        final LongObjectMap<Object> map = new LongObjectMap<>();
+        final Map<Long, Object> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i ++) {
+            // keys which differ only in their high bits
+            final long key = (long) random.nextInt(4096) << 40 | 0x1234;
+            if (random.nextInt(3) < 2) {
+                final Object value = new Object();
+                assertSame(expected.put(Long.valueOf(key), value), map.put(key, value));
+            } else {
+                assertSame(expected.remove(Long.valueOf(key)), map.remove(key));
+            }
+            if (i % 10_000 == 0) {
+                check(expected, map);
+            }
+        }
+        check(expected, map);
+        assertNull(map.putIfAbsent(-1L, "x"));
+        assertEquals("x", map.putIfAbsent(-1L, "y"));
+        assertTrue(map.containsKey(-1L));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-1L));
+    }
+
+    @Test
+    public void testFootprint() {
+        final int cnt = 100_000;
+        final Object[] values = new Object[cnt];
+        for (int i = 0; i < cnt; i ++) {
+            values[i] = new Object();
+        }
+        final long primitive = Footprint.measure(() -> {
+            final LongObjectMap<Object> map = new LongObjectMap<>(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(i + 1000L, values[i]);
+            }
+            return map;
+        });
+        final long boxed = Footprint.measure(() -> {
+            final Map<Long, Object> map = new HashMap<>(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(Long.valueOf(i + 1000L), values[i]);
+            }
+            return map;
+        });
+        assertTrue("primitive=" + primitive + " boxed=" + boxed, primitive * 3 < boxed * 2);
+    }
+
+    private static void check(final Map<Long, Object> expected, final LongObjectMap<Object> map) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Object> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), map.get(entry.getKey().longValue()));
+        }
+        final Iterator<Object> values = map.valueIterator();
+        final int[] cnt = new int[1];
+        map.forEach((v, k) -> {
+            assertSame(expected.get(Long.valueOf(k)), v);
+            assertSame(v, values.next());
+            cnt[0] ++;
+        });
+        assertFalse(values.hasNext());
+        assertEquals(expected.size(), cnt[0]);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.collection;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.wildfly.common.iteration.IntIterator;
+
+public class ObjectIntMapTest {
+
+    @Test
+    public void testRandom() {
+        final Random random = new Random(0x0b1L);
+        final ObjectIntMap<String> map = new ObjectIntMap<>();
+        final Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i ++) {
+            // equal keys are distinct instances
+            final String key = "key" + random.nextInt(4096);
+            final int value = random.nextInt();
+            if (random.nextInt(3) < 2) {
+                map.put(key, value);
+                expected.put(key, Integer.valueOf(value));
+            } else {
+                final Integer removed = expected.remove(key);
+                assertEquals(removed == null ? 0x7fff_ffff : removed.intValue(), map.remove(key, 0x7fff_ffff));
+            }
+            if (i % 10_000 == 0) {
+                check(expected, map);
+            }
+        }
+        check(expected, map);
+        assertTrue(map.putIfAbsent("new", 1));
+        assertFalse(map.putIfAbsent(new String("new"), 2));
+        assertEquals(1, map.get("new", -1));
+        try {
+            map.get(null, -1);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expectedException) {
+        }
+    }
+
+    @Test
+    public void testFootprint() {
+        final int cnt = 100_000;
+        final String[] keys = new String[cnt];
+        for (int i = 0; i < cnt; i ++) {
+            keys[i] = Integer.toString(i);
+        }
+        final long primitive = Footprint.measure(() -> {
+            final ObjectIntMap<String> map = new ObjectIntMap<>(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(keys[i], i + 1000);
+            }
+            return map;
+        });
+        final long boxed = Footprint.measure(() -> {
+            final Map<String, Integer> map = new HashMap<>(1 << 18);
+            for (int i = 0; i < cnt; i ++) {
+                map.put(keys[i], Integer.valueOf(i + 1000));
+            }
+            return map;
+        });
+        assertTrue("primitive=" + primitive + " boxed=" + boxed, primitive * 2 < boxed);
+    }
+
+    private static void check(final Map<String, Integer> expected, final ObjectIntMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        final Iterator<String> keys = map.keyIterator();
+        final IntIterator values = map.valueIterator();
+        int cnt = 0;
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            assertEquals(expected.get(key).intValue(), values.peekNext());
+            assertEquals(expected.get(key).intValue(), values.next());
+            assertTrue(map.containsKey(new String(key)));
+            cnt ++;
+        }
+        assertFalse(values.hasNext());
+        assertEquals(expected.size(), cnt);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.context;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class ContextManagerTestCase {
+
+    static final class TestContext implements Contextual<TestContext> {
+        final ContextManager<TestContext> contextManager;
+        final String name;
+
+        TestContext(final ContextManager<TestContext> contextManager, final String name) {
+            this.contextManager = contextManager;
+            this.name = name;
+        }
+
+        public ContextManager<TestContext> getInstanceContextManager() {
+            return contextManager;
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static void checkResolution(final ContextManager<TestContext> manager) {
+        final TestContext global = new TestContext(manager, "global");
+        final TestContext thread = new TestContext(manager, "thread");
+        final TestContext loader = new TestContext(manager, "loader");
+        final TestContext current = new TestContext(manager, "current");
+        assertNull(manager.get());
+        manager.setGlobalDefault(global);
+        assertSame(global, manager.get());
+        manager.setThreadDefault(thread);
+        assertSame(thread, manager.get());
+        final Thread currentThread = Thread.currentThread();
+        final ClassLoader oldLoader = currentThread.getContextClassLoader();
+        final ClassLoader classLoader = new URLClassLoader(new URL[0], oldLoader);
+        manager.setClassLoaderDefault(classLoader, loader);
+        assertSame(thread, manager.get());
+        currentThread.setContextClassLoader(classLoader);
+        try {
+            assertSame(loader, manager.get());
+            assertSame(current, current.runFunction(ignored -> manager.get(), null));
+            manager.setClassLoaderDefault(classLoader, null);
+            assertSame(thread, manager.get());
+        } finally {
+            currentThread.setContextClassLoader(oldLoader);
+        }
+        manager.setThreadDefault(null);
+        assertSame(global, manager.get());
+        manager.setGlobalDefault(null);
+        assertNull(manager.get());
+    }
+
+    @Test
+    public void testResolution() {
+        checkResolution(new ContextManager<>(TestContext.class));
+    }
+
+    @Test
+    public void testCachedResolution() {
+        final ContextManager<TestContext> manager = new ContextManager<>(TestContext.class);
+        manager.setDefaultCaching(true);
+        assertTrue(manager.isDefaultCaching());
+        checkResolution(manager);
+    }
+
+    @Test
+    public void testCachedSupplierCalls() {
+        final ContextManager<TestContext> manager = new ContextManager<>(TestContext.class);
+        final TestContext global = new TestContext(manager, "global");
+        final AtomicInteger calls = new AtomicInteger();
+        final Supplier<TestContext> supplier = () -> {
+            calls.incrementAndGet();
+            return global;
+        };
+        manager.setGlobalDefaultSupplier(supplier);
+        manager.get();
+        manager.get();
+        assertEquals(2, calls.get());
+        manager.setDefaultCaching(true);
+        for (int i = 0; i < 10; i ++) {
+            assertSame(global, manager.get());
+        }
+        assertEquals(3, calls.get());
+        // changing the per-thread default only invalidates the cached per-thread default
+        final AtomicInteger threadCalls = new AtomicInteger();
+        manager.setThreadDefaultSupplier(() -> {
+            threadCalls.incrementAndGet();
+            return null;
+        });
+        assertSame(global, manager.get());
+        assertSame(global, manager.get());
+        assertEquals(1, threadCalls.get());
+        assertEquals(3, calls.get());
+        manager.setThreadDefaultSupplier(null);
+        // changing the global default invalidates the cache
+        manager.setGlobalDefaultSupplier(supplier);
+        assertSame(global, manager.get());
+        assertSame(global, manager.get());
+        assertEquals(4, calls.get());
+        manager.setDefaultCaching(false);
+        manager.get();
+        assertEquals(5, calls.get());
+    }
+
+    @Test
+    public void testThreadDefaultKeepsOtherThreadsCached() throws Exception {
+        final ContextManager<TestContext> manager = new ContextManager<>(TestContext.class);
+        final TestContext global = new TestContext(manager, "global");
+        final AtomicInteger calls = new AtomicInteger();
+        manager.setGlobalDefaultSupplier(() -> {
+            calls.incrementAndGet();
+            return global;
+        });
+        manager.setDefaultCaching(true);
+        assertSame(global, manager.get());
+        assertEquals(1, calls.get());
+        final TestContext thread = new TestContext(manager, "thread");
+        final AtomicReference<TestContext> seen = new AtomicReference<>();
+        final Thread other = new Thread(() -> {
+            for (int i = 0; i < 100; i ++) {
+                manager.setThreadDefault(thread);
+                seen.set(manager.get());
+                manager.setThreadDefault(null);
+            }
+        });
+        other.start();
+        other.join();
+        assertSame(thread, seen.get());
+        assertSame(global, manager.get());
+        assertNull(manager.getThreadDefault());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCachedGetDoesNotAllocate() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        final long id = Thread.currentThread().getId();
+        final ContextManager<TestContext> manager = new ContextManager<>(TestContext.class);
+        final TestContext global = new TestContext(manager, "global");
+        manager.setGlobalDefault(global);
+        manager.setDefaultCaching(true);
+        // warm up
+        for (int i = 0; i < 100_000; i ++) {
+            assertSame(global, manager.get());
+        }
+        final long before = bean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 100_000; i ++) {
+            assertSame(global, manager.get());
+        }
+        final long allocated = bean.getThreadAllocatedBytes(id) - before;
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void testManyClassLoaders() {
+        final ContextManager<TestContext> manager = new ContextManager<>(TestContext.class);
+        final int count = 600;
+        final ClassLoader[] classLoaders = new ClassLoader[count];
+        final TestContext[] contexts = new TestContext[count];
+        for (int i = 0; i < count; i ++) {
+            classLoaders[i] = new URLClassLoader(new URL[0], null);
+            contexts[i] = new TestContext(manager, "loader" + i);
+            manager.setClassLoaderDefault(classLoaders[i], contexts[i]);
+        }
+        for (boolean caching : new boolean[] { false, true }) {
+            manager.setDefaultCaching(caching);
+            for (int round = 0; round < 3; round ++) {
+                for (int i = 0; i < count; i ++) {
+                    assertSame(contexts[i], withContextClassLoader(classLoaders[i], manager));
+                    assertSame(contexts[i], manager.getClassLoaderDefault(classLoaders[i]));
+                }
+            }
+        }
+        manager.setClassLoaderDefault(classLoaders[7], null);
+        assertNull(withContextClassLoader(classLoaders[7], manager));
+        assertSame(contexts[8], withContextClassLoader(classLoaders[8], manager));
+    }
+
+    @Test
+    public void testClassLoaderNotPinned() throws InterruptedException {
+        final ContextManager<TestContext> manager = new ContextManager<>(TestContext.class);
+        manager.setDefaultCaching(true);
+        ClassLoader classLoader = new URLClassLoader(new URL[0], null);
+        final WeakReference<ClassLoader> ref = new WeakReference<>(classLoader);
+        final TestContext context = new TestContext(manager, "loader");
+        manager.setClassLoaderDefaultSupplier(classLoader, () -> context);
+        assertSame(context, withContextClassLoader(classLoader, manager));
+        // undeploy
+        manager.setClassLoaderDefault(classLoader, null);
+        classLoader = null;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (ref.get() != null) {
+            assertTrue(System.nanoTime() < deadline);
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+
+    private static TestContext withContextClassLoader(final ClassLoader classLoader, final ContextManager<TestContext> manager) {
+        final Thread currentThread = Thread.currentThread();
+        final ClassLoader old = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(classLoader);
+        try {
+            return manager.get();
+        } finally {
+            currentThread.setContextClassLoader(old);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.context;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.wildfly.common.context.ContextManagerTestCase.TestContext;
+
+public class ContextSnapshotTestCase {
+    private static final ContextManager<TestContext> manager1 = new ContextManager<>(TestContext.class, "one");
+    private static final ContextManager<TestContext> manager2 = new ContextManager<>(TestContext.class, "two");
+
+    @Test
+    public void testCapture() throws Exception {
+        final TestContext a = new TestContext(manager1, "a");
+        final TestContext b = new TestContext(manager2, "b");
+        final TestContext c = new TestContext(manager1, "c");
+        assertTrue(ContextSnapshot.capture().isEmpty());
+        assertSame(ContextSnapshot.empty(), ContextSnapshot.capture());
+        final ContextSnapshot snapshot = a.runCallable(() -> b.runCallable(ContextSnapshot::capture));
+        assertTrue(ContextSnapshot.capture().isEmpty());
+        assertSame(a, snapshot.get(manager1));
+        assertSame(b, snapshot.get(manager2));
+        snapshot.run(() -> {
+            assertSame(a, manager1.get());
+            assertSame(b, manager2.get());
+            // the snapshot is immutable
+            c.run(() -> assertSame(c, manager1.get()));
+            assertSame(a, manager1.get());
+            assertSame(snapshot, ContextSnapshot.capture());
+        });
+        // a snapshot replaces, rather than adds to, the active contexts
+        c.runCallable(() -> {
+            ContextSnapshot.empty().run(() -> assertNull(manager1.get()));
+            assertSame(c, manager1.get());
+            assertEquals("x", snapshot.call(() -> {
+                assertSame(a, manager1.get());
+                return "x";
+            }));
+            assertSame(c, manager1.get());
+            return null;
+        });
+        assertNull(manager1.get());
+        assertNull(manager2.get());
+    }
+
+    @Test
+    public void testPropagation() throws Exception {
+        final TestContext a = new TestContext(manager1, "a");
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final ExecutorService propagating = ContextSnapshot.propagatingExecutorService(executorService);
+            final Future<TestContext> future = a.runCallable(() -> propagating.submit(manager1::get));
+            assertSame(a, future.get(10, TimeUnit.SECONDS));
+            // contexts do not leak into later tasks
+            assertNull(propagating.submit(manager1::get).get(10, TimeUnit.SECONDS));
+            final SynchronousQueue<Object> queue = new SynchronousQueue<>();
+            a.run(() -> ContextSnapshot.propagatingExecutor(executorService).execute(() -> {
+                try {
+                    queue.put(manager1.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertSame(a, queue.poll(10, TimeUnit.SECONDS));
+            assertNull(executorService.submit(manager1::get).get(10, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,537 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.lock;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+
+import org.junit.Test;
+
+public class LocksTest {
+
+    private static void checkMutualExclusion(final ExtendedLock lock) throws InterruptedException {
+        final int threadCnt = 8;
+        final int iterations = 20_000;
+        final long[] counter = new long[1];
+        final Thread[] threads = new Thread[threadCnt];
+        for (int i = 0; i < threadCnt; i ++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < iterations; j ++) {
+                    lock.lock();
+                    try {
+                        counter[0] ++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(lock.isLocked());
+        assertEquals((long) threadCnt * iterations, counter[0]);
+    }
+
+    private static void checkReentrancy(final ExtendedLock lock) {
+        assertFalse(lock.isLocked());
+        lock.lock();
+        assertTrue(lock.tryLock());
+        assertTrue(lock.isHeldByCurrentThread());
+        lock.unlock();
+        assertTrue(lock.isHeldByCurrentThread());
+        lock.unlock();
+        assertFalse(lock.isLocked());
+        assertFalse(lock.isHeldByCurrentThread());
+        try {
+            lock.unlock();
+            fail("Expected exception");
+        } catch (IllegalMonitorStateException expected) {
+        }
+    }
+
+    private static void checkTimedLock(final ExtendedLock lock) throws InterruptedException {
+        final AtomicBoolean result = new AtomicBoolean(true);
+        lock.lock();
+        try {
+            final Thread thread = new Thread(() -> {
+                try {
+                    result.set(lock.tryLock(50, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            thread.join();
+            assertFalse(result.get());
+        } finally {
+            lock.unlock();
+        }
+        final Thread thread = new Thread(() -> {
+            try {
+                if (lock.tryLock(10, TimeUnit.SECONDS)) {
+                    lock.unlock();
+                } else {
+                    result.set(false);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        result.set(true);
+        thread.start();
+        thread.join();
+        assertTrue(result.get());
+    }
+
+    private static void checkCondition(final ExtendedLock lock) throws InterruptedException {
+        final Condition condition = lock.newCondition();
+        final boolean[] ready = new boolean[1];
+        final Thread thread = new Thread(() -> {
+            lock.lock();
+            try {
+                ready[0] = true;
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        });
+        lock.lock();
+        try {
+            thread.start();
+            while (! ready[0]) {
+                assertTrue(condition.await(10, TimeUnit.SECONDS));
+            }
+            assertTrue(lock.isHeldByCurrentThread());
+            assertFalse(condition.await(10, TimeUnit.MILLISECONDS));
+        } finally {
+            lock.unlock();
+        }
+        thread.join();
+    }
+
+    @Test
+    public void testSpinLock() throws InterruptedException {
+        checkReentrancy(Locks.spinLock());
+        checkMutualExclusion(Locks.spinLock());
+        checkTimedLock(Locks.spinLock());
+        checkCondition(Locks.spinLock());
+    }
+
+    @Test
+    public void testSpinLockConditionReentrancy() throws InterruptedException {
+        final ExtendedLock lock = Locks.spinLock();
+        final Condition condition = lock.newCondition();
+        lock.lock();
+        lock.lock();
+        try {
+            assertFalse(condition.await(10, TimeUnit.MILLISECONDS));
+            lock.unlock();
+            assertTrue(lock.isHeldByCurrentThread());
+        } finally {
+            lock.unlock();
+        }
+        assertFalse(lock.isLocked());
+        try {
+            condition.signal();
+            fail("Expected exception");
+        } catch (IllegalMonitorStateException expected) {
+        }
+        Thread.currentThread().interrupt();
+        lock.lock();
+        try {
+            condition.await();
+            fail("Expected exception");
+        } catch (InterruptedException expected) {
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    public void testAdaptiveSpinLock() throws InterruptedException {
+        checkReentrancy(Locks.adaptiveSpinLock());
+        checkMutualExclusion(Locks.adaptiveSpinLock());
+        checkTimedLock(Locks.adaptiveSpinLock());
+        checkCondition(Locks.adaptiveSpinLock());
+    }
+
+    @Test
+    public void testAdaptiveSpinLockTimeout() throws InterruptedException {
+        try {
+            Locks.adaptiveSpinLock().tryLock(1, null);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        final InstrumentedLock lock = Locks.instrumented(Locks.adaptiveSpinLock());
+        final AtomicBoolean result = new AtomicBoolean(true);
+        lock.lock();
+        try {
+            final Thread thread = new Thread(() -> {
+                try {
+                    result.set(lock.tryLock(0, TimeUnit.NANOSECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            thread.join();
+        } finally {
+            lock.unlock();
+        }
+        assertFalse(result.get());
+        // an attempt without a timeout does not spin
+        assertEquals(0, lock.getStatistics().getSpins());
+    }
+
+    @Test
+    public void testQueueSpinLock() throws InterruptedException {
+        checkReentrancy(Locks.queueSpinLock());
+        checkMutualExclusion(Locks.queueSpinLock());
+        checkTimedLock(Locks.queueSpinLock());
+        checkCondition(Locks.queueSpinLock());
+    }
+
+    @Test
+    public void testQueueSpinLockFairness() throws InterruptedException {
+        final ExtendedLock lock = Locks.queueSpinLock();
+        final int threadCnt = 4;
+        final int[] order = new int[threadCnt];
+        final int[] cnt = new int[1];
+        final Thread[] threads = new Thread[threadCnt];
+        lock.lock();
+        try {
+            for (int i = 0; i < threadCnt; i ++) {
+                final int id = i;
+                threads[i] = new Thread(() -> {
+                    lock.lock();
+                    try {
+                        order[cnt[0] ++] = id;
+                    } finally {
+                        lock.unlock();
+                    }
+                });
+                threads[i].start();
+                // give the thread time to join the queue
+                Thread.sleep(100);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < threadCnt; i ++) {
+            assertEquals(i, order[i]);
+        }
+    }
+
+    @Test
+    public void testReadWriteLock() throws InterruptedException {
+        checkReentrancy(Locks.readWriteLock().writeLock());
+        checkMutualExclusion(Locks.readWriteLock().writeLock());
+        checkTimedLock(Locks.readWriteLock(true).writeLock());
+        checkCondition(Locks.readWriteLock().writeLock());
+        final ExtendedReadWriteLock rwLock = Locks.readWriteLock();
+        final ExtendedLock readLock = rwLock.readLock();
+        final ExtendedLock writeLock = rwLock.writeLock();
+        readLock.lock();
+        try {
+            assertTrue(readLock.isHeldByCurrentThread());
+            assertFalse(writeLock.isLocked());
+            final AtomicBoolean result = new AtomicBoolean();
+            final Thread thread = new Thread(() -> {
+                // readers share the lock, but exclude writers
+                if (readLock.tryLock()) {
+                    readLock.unlock();
+                    result.set(! writeLock.tryLock());
+                }
+            });
+            thread.start();
+            thread.join();
+            assertTrue(result.get());
+        } finally {
+            readLock.unlock();
+        }
+        assertFalse(readLock.isLocked());
+    }
+
+    @Test
+    public void testOptimisticRead() throws InterruptedException {
+        final ExtendedReadWriteLock rwLock = Locks.readWriteLock();
+        final ExtendedLock writeLock = rwLock.writeLock();
+        long stamp = rwLock.tryOptimisticRead();
+        assertNotEquals(0, stamp);
+        assertTrue(rwLock.validate(stamp));
+        assertFalse(rwLock.validate(0));
+        writeLock.lock();
+        try {
+            assertEquals(0, rwLock.tryOptimisticRead());
+            assertFalse(rwLock.validate(stamp));
+            // reentrant acquisition does not make the stamp valid again
+            writeLock.lock();
+            writeLock.unlock();
+            assertEquals(0, rwLock.tryOptimisticRead());
+        } finally {
+            writeLock.unlock();
+        }
+        assertFalse(rwLock.validate(stamp));
+        stamp = rwLock.tryOptimisticRead();
+        assertNotEquals(0, stamp);
+        // a read lock does not invalidate the stamp
+        rwLock.readLock().lock();
+        rwLock.readLock().unlock();
+        assertTrue(rwLock.validate(stamp));
+        // the stamp is invalid while a writer waits on a condition, and remains so afterwards
+        final Condition condition = writeLock.newCondition();
+        writeLock.lock();
+        try {
+            final long[] seen = new long[1];
+            final Thread thread = new Thread(() -> {
+                // the stamp becomes available once the waiter has released the lock
+                while ((seen[0] = rwLock.tryOptimisticRead()) == 0) {
+                    Thread.yield();
+                }
+                writeLock.lock();
+                try {
+                    condition.signal();
+                } finally {
+                    writeLock.unlock();
+                }
+            });
+            thread.start();
+            assertTrue(condition.await(10, TimeUnit.SECONDS));
+            assertEquals(0, rwLock.tryOptimisticRead());
+            thread.join();
+            assertNotEquals(0, seen[0]);
+            assertFalse(rwLock.validate(seen[0]));
+        } finally {
+            writeLock.unlock();
+        }
+        assertFalse(rwLock.validate(stamp));
+        // consistency of optimistic reads under concurrent writes
+        final long[] pair = new long[2];
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100_000; i ++) {
+                writeLock.lock();
+                try {
+                    pair[0] = i;
+                    pair[1] = -i;
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+            done.set(true);
+        });
+        writer.start();
+        while (! done.get()) {
+            final long s = rwLock.tryOptimisticRead();
+            final long a = pair[0];
+            final long b = pair[1];
+            if (rwLock.validate(s)) {
+                assertEquals(a, -b);
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    public void testStripedLock() throws InterruptedException {
+        final StripedLock striped = Locks.striped(5, Locks::spinLock);
+        assertEquals(8, striped.getStripeCount());
+        for (int i = 0; i < 1000; i ++) {
+            final Integer key = Integer.valueOf(i * 31);
+            assertSame(striped.getLock(key), striped.getLock(key.hashCode()));
+        }
+        for (int i = 0; i < striped.getStripeCount(); i ++) {
+            for (int j = 0; j < i; j ++) {
+                assertNotSame(striped.getStripe(i), striped.getStripe(j));
+            }
+        }
+        assertEquals(1, Locks.striped(1, Locks::reentrantLock).getStripeCount());
+        checkMutualExclusion(striped.getLock("key"));
+        try {
+            Locks.striped(0, Locks::spinLock);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testInstrumentedLock() throws InterruptedException {
+        checkReentrancy(Locks.instrumented(Locks.spinLock()));
+        checkMutualExclusion(Locks.instrumented(Locks.reentrantLock()));
+        checkTimedLock(Locks.instrumented(Locks.queueSpinLock()));
+        checkCondition(Locks.instrumented(Locks.adaptiveSpinLock()));
+        final InstrumentedLock lock = Locks.instrumented(Locks.spinLock());
+        final LockStatistics statistics = lock.getStatistics();
+        lock.lock();
+        try {
+            assertSame(Thread.currentThread(), lock.getOwner());
+            lock.lock();
+            lock.unlock();
+            assertSame(Thread.currentThread(), lock.getOwner());
+            final Thread thread = new Thread(() -> {
+                lock.lock();
+                lock.unlock();
+            });
+            thread.start();
+            Thread.sleep(50);
+            lock.unlock();
+            thread.join();
+        } finally {
+            if (lock.isHeldByCurrentThread()) lock.unlock();
+        }
+        assertNull(lock.getOwner());
+        assertEquals(3, statistics.getAcquisitions());
+        assertEquals(1, statistics.getContendedAcquisitions());
+        assertTrue(statistics.getSpins() > 0);
+        assertTrue(statistics.getTotalWaitTime() > 0);
+        assertEquals(1, sum(statistics.getWaitTimeHistogram()));
+        assertEquals(2, sum(statistics.getHoldTimeHistogram()));
+        assertTrue(statistics.getTotalHoldTime() >= TimeUnit.MILLISECONDS.toNanos(50));
+        // a condition wait ends the hold
+        final Condition condition = lock.newCondition();
+        lock.lock();
+        try {
+            assertFalse(condition.await(1, TimeUnit.MILLISECONDS));
+            assertSame(Thread.currentThread(), lock.getOwner());
+        } finally {
+            lock.unlock();
+        }
+        assertEquals(4, sum(statistics.getHoldTimeHistogram()));
+        // disabled
+        lock.setEnabled(false);
+        lock.lock();
+        assertNull(lock.getOwner());
+        lock.unlock();
+        assertEquals(4, statistics.getAcquisitions());
+        statistics.reset();
+        assertEquals(0, statistics.getAcquisitions());
+        assertEquals(0, sum(statistics.getHoldTimeHistogram()));
+        assertEquals(0, LockStatistics.getBucket(0));
+        assertEquals(1, LockStatistics.getBucket(1));
+        assertEquals(2, LockStatistics.getBucket(3));
+        assertEquals(11, LockStatistics.getBucket(1024));
+        assertEquals(LockStatistics.BUCKETS - 1, LockStatistics.getBucket(Long.MAX_VALUE));
+    }
+
+    /**
+     * A fair lock which fails the test if it is acquired by a barging {@code tryLock()}.
+     */
+    static final class NoBargingLock implements ExtendedLock {
+        private final ExtendedLock delegate = Locks.reentrantLock(true);
+
+        public boolean isLocked() {
+            return delegate.isLocked();
+        }
+
+        public boolean isHeldByCurrentThread() {
+            return delegate.isHeldByCurrentThread();
+        }
+
+        public boolean isFair() {
+            return true;
+        }
+
+        public void lock() {
+            delegate.lock();
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            delegate.lockInterruptibly();
+        }
+
+        public boolean tryLock() {
+            throw new AssertionError("Barging acquisition of a fair lock");
+        }
+
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+            return delegate.tryLock(time, unit);
+        }
+
+        public void unlock() {
+            delegate.unlock();
+        }
+
+        public Condition newCondition() {
+            return delegate.newCondition();
+        }
+    }
+
+    @Test
+    public void testInstrumentedFairLock() throws InterruptedException {
+        final InstrumentedLock lock = Locks.instrumented(new NoBargingLock());
+        assertTrue(lock.isFair());
+        lock.lock();
+        lock.unlock();
+        lock.lockInterruptibly();
+        lock.unlock();
+        assertTrue(lock.tryLock());
+        lock.unlock();
+        assertTrue(lock.tryLock(1, TimeUnit.MILLISECONDS));
+        lock.unlock();
+        // a pending interrupt does not prevent an uninterruptible acquisition, and is kept
+        Thread.currentThread().interrupt();
+        try {
+            assertTrue(lock.tryLock());
+            lock.unlock();
+            lock.lock();
+            lock.unlock();
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(6, lock.getStatistics().getAcquisitions());
+        assertEquals(0, lock.getStatistics().getContendedAcquisitions());
+        lock.setEnabled(false);
+        assertTrue(lock.tryLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void testInstrumentedAdaptiveSpinLock() throws InterruptedException {
+        final InstrumentedLock lock = Locks.instrumented(Locks.adaptiveSpinLock());
+        lock.lock();
+        final Thread thread = new Thread(() -> {
+            lock.lock();
+            lock.unlock();
+        });
+        thread.start();
+        Thread.sleep(100);
+        lock.unlock();
+        thread.join();
+        // the waiter should have given up spinning
+        assertEquals(1, lock.getStatistics().getContendedAcquisitions());
+        assertEquals(1, lock.getStatistics().getParks());
+    }
+
+    private static long sum(long[] array) {
+        long sum = 0;
+        for (long val : array) {
+            sum += val;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.net;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests which are shared by the primitive-valued CIDR address tables.  Values are passed as {@code long} and are
+ * converted to the value type of the table by the subclass.
+ *
+ * @param <N> the boxed value type of the table
+ */
+public abstract class AbstractPrimitiveCidrAddressTableTest<N extends Number> {
+    abstract N box(long value);
+
+    abstract long get(InetAddress address, long defVal);
+
+    abstract long get(int ipv4, long defVal);
+
+    abstract long getExact(CidrAddress block, long defVal);
+
+    abstract void put(CidrAddress block, long value);
+
+    abstract boolean putIfAbsent(CidrAddress block, long value);
+
+    abstract void putAll(Map<CidrAddress, N> map);
+
+    abstract boolean removeExact(CidrAddress block);
+
+    abstract int size();
+
+    abstract boolean isEmpty();
+
+    abstract void clear();
+
+    /**
+     * Get a value which is unique for the given index and which is valid for the table.
+     */
+    abstract long value(int i);
+
+    @Test
+    public void testBig4() {
+        put(CidrAddress.create(Inet.parseInet4Address("0.0.0.0"), 0), 0);
+        put(CidrAddress.create(Inet.parseInet4Address("8.8.8.8"), 32), 1);
+        put(CidrAddress.create(Inet.parseInet4Address("127.0.0.0"), 8), 2);
+        put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), 3);
+        put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 12), 4);
+        assertFalse(putIfAbsent(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 12), 99));
+        assertTrue(putIfAbsent(CidrAddress.create(Inet.parseInet4Address("10.16.0.0"), 12), 5));
+        assertEquals(6, size());
+        assertEquals(4, get(Inet.parseInet4Address("10.4.5.9"), -1));
+        assertEquals(3, get(Inet.parseInet4Address("10.33.5.9"), -1));
+        assertEquals(0, get(Inet.parseInet4Address("11.4.5.9"), -1));
+        assertEquals(1, get(Inet.parseInet4Address("8.8.8.8"), -1));
+        assertEquals(2, get(0x7f_00_00_01, -1));
+        assertEquals(5, getExact(CidrAddress.create(Inet.parseInet4Address("10.16.0.0"), 12), -1));
+        put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 12), 40);
+        assertEquals(40, get(Inet.parseInet4Address("10.4.5.9"), -1));
+        assertTrue(removeExact(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 12)));
+        assertFalse(removeExact(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 12)));
+        assertEquals(3, get(Inet.parseInet4Address("10.4.5.9"), -1));
+        clear();
+        assertTrue(isEmpty());
+        assertEquals(-1, get(Inet.parseInet4Address("10.4.5.9"), -1));
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        final Random random = new Random(0x1a7L);
+        final CidrAddressTable<Long> expected = new CidrAddressTable<>();
+        final Map<CidrAddress, N> bulk = new HashMap<>();
+        for (int i = 0; i < 2000; i ++) {
+            final byte[] bytes = new byte[i % 2 == 0 ? 4 : 16];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x0f;
+            final CidrAddress block = CidrAddress.create(bytes, random.nextInt(bytes.length * 4 + 1));
+            expected.put(block, Long.valueOf(value(i)));
+            if (i < 1000) {
+                put(block, value(i));
+            } else {
+                bulk.put(block, box(value(i)));
+            }
+        }
+        putAll(bulk);
+        assertEquals(expected.size(), size());
+        for (int i = 0; i < 20000; i ++) {
+            final byte[] bytes = new byte[i % 2 == 0 ? 4 : 16];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x0f;
+            final InetAddress address = InetAddress.getByAddress(bytes);
+            assertEquals(expected.getOrDefault(address, Long.valueOf(-1)).longValue(), get(address, -1));
+        }
+    }
+
+    @Test
+    public void testPutAllNulls() {
+        final Map<CidrAddress, N> map = new HashMap<>();
+        map.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), box(1));
+        map.put(null, box(2));
+        try {
+            putAll(map);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        map.remove(null);
+        map.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 12), null);
+        try {
+            putAll(map);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        // nothing was added
+        assertTrue(isEmpty());
+    }
+}
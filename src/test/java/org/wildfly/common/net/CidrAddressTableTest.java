@@ -20,6 +20,16 @@ package org.wildfly.common.net;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assume;
 import org.junit.Test;
 
 public class CidrAddressTableTest {
@@ -184,4 +194,266 @@ public class CidrAddressTableTest {
         assertTrue(table.replaceExact(CidrAddress.create(Inet.parseInet6Address("5e:4fff::"), 32), "nyan", "hiss"));
         assertEquals("hiss", table.get(Inet.parseInet6Address("5e:4fff:6:a::5:e")));
     }
+
+    @Test
+    public void testRandom4() throws Exception {
+        final Random random = new Random(0x4a11_3e5dL);
+        final CidrAddressTable<String> table = new CidrAddressTable<>();
+        for (int i = 0; i < 2000; i ++) {
+            final byte[] bytes = new byte[4];
+            random.nextBytes(bytes);
+            // cluster the blocks to get plenty of nesting
+            bytes[0] &= 0x0f;
+            final CidrAddress block = CidrAddress.create(bytes, random.nextInt(33));
+            table.put(block, block.toString());
+        }
+        for (int i = 0; i < 20000; i ++) {
+            final byte[] bytes = new byte[4];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x0f;
+            final InetAddress address = InetAddress.getByAddress(bytes);
+            assertEquals(scan(table, address), table.get(address));
+        }
+    }
+
+    @Test
+    public void testRandom6() throws Exception {
+        final Random random = new Random(0x6a11_3e5dL);
+        final CidrAddressTable<String> table = new CidrAddressTable<>();
+        for (int i = 0; i < 2000; i ++) {
+            final byte[] bytes = new byte[16];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x03;
+            bytes[9] &= 0x03;
+            final CidrAddress block = CidrAddress.create(bytes, random.nextInt(129));
+            table.put(block, block.toString());
+        }
+        for (int i = 0; i < 20000; i ++) {
+            final byte[] bytes = new byte[16];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x03;
+            bytes[9] &= 0x03;
+            final InetAddress address = InetAddress.getByAddress(bytes);
+            assertEquals(scan(table, address), table.get(address));
+        }
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        final Random random = new Random(0xb0170e7L);
+        final CidrAddressTable<String> table = new CidrAddressTable<>();
+        final CidrAddressTable.Builder<String> builder = CidrAddressTable.builder();
+        for (int i = 0; i < 2000; i ++) {
+            final byte[] bytes = new byte[4];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x0f;
+            final CidrAddress block = CidrAddress.create(bytes, random.nextInt(33));
+            table.put(block, block.toString());
+            builder.put(block, block.toString());
+        }
+        final CidrAddressTable<String> built = builder.build();
+        assertEquals(table.size(), built.size());
+        for (CidrAddressTable.Mapping<String> mapping : built) {
+            CidrAddressTable.Mapping<String> parent = null;
+            for (CidrAddressTable.Mapping<String> candidate : built) {
+                if (candidate != mapping && candidate.getRange().matches(mapping.getRange()) && (parent == null || candidate.getRange().getNetmaskBits() > parent.getRange().getNetmaskBits())) {
+                    parent = candidate;
+                }
+            }
+            assertSame(mapping.getRange().toString(), parent, mapping.getParent());
+        }
+        for (int i = 0; i < 20000; i ++) {
+            final byte[] bytes = new byte[4];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x0f;
+            final InetAddress address = InetAddress.getByAddress(bytes);
+            assertEquals(table.get(address), built.get(address));
+        }
+    }
+
+    @Test
+    public void testPutAll() {
+        CidrAddressTable<String> table = new CidrAddressTable<>();
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), "big private");
+        table.put(CidrAddress.create(Inet.parseInet4Address("192.168.1.0"), 24), "little private");
+        final Map<CidrAddress, String> map = new HashMap<>();
+        map.put(CidrAddress.create(Inet.parseInet4Address("10.16.0.0"), 12), "big private sub-block");
+        map.put(CidrAddress.create(Inet.parseInet4Address("192.168.1.0"), 24), "replaced private");
+        map.put(CidrAddress.create(Inet.parseInet6Address("1010::"), 16), "six");
+        table.putAll(map);
+        assertEquals(4, table.size());
+        assertEquals("big private sub-block", table.get(Inet.parseInet4Address("10.17.5.9")));
+        assertEquals("big private", table.get(Inet.parseInet4Address("10.33.5.9")));
+        assertEquals("replaced private", table.get(Inet.parseInet4Address("192.168.1.34")));
+        assertEquals("six", table.get(Inet.parseInet6Address("1010:1011::")));
+        for (CidrAddressTable.Mapping<String> mapping : table) {
+            if (mapping.getValue().equals("big private sub-block")) {
+                assertEquals("big private", mapping.getParent().getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        CidrAddressTable<String> table = new CidrAddressTable<>();
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), "big private");
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 12), "big private sub-block");
+        table.put(CidrAddress.create(Inet.parseInet4Address("192.168.1.0"), 24), "little private");
+        table.update(mutator -> {
+            mutator.removeExact(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8));
+            mutator.removeExact(CidrAddress.create(Inet.parseInet4Address("11.0.0.0"), 8));
+            mutator.put(CidrAddress.create(Inet.parseInet4Address("0.0.0.0"), 0), "the big block");
+        });
+        assertEquals(3, table.size());
+        assertEquals("big private sub-block", table.get(Inet.parseInet4Address("10.4.5.9")));
+        assertEquals("the big block", table.get(Inet.parseInet4Address("10.33.5.9")));
+        for (CidrAddressTable.Mapping<String> mapping : table) {
+            if (mapping.getValue().equals("the big block")) {
+                assertNull(mapping.getParent());
+            } else {
+                assertEquals("the big block", mapping.getParent().getValue());
+            }
+        }
+        table.update(mutator -> {
+            mutator.clear();
+            mutator.put(CidrAddress.create(Inet.parseInet4Address("192.168.1.0"), 24), "little private");
+        });
+        assertEquals(1, table.size());
+        assertNull(table.get(Inet.parseInet4Address("10.4.5.9")));
+        assertEquals("little private", table.get(Inet.parseInet4Address("192.168.1.34")));
+    }
+
+    @Test
+    public void testPrimitiveLookups() {
+        CidrAddressTable<String> table = new CidrAddressTable<>();
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), "big private");
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.16.0.0"), 12), "big private sub-block");
+        table.put(CidrAddress.create(Inet.parseInet6Address("1010:1010::"), 32), "six");
+        assertEquals("big private sub-block", table.get(0x0a_11_05_09));
+        assertEquals("big private", table.get(0x0a_21_05_09));
+        assertEquals("woof", table.getOrDefault(0x0b_21_05_09, "woof"));
+        assertEquals("six", table.get(0x1010_1010_2993_9938L, 0L, 0));
+        assertNull(table.get(0x1010_1011_2993_9938L, 0L, 0));
+        final byte[] bytes = new byte[24];
+        System.arraycopy(Inet.parseInet6Address("1010:1010:5::1").getAddress(), 0, bytes, 3, 16);
+        assertEquals("six", table.get(bytes, 3, 16, 0));
+        System.arraycopy(Inet.parseInet4Address("10.17.5.9").getAddress(), 0, bytes, 7, 4);
+        assertEquals("big private sub-block", table.get(bytes, 7, 4, 0));
+        try {
+            table.get(bytes, 0, 8, 0);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testPrimitiveLookupsDoNotAllocate() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+        final Random random = new Random(0xa110cL);
+        final CidrAddressTable.Builder<String> builder = CidrAddressTable.builder();
+        for (int i = 0; i < 2000; i ++) {
+            final byte[] bytes = new byte[i % 2 == 0 ? 4 : 16];
+            random.nextBytes(bytes);
+            final CidrAddress block = CidrAddress.create(bytes, random.nextInt(bytes.length * 8 + 1));
+            builder.put(block, block.toString());
+        }
+        final CidrAddressTable<String> table = builder.build();
+        final ByteBuffer buffer = ByteBuffer.allocate(16 * 1000);
+        random.nextBytes(buffer.array());
+        final byte[] array = buffer.array();
+        final long id = Thread.currentThread().getId();
+        int hits = 0;
+        // warm up, and measure the overhead of the measurement itself
+        for (int i = 0; i < 50; i ++) {
+            hits += lookupAll(table, buffer, array);
+        }
+        long before = bean.getThreadAllocatedBytes(id);
+        long overhead = bean.getThreadAllocatedBytes(id) - before;
+        before = bean.getThreadAllocatedBytes(id);
+        final int rounds = 100;
+        for (int i = 0; i < rounds; i ++) {
+            hits += lookupAll(table, buffer, array);
+        }
+        final long allocated = bean.getThreadAllocatedBytes(id) - before - overhead;
+        assertTrue(hits > 0);
+        // the runtime may allocate a few bytes on this thread by itself, but a lookup must never allocate
+        assertEquals("Bytes allocated per lookup", 0.0, (double) allocated / (rounds * 3000), 0.01);
+    }
+
+    @Test
+    public void testBatchLookups() {
+        final Random random = new Random(0xba7c4L);
+        final CidrAddressTable.Builder<String> builder = CidrAddressTable.builder();
+        for (int i = 0; i < 2000; i ++) {
+            final byte[] bytes = new byte[i % 2 == 0 ? 4 : 16];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x0f;
+            final CidrAddress block = CidrAddress.create(bytes, random.nextInt(bytes.length * 4 + 1));
+            builder.put(block, block.toString());
+        }
+        final CidrAddressTable<String> table = builder.build();
+        final int cnt = 50000;
+        final int[] ipv4s = new int[cnt];
+        final long[] ipv6s = new long[cnt << 1];
+        final ByteBuffer packed4 = ByteBuffer.allocate(cnt << 2);
+        final ByteBuffer packed6 = ByteBuffer.allocate(cnt << 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < cnt; i ++) {
+            ipv4s[i] = random.nextInt() & 0x0fff_ffff;
+            ipv6s[i << 1] = random.nextLong() & 0x0fff_ffff_ffff_ffffL;
+            ipv6s[(i << 1) + 1] = random.nextLong();
+            packed4.putInt(ipv4s[i]);
+            packed6.putLong(Long.reverseBytes(ipv6s[i << 1])).putLong(Long.reverseBytes(ipv6s[(i << 1) + 1]));
+        }
+        packed4.flip();
+        packed6.flip();
+        final String[] results4 = new String[cnt];
+        final String[] results6 = new String[cnt];
+        final String[] parallel4 = new String[cnt];
+        final String[] parallel6 = new String[cnt];
+        final String[] packedResults4 = new String[cnt];
+        final String[] packedResults6 = new String[cnt];
+        table.getAll(ipv4s, results4);
+        table.getAll(ipv6s, results6);
+        table.parallelGetAll(ipv4s, parallel4);
+        table.parallelGetAll(ipv6s, parallel6);
+        assertEquals(cnt, table.getAll(packed4, 4, packedResults4));
+        assertEquals(cnt, table.getAll(packed6, 16, packedResults6));
+        assertFalse(packed4.hasRemaining());
+        assertFalse(packed6.hasRemaining());
+        int hits = 0;
+        for (int i = 0; i < cnt; i ++) {
+            assertEquals(table.get(ipv4s[i]), results4[i]);
+            assertEquals(table.get(ipv6s[i << 1], ipv6s[(i << 1) + 1], 0), results6[i]);
+            assertEquals(results4[i], parallel4[i]);
+            assertEquals(results6[i], parallel6[i]);
+            assertEquals(results4[i], packedResults4[i]);
+            assertEquals(results6[i], packedResults6[i]);
+            if (results4[i] != null) hits ++;
+            if (results6[i] != null) hits ++;
+        }
+        assertTrue(hits > 0);
+    }
+
+    private static int lookupAll(CidrAddressTable<String> table, ByteBuffer buffer, byte[] array) {
+        int hits = 0;
+        for (int i = 0; i < 1000; i ++) {
+            if (table.get(buffer.getInt(i << 4)) != null) hits ++;
+            if (table.get(buffer.getLong(i << 4), buffer.getLong((i << 4) + 8), 0) != null) hits ++;
+            if (table.get(array, i << 4, 16, 0) != null) hits ++;
+        }
+        return hits;
+    }
+
+    private static <T> T scan(CidrAddressTable<T> table, InetAddress address) {
+        CidrAddressTable.Mapping<T> best = null;
+        for (CidrAddressTable.Mapping<T> mapping : table) {
+            if (mapping.getRange().matches(address) && (best == null || mapping.getRange().getNetmaskBits() > best.getRange().getNetmaskBits())) {
+                best = mapping;
+            }
+        }
+        return best == null ? null : best.getValue();
+    }
 }
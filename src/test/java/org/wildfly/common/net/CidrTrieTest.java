@@ -0,0 +1,56 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.net;
+
+import static org.junit.Assert.*;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CidrTrieTest {
+    @Test
+    public void testIpv4Bits() throws Exception {
+        final byte[][] fixed = {
+            { 0, 0, 0, 0 },
+            { (byte) 255, (byte) 255, (byte) 255, (byte) 255 },
+            { 127, 0, 0, 1 },
+            { (byte) 128, 0, 0, 1 },
+            { 10, 4, 5, 9 },
+            { 1, 2, 3, (byte) 0x80 },
+        };
+        for (byte[] bytes : fixed) {
+            checkIpv4Bits(bytes);
+        }
+        final Random random = new Random(3249);
+        final byte[] bytes = new byte[4];
+        for (int i = 0; i < 10_000; i ++) {
+            random.nextBytes(bytes);
+            checkIpv4Bits(bytes);
+        }
+    }
+
+    private static void checkIpv4Bits(final byte[] bytes) throws Exception {
+        final Inet4Address address = (Inet4Address) InetAddress.getByAddress(bytes);
+        final byte[] expected = address.getAddress();
+        assertEquals(address.toString(), (int) (CidrTrie.hiBits(expected) >>> 32), CidrTrie.ipv4Bits(address));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.net;
+
+import java.net.InetAddress;
+import java.util.Map;
+
+public class IntCidrAddressTableTest extends AbstractPrimitiveCidrAddressTableTest<Integer> {
+    private final IntCidrAddressTable table = new IntCidrAddressTable();
+
+    Integer box(final long value) {
+        return Integer.valueOf((int) value);
+    }
+
+    long get(final InetAddress address, final long defVal) {
+        return table.getInt(address, (int) defVal);
+    }
+
+    long get(final int ipv4, final long defVal) {
+        return table.getInt(ipv4, (int) defVal);
+    }
+
+    long getExact(final CidrAddress block, final long defVal) {
+        return table.getExact(block, (int) defVal);
+    }
+
+    void put(final CidrAddress block, final long value) {
+        table.put(block, (int) value);
+    }
+
+    boolean putIfAbsent(final CidrAddress block, final long value) {
+        return table.putIfAbsent(block, (int) value);
+    }
+
+    void putAll(final Map<CidrAddress, Integer> map) {
+        table.putAll(map);
+    }
+
+    boolean removeExact(final CidrAddress block) {
+        return table.removeExact(block);
+    }
+
+    int size() {
+        return table.size();
+    }
+
+    boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    void clear() {
+        table.clear();
+    }
+
+    long value(final int i) {
+        return i;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.net;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MappedCidrAddressTableTest {
+    @Test
+    public void testSimple() {
+        CidrAddressTable<String> table = new CidrAddressTable<>();
+        table.put(CidrAddress.create(Inet.parseInet4Address("0.0.0.0"), 0), "0");
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), "1");
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.16.0.0"), 12), "2");
+        table.put(CidrAddress.create(Inet.parseInet6Address("1010:1010::"), 32), "3");
+        final MappedCidrAddressTable mapped = MappedCidrAddressTable.wrap(MappedCidrAddressTable.createImage(table, Integer::parseInt));
+        assertEquals(4, mapped.size());
+        assertEquals(2, mapped.getInt(Inet.parseInet4Address("10.17.5.9"), -1));
+        assertEquals(1, mapped.getInt(Inet.parseInet4Address("10.33.5.9"), -1));
+        assertEquals(0, mapped.getInt(Inet.parseInet4Address("11.33.5.9"), -1));
+        assertEquals(3, mapped.getInt(Inet.parseInet6Address("1010:1010:5::1"), -1));
+        assertEquals(-1, mapped.getInt(Inet.parseInet6Address("1010:1011:5::1"), -1));
+    }
+
+    @Test
+    public void testEmpty() {
+        final MappedCidrAddressTable mapped = MappedCidrAddressTable.wrap(MappedCidrAddressTable.createImage(new CidrAddressTable<String>(), Integer::parseInt));
+        assertTrue(mapped.isEmpty());
+        assertEquals(-1, mapped.getInt(Inet.parseInet4Address("10.17.5.9"), -1));
+        assertEquals(-1, mapped.getInt(Inet.parseInet6Address("1010:1010:5::1"), -1));
+    }
+
+    @Test
+    public void testInvalidImage() {
+        final CidrAddressTable<String> table = new CidrAddressTable<>();
+        table.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), "1");
+        final ByteBuffer image = MappedCidrAddressTable.createImage(table, Integer::parseInt);
+        final ByteBuffer truncated = ByteBuffer.wrap(image.array(), 0, image.limit() - 1);
+        try {
+            MappedCidrAddressTable.wrap(truncated);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        final ByteBuffer corrupted = ByteBuffer.wrap(image.array().clone());
+        // point the IPv4 root at a nonexistent node
+        corrupted.putInt(16, 5);
+        try {
+            MappedCidrAddressTable.wrap(corrupted);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        final Random random = new Random(0x3a9fL);
+        final CidrAddressTable.Builder<Integer> builder = CidrAddressTable.builder();
+        for (int i = 0; i < 5000; i ++) {
+            final byte[] bytes = new byte[i % 2 == 0 ? 4 : 16];
+            random.nextBytes(bytes);
+            bytes[0] &= 0x0f;
+            builder.put(CidrAddress.create(bytes, random.nextInt(bytes.length * 4 + 1)), Integer.valueOf(i));
+        }
+        final CidrAddressTable<Integer> table = builder.build();
+        final Path dir = Files.createTempDirectory("cidr");
+        final Path path = dir.resolve("table.bin");
+        try {
+            MappedCidrAddressTable.write(table, Integer::intValue, path);
+            final MappedCidrAddressTable mapped = MappedCidrAddressTable.open(path);
+            assertEquals(table.size(), mapped.size());
+            for (int i = 0; i < 20000; i ++) {
+                final byte[] bytes = new byte[i % 2 == 0 ? 4 : 16];
+                random.nextBytes(bytes);
+                bytes[0] &= 0x0f;
+                final InetAddress address = InetAddress.getByAddress(bytes);
+                final Integer expected = table.get(address);
+                assertEquals(expected == null ? -1 : expected.intValue(), mapped.getInt(address, -1));
+            }
+            final CidrAddressTable<Integer> replacement = new CidrAddressTable<>();
+            replacement.put(CidrAddress.create(Inet.parseInet4Address("10.0.0.0"), 8), Integer.valueOf(1234));
+            MappedCidrAddressTable.write(replacement, Integer::intValue, path);
+            mapped.replace(path);
+            assertEquals(1, mapped.size());
+            assertEquals(1234, mapped.getInt(0x0a_01_02_03, -1));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+}
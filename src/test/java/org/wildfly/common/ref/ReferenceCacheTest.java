@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.ref;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ReferenceCacheTest {
+
+    @Test
+    public void testStrong() {
+        final ReferenceCache<String, Integer> cache = new ReferenceCache<>(Reference.Type.STRONG, Reference.Type.STRONG);
+        assertNull(cache.get("a"));
+        assertNull(cache.put("a", 1));
+        assertEquals(Integer.valueOf(1), cache.put("a", 2));
+        assertEquals(Integer.valueOf(2), cache.putIfAbsent("a", 3));
+        assertEquals(Integer.valueOf(2), cache.get("a"));
+        assertEquals(Integer.valueOf(4), cache.computeIfAbsent("b", k -> 4));
+        assertEquals(Integer.valueOf(4), cache.computeIfAbsent("b", k -> 5));
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(2), cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(0, cache.getExpungeCount());
+    }
+
+    @Test
+    public void testWeakKeyEquality() {
+        final ReferenceCache<String, String> cache = new ReferenceCache<>(Reference.Type.WEAK, Reference.Type.STRONG);
+        final String key = new String("key");
+        cache.put(key, "value");
+        // equal but not identical keys find the same entry
+        assertEquals("value", cache.get(new String("key")));
+        assertEquals("value", cache.put(new String("key"), "value2"));
+        assertEquals(1, cache.size());
+        assertEquals("value2", cache.get(key));
+    }
+
+    @Test
+    public void testWeakKeyExpunge() throws InterruptedException {
+        final ReferenceCache<Object, String> cache = new ReferenceCache<>(Reference.Type.WEAK, Reference.Type.STRONG);
+        cache.put(new Object(), "value");
+        Object key = new Object();
+        cache.put(key, "kept");
+        awaitExpunged(cache, 1);
+        assertEquals(1, cache.size());
+        assertEquals("kept", cache.get(key));
+    }
+
+    @Test
+    public void testWeakValueExpunge() throws InterruptedException {
+        final ReferenceCache<String, Object> cache = new ReferenceCache<>(Reference.Type.STRONG, Reference.Type.WEAK);
+        cache.put("a", new Object());
+        final Object value = new Object();
+        cache.put("b", value);
+        awaitExpunged(cache, 1);
+        assertNull(cache.get("a"));
+        assertSame(value, cache.get("b"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        final ReferenceCache<Integer, String> cache = new ReferenceCache<>(Reference.Type.STRONG, Reference.Type.STRONG, 4);
+        for (int i = 0; i < 4; i ++) {
+            cache.put(Integer.valueOf(i), "v" + i);
+        }
+        // entry 0 is recently used, so entry 1 is evicted first
+        assertEquals("v0", cache.get(Integer.valueOf(0)));
+        cache.put(Integer.valueOf(4), "v4");
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(Integer.valueOf(1)));
+        assertEquals("v0", cache.get(Integer.valueOf(0)));
+        for (int i = 5; i < 100; i ++) {
+            cache.put(Integer.valueOf(i), "v" + i);
+            assertTrue(cache.size() <= 4);
+        }
+        // replacing and removing entries do not count as evictions
+        cache.put(Integer.valueOf(99), "x");
+        cache.remove(Integer.valueOf(98));
+        assertEquals(96, cache.getEvictionCount());
+        assertEquals(3, cache.size());
+        // repeated replacement does not leak queue entries
+        for (int i = 0; i < 10_000; i ++) {
+            cache.put(Integer.valueOf(99), "y" + i);
+        }
+        assertTrue(cache.evictionQueueLength() <= 2 * 4 + 1);
+        assertEquals(96, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testBoundedConcurrent() throws InterruptedException {
+        final ReferenceCache<Integer, Integer> cache = new ReferenceCache<>(Reference.Type.STRONG, Reference.Type.STRONG, 64);
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t ++) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i ++) {
+                    final Integer key = Integer.valueOf((i * 31 + seed) & 255);
+                    assertEquals(key, cache.computeIfAbsent(key, k -> k));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(cache.size() <= 64);
+        assertTrue(cache.evictionQueueLength() <= 3 * 64);
+    }
+
+    @Test
+    public void testInvalidType() {
+        try {
+            new ReferenceCache<>(Reference.Type.PHANTOM, Reference.Type.STRONG);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new ReferenceCache<>(Reference.Type.STRONG, Reference.Type.NULL);
+            fail("Expected exception");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void awaitExpunged(final ReferenceCache<?, ?> cache, final long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cache.getExpungeCount() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+}
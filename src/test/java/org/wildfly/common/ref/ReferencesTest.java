@@ -0,0 +1,210 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wildfly.common.ref;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ReferencesTest {
+
+    @Test
+    public void testReap() throws InterruptedException {
+        final ReaperStatistics statistics = References.getReaperStatistics();
+        assertTrue(statistics.getThreadCount() >= 1);
+        final long reaped = statistics.getReapedCount();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final WeakReference<Object, String> ref = new WeakReference<>(new Object(), "a", r -> {
+            assertEquals("a", r.getAttachment());
+            thread.set(Thread.currentThread());
+            latch.countDown();
+        });
+        assertTrue(ref.enqueue());
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(thread.get().getName().startsWith("Reference Reaper #"));
+        awaitReaped(statistics, reaped + 1);
+    }
+
+    @Test
+    public void testExecutorReaper() throws InterruptedException {
+        final ReaperStatistics statistics = References.getReaperStatistics();
+        final long reaped = statistics.getReapedCount();
+        final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "test-reaper"));
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(2);
+            final AtomicReference<Thread> thread = new AtomicReference<>();
+            // occupy the executor so that the hand-off stays pending
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final Reaper<Object, Void> reaper = References.executorReaper(executor, r -> {
+                thread.set(Thread.currentThread());
+                done.countDown();
+            });
+            final PhantomReference<Object, Void> ref1 = new PhantomReference<>(new Object(), null, reaper);
+            final PhantomReference<Object, Void> ref2 = new PhantomReference<>(new Object(), null, reaper);
+            ref1.enqueue();
+            ref2.enqueue();
+            // the reaper threads are not held up by the busy executor
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (statistics.getHandOffQueueDepth() < 1 || statistics.getActiveThreadCount() > 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+            assertEquals(2, done.getCount());
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals("test-reaper", thread.get().getName());
+            awaitReaped(statistics, reaped + 2);
+            assertTrue(statistics.getMaxReapLatency() > 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecutorReaperRejected() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final Reaper<Object, Void> reaper = References.executorReaper(r -> {
+            throw new RejectedExecutionException();
+        }, r -> {
+            thread.set(Thread.currentThread());
+            latch.countDown();
+        });
+        final WeakReference<Object, Void> ref = new WeakReference<>(new Object(), null, reaper);
+        ref.enqueue();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(thread.get().getName().startsWith("Reference Reaper #"));
+    }
+
+    @Test
+    public void testReapFailure() throws InterruptedException {
+        final ReaperStatistics statistics = References.getReaperStatistics();
+        final long failures = statistics.getFailureCount();
+        final WeakReference<Object, Void> ref = new WeakReference<>(new Object(), null, r -> {
+            throw new IllegalStateException("expected");
+        });
+        ref.enqueue();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (statistics.getFailureCount() <= failures) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testBatchReaper() throws InterruptedException {
+        final int threadCount = References.getReaperStatistics().getThreadCount();
+        // occupy every reaper thread so that the batch accumulates in the queue
+        final AtomicInteger blocked = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Reaper<Object, Void> blocker = r -> {
+            blocked.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        final List<WeakReference<Object, Void>> blockers = new ArrayList<>();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < threadCount; i ++) {
+            final WeakReference<Object, Void> ref = new WeakReference<>(new Object(), null, blocker);
+            blockers.add(ref);
+            ref.enqueue();
+            // wait for a thread to pick it up, so that each blocker is in its own batch
+            while (blocked.get() <= i) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+        }
+        final int count = 200;
+        final Set<Integer> reaped = ConcurrentHashMap.newKeySet();
+        final AtomicInteger maxBatch = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        final BatchReaper<Object, Integer> reaper = refs -> {
+            maxBatch.accumulateAndGet(refs.size(), Math::max);
+            for (Reference<Object, Integer> ref : refs) {
+                assertTrue(reaped.add(ref.getAttachment()));
+                done.countDown();
+            }
+        };
+        final List<WeakReference<Object, Integer>> refs = new ArrayList<>();
+        for (int i = 0; i < count; i ++) {
+            refs.add(new WeakReference<>(new Object(), Integer.valueOf(i), reaper));
+        }
+        Collections.shuffle(refs);
+        for (WeakReference<Object, Integer> ref : refs) {
+            ref.enqueue();
+        }
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(count, reaped.size());
+        assertTrue(maxBatch.get() > 1);
+    }
+
+    @Test
+    public void testExecutorBatchReaper() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "test-reaper"));
+        try {
+            final int count = 50;
+            final CountDownLatch done = new CountDownLatch(count);
+            final BatchReaper<Object, Void> batchReaper = refs -> {
+                assertEquals("test-reaper", Thread.currentThread().getName());
+                for (int i = 0; i < refs.size(); i ++) {
+                    done.countDown();
+                }
+            };
+            final Reaper<Object, Void> reaper = References.executorReaper(executor, batchReaper);
+            for (int i = 0; i < count; i ++) {
+                new WeakReference<>(new Object(), null, reaper).enqueue();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitReaped(final ReaperStatistics statistics, final long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (statistics.getReapedCount() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
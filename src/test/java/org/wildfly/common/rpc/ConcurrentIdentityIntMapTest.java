@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.rpc;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentIdentityIntMapTest {
+
+    @Test
+    public void testBasic() {
+        final ConcurrentIdentityIntMap<Object> map = new ConcurrentIdentityIntMap<>(16);
+        final Object[] keys = new Object[1000];
+        for (int i = 0; i < keys.length; i ++) {
+            keys[i] = new Object();
+            assertEquals(-1, map.putIfAbsent(keys[i], i, -1));
+            assertEquals(i, map.putIfAbsent(keys[i], i + 1, -1));
+        }
+        assertEquals(keys.length, map.size());
+        for (int i = 0; i < keys.length; i ++) {
+            assertEquals(i, map.get(keys[i], -1));
+            assertEquals(i, map.computeIfAbsent(keys[i], k -> { throw new IllegalStateException(); }));
+        }
+        assertEquals(-1, map.get(new Object(), -1));
+        final Object key = new Object();
+        assertEquals(1234, map.computeIfAbsent(key, k -> 1234));
+        assertEquals(1234, map.get(key, -1));
+        // identity, not equality
+        final String s1 = new String("x");
+        final String s2 = new String("x");
+        map.putIfAbsent(s1, 1, -1);
+        assertEquals(-1, map.get(s2, -1));
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(keys[0], -1));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final ConcurrentIdentityIntMap<Object> map = new ConcurrentIdentityIntMap<>(16);
+        final int threadCnt = 8;
+        final Object[] keys = new Object[50_000];
+        for (int i = 0; i < keys.length; i ++) {
+            keys[i] = new Object();
+        }
+        final AtomicInteger sequence = new AtomicInteger();
+        final int[][] seen = new int[threadCnt][keys.length];
+        final CyclicBarrier barrier = new CyclicBarrier(threadCnt);
+        final AtomicReference<Throwable> problem = new AtomicReference<>();
+        final Thread[] threads = new Thread[threadCnt];
+        for (int t = 0; t < threadCnt; t ++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    // each thread visits the keys in a different order
+                    for (int i = 0; i < keys.length; i ++) {
+                        final int idx = (i * 7 + id * 6151) % keys.length;
+                        seen[id][idx] = map.computeIfAbsent(keys[idx], k -> sequence.getAndIncrement());
+                        final int other = (idx * 13 + 1) % keys.length;
+                        final int val = map.get(keys[other], -1);
+                        if (val != -1 && seen[id][other] != 0 && seen[id][other] != val) {
+                            throw new AssertionError("Value changed");
+                        }
+                    }
+                } catch (Throwable e) {
+                    problem.set(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (problem.get() != null) {
+            throw new AssertionError(problem.get());
+        }
+        assertEquals(keys.length, map.size());
+        final boolean[] used = new boolean[sequence.get()];
+        for (int i = 0; i < keys.length; i ++) {
+            final int val = map.get(keys[i], -1);
+            for (int t = 0; t < threadCnt; t ++) {
+                assertEquals(val, seen[t][i]);
+            }
+            assertFalse(used[val]);
+            used[val] = true;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2018 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.common.rpc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IdentityIntMapTest {
+
+    @Test
+    public void testClear() {
+        final IdentityIntMap<Object> map = new IdentityIntMap<>(16);
+        final Object[] keys = new Object[100];
+        for (int i = 0; i < keys.length; i ++) {
+            keys[i] = new Object();
+        }
+        for (int round = 0; round < 5; round ++) {
+            // only insert some of the keys in each round
+            for (int i = round; i < keys.length; i += 2) {
+                map.put(keys[i], i * 10 + round);
+            }
+            for (int i = 0; i < keys.length; i ++) {
+                assertEquals((i & 1) == (round & 1) && i >= round ? i * 10 + round : -1, map.get(keys[i], -1));
+            }
+            assertEquals((keys.length - round + 1) / 2, map.size());
+            final IdentityIntMap<Object> clone = map.clone();
+            map.clear();
+            assertEquals(0, map.size());
+            for (Object key : keys) {
+                assertEquals(-1, map.get(key, -1));
+            }
+            // the clone is unaffected
+            assertEquals(round * 10 + round, clone.get(keys[round], -1));
+        }
+        map.put(keys[0], 1);
+        map.purge();
+        assertEquals(-1, map.get(keys[0], -1));
+        assertTrue(map.capacity() >= 128);
+    }
+}
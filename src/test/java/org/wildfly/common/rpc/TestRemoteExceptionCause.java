@@ -24,13 +24,22 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.sql.SQLException;
 import java.util.function.Supplier;
 
 import javax.transaction.xa.XAException;
 
 import org.junit.Test;
+import org.wildfly.common.bytes.ByteStringBuilder;
 import org.wildfly.common.function.ExceptionBiConsumer;
+import org.wildfly.common.iteration.ByteIterator;
 
 public class TestRemoteExceptionCause {
 
@@ -107,9 +116,399 @@ public class TestRemoteExceptionCause {
         final DataOutputStream dos = new DataOutputStream(os);
         cause.writeToStream(dos);
         dos.flush();
-        final ByteArrayInputStream is = new ByteArrayInputStream(os.toByteArray());
+        final byte[] bytes = os.toByteArray();
+        final ByteArrayInputStream is = new ByteArrayInputStream(bytes);
         final DataInputStream dis = new DataInputStream(is);
         resultHandler.accept(throwable, RemoteExceptionCause.readFromStream(dis));
+        // the buffer codecs produce and accept the same bytes
+        final ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        cause.writeTo(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(bytes, buffer.array());
+        buffer.flip();
+        resultHandler.accept(throwable, RemoteExceptionCause.readFrom(buffer));
+        assertFalse(buffer.hasRemaining());
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        resultHandler.accept(throwable, RemoteExceptionCause.readFrom(direct));
+        // the byte order of the buffer does not matter
+        final ByteBuffer little = ByteBuffer.allocate(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        cause.writeTo(little);
+        assertArrayEquals(bytes, little.array());
+        little.flip();
+        resultHandler.accept(throwable, RemoteExceptionCause.readFrom(little));
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        cause.writeTo(builder);
+        assertArrayEquals(bytes, builder.toArray());
+        resultHandler.accept(throwable, RemoteExceptionCause.readFrom(builder.iterate()));
+    }
+
+    @Test
+    public void strings() throws Exception {
+        final String[] strings = { "", "ascii", "nul\0char", "caf\u00e9", "\u20ac\u4e2d\u6587", "emoji \ud83d\ude00", "\u07ff\u0800\uffff" };
+        for (String string : strings) {
+            doSerialTest(() -> new IllegalStateException(string), (t, c) -> assertEquals(string, c.getMessage()));
+        }
+    }
+
+    @Test
+    public void littleEndianBuffer() throws Exception {
+        final Throwable t = new IllegalStateException("caf\u00e9", new NullPointerException("Null pointer!"));
+        t.addSuppressed(new XAException(XAException.XAER_RMERR));
+        final RemoteExceptionCause cause = RemoteExceptionCause.of(t);
+        final ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        cause.writeTo(buffer);
+        buffer.flip();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        final RemoteExceptionCause fromStream = RemoteExceptionCause.readFromStream(new DataInputStream(new ByteArrayInputStream(bytes)));
+        assertEquals(cause.toString(), fromStream.toString());
+        assertEquals("-3", ((RemoteExceptionCause) fromStream.getSuppressed()[0]).getFieldValue("errorCode"));
+        final RemoteExceptionCause fromBuffer = RemoteExceptionCause.readFrom(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        assertEquals(cause.toString(), fromBuffer.toString());
+        assertStackTraceArrayEquals(t, fromBuffer);
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        final RemoteExceptionCause cause = RemoteExceptionCause.of(new IllegalStateException("Message", new NullPointerException()));
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        cause.writeTo(builder);
+        final byte[] bytes = builder.toArray();
+        try {
+            RemoteExceptionCause.readFrom(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+            fail("Expected exception");
+        } catch (EOFException expected) {
+        }
+        try {
+            RemoteExceptionCause.readFrom(ByteIterator.ofBytes(bytes, 0, bytes.length - 1));
+            fail("Expected exception");
+        } catch (EOFException expected) {
+        }
+        try {
+            cause.writeTo(ByteBuffer.allocate(bytes.length - 1));
+            fail("Expected exception");
+        } catch (BufferOverflowException expected) {
+        }
+    }
+
+    @Test
+    public void decodedAsCause() throws Exception {
+        final Throwable t = new IllegalStateException("Message", new NullPointerException("Null pointer!"));
+        t.addSuppressed(new XAException(XAException.XAER_RMERR));
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        RemoteExceptionCause.of(t).writeTo(builder);
+        final RemoteExceptionCause decoded = RemoteExceptionCause.readFrom(ByteBuffer.wrap(builder.toArray()));
+        // a decoded exception is written out identically
+        final ByteStringBuilder copy = new ByteStringBuilder();
+        decoded.writeTo(copy);
+        assertArrayEquals(builder.toArray(), copy.toArray());
+        final RemoteExceptionCause suppressed = (RemoteExceptionCause) decoded.getSuppressed()[0];
+        assertEquals("-3", suppressed.getFieldValue("errorCode"));
+        // printing an enclosing exception reads the stack trace and suppressed list of its cause directly
+        final StringWriter writer = new StringWriter();
+        new RuntimeException("Local", decoded).printStackTrace(new PrintWriter(writer));
+        final String printed = writer.toString();
+        assertTrue(printed, printed.contains("Caused by: " + decoded));
+        assertTrue(printed, printed.contains("\tat " + t.getStackTrace()[0]));
+        assertTrue(printed, printed.contains("Suppressed: " + suppressed));
+        assertTrue(printed, printed.contains("Caused by: " + decoded.getCause()));
+    }
+
+    private static StackTraceElement frame(String className, String methodName) {
+        return new StackTraceElement(className, methodName, "Test.java", 1);
+    }
+
+    private static Throwable trimTestException() {
+        final Throwable t = new IllegalStateException("Message", new NullPointerException());
+        t.setStackTrace(new StackTraceElement[] {
+            frame("a.A", "m1"),
+            frame("org.jboss.invocation.X", "i1"),
+            frame("org.jboss.invocation.Y", "i2"),
+            frame("org.jboss.invocation.sub.Z", "i3"),
+            frame("b.B", "m2"),
+            frame("c.C", "m3"),
+            frame("main.Main", "main"),
+        });
+        t.getCause().setStackTrace(new StackTraceElement[] {
+            frame("d.D", "x"),
+            frame("b.B", "m2"),
+            frame("c.C", "m3"),
+            frame("main.Main", "main"),
+        });
+        return t;
+    }
+
+    private static void assertElided(String label, int count, StackTraceElement element) {
+        assertTrue(element.toString(), RemoteExceptionCause.TrimPolicy.isElided(element));
+        assertEquals(label, element.getClassName());
+        assertEquals(count, RemoteExceptionCause.TrimPolicy.getElidedCount(element));
+    }
+
+    private static void assertTrimmed(RemoteExceptionCause cause) {
+        final StackTraceElement[] stackTrace = cause.getStackTrace();
+        assertEquals(4, stackTrace.length);
+        assertEquals(frame("a.A", "m1"), stackTrace[0]);
+        assertElided("org.jboss.invocation", 3, stackTrace[1]);
+        assertEquals(frame("b.B", "m2"), stackTrace[2]);
+        assertElided("...", 2, stackTrace[3]);
+        final StackTraceElement[] causeTrace = cause.getCause().getStackTrace();
+        assertEquals(2, causeTrace.length);
+        assertEquals(frame("d.D", "x"), causeTrace[0]);
+        assertElided("...", 3, causeTrace[1]);
+    }
+
+    @Test
+    public void trimPolicy() throws Exception {
+        final RemoteExceptionCause.TrimPolicy policy = RemoteExceptionCause.TrimPolicy.UNLIMITED
+            .withCollapsedPackage("org.jboss.invocation.*")
+            .withCommonFramesElided(true)
+            .withMaximumFrames(3);
+        final Throwable t = trimTestException();
+        assertTrimmed(RemoteExceptionCause.of(t, policy));
+        // the same trimming is applied when writing
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        RemoteExceptionCause.of(t).writeTo(builder, new RemoteExceptionCause.WriteContext(policy));
+        final RemoteExceptionCause read = RemoteExceptionCause.readFrom(builder.iterate());
+        assertTrimmed(read);
+        // trimming again does not change anything
+        final ByteStringBuilder again = new ByteStringBuilder();
+        read.writeTo(again, new RemoteExceptionCause.WriteContext(policy));
+        assertArrayEquals(builder.toArray(), again.toArray());
+        // the unlimited policy keeps everything
+        assertStackTraceArrayEquals(t, RemoteExceptionCause.of(t, RemoteExceptionCause.TrimPolicy.UNLIMITED));
+        assertFalse(RemoteExceptionCause.TrimPolicy.isElided(frame("a.A", "m1")));
+    }
+
+    @Test
+    public void trimPolicyDepth() throws Exception {
+        final Throwable t = trimTestException();
+        t.addSuppressed(new IllegalArgumentException());
+        final RemoteExceptionCause.TrimPolicy policy = RemoteExceptionCause.TrimPolicy.UNLIMITED.withMaximumDepth(0);
+        final RemoteExceptionCause cause = RemoteExceptionCause.of(t, policy);
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        RemoteExceptionCause.of(t).writeTo(builder, new RemoteExceptionCause.WriteContext(policy));
+        for (RemoteExceptionCause c : new RemoteExceptionCause[] { cause, RemoteExceptionCause.readFrom(builder.iterate()) }) {
+            assertNull(c.getCause());
+            assertEquals(0, c.getSuppressed().length);
+            final StackTraceElement[] stackTrace = c.getStackTrace();
+            assertEquals(8, stackTrace.length);
+            assertElided("...", 2, stackTrace[7]);
+        }
+        final RemoteExceptionCause nested = RemoteExceptionCause.of(t, RemoteExceptionCause.TrimPolicy.UNLIMITED.withMaximumDepth(1));
+        assertEquals(1, nested.getSuppressed().length);
+        assertEquals(4, nested.getCause().getStackTrace().length);
+    }
+
+    public static class FieldsException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public static String ignored = "static";
+        public int number = 42;
+        public String text;
+        public Object other = this;
+    }
+
+    @Test
+    public void fieldExtraction() throws Exception {
+        final FieldsException t = new FieldsException();
+        final RemoteExceptionCause cause = RemoteExceptionCause.of(t);
+        assertArrayEquals(new Object[] { "number", "other", "text" }, cause.getFieldNames().toArray());
+        assertEquals("42", cause.getFieldValue("number"));
+        assertEquals("null", cause.getFieldValue("text"));
+        assertEquals(t.toString(), cause.getFieldValue("other"));
+        // nested exceptions which are not yet converted are written directly, with the same result
+        final RemoteExceptionCause direct = new RemoteExceptionCause("Message", IllegalStateException.class.getName());
+        direct.addSuppressed(t);
+        direct.addSuppressed(t);
+        direct.addSuppressed(new XAException(XAException.XAER_RMERR));
+        final RemoteExceptionCause converted = new RemoteExceptionCause("Message", IllegalStateException.class.getName());
+        converted.setStackTrace(direct.getStackTrace());
+        converted.addSuppressed(cause);
+        converted.addSuppressed(cause);
+        converted.addSuppressed(RemoteExceptionCause.of(direct.getSuppressed()[2]));
+        final ByteStringBuilder expected = new ByteStringBuilder();
+        converted.writeTo(expected);
+        final ByteStringBuilder actual = new ByteStringBuilder();
+        direct.writeTo(actual);
+        assertArrayEquals(expected.toArray(), actual.toArray());
+    }
+
+    @Test
+    public void fieldsOfConverted() throws Exception {
+        final FieldsException t = new FieldsException();
+        t.text = "before";
+        final RemoteExceptionCause cause = RemoteExceptionCause.of(t);
+        // the values are captured on conversion
+        t.number = 17;
+        t.text = "after";
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        cause.writeTo(builder);
+        final RemoteExceptionCause result = RemoteExceptionCause.readFrom(builder.iterate());
+        assertEquals(FieldsException.class.getName(), result.getExceptionClassName());
+        assertArrayEquals(new Object[] { "number", "other", "text" }, result.getFieldNames().toArray());
+        assertEquals("42", result.getFieldValue("number"));
+        assertEquals("before", result.getFieldValue("text"));
+        assertEquals(t.toString(), result.getFieldValue("other"));
+        // writing after the field map is built produces the same bytes
+        assertEquals(3, cause.getFieldNames().size());
+        final ByteStringBuilder copy = new ByteStringBuilder();
+        cause.writeTo(copy);
+        assertArrayEquals(builder.toArray(), copy.toArray());
+    }
+
+    @Test
+    public void writeContext() throws Exception {
+        final RemoteExceptionCause.WriteContext context = new RemoteExceptionCause.WriteContext();
+        for (int i = 0; i < 10; i ++) {
+            final Throwable t = new IllegalStateException("Message " + i, new NullPointerException("Null pointer!"));
+            t.addSuppressed(t.getCause());
+            final RemoteExceptionCause cause = RemoteExceptionCause.of(t);
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            cause.writeToStream(new DataOutputStream(expected));
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            cause.writeToStream(new DataOutputStream(os), context);
+            assertArrayEquals(expected.toByteArray(), os.toByteArray());
+            final RemoteExceptionCause read = RemoteExceptionCause.readFromStream(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+            assertEquals("Message " + i, read.getMessage());
+            assertSame(read.getCause(), read.getSuppressed()[0]);
+            assertStackTraceArrayEquals(t, read);
+        }
+    }
+
+    private static Throwable deepException(String message, int depth) {
+        if (depth == 0) {
+            return new IllegalStateException(message);
+        }
+        return deepException(message, depth - 1);
+    }
+
+    @Test
+    public void dictionary() throws Exception {
+        final RemoteExceptionCause.ConnectionDictionary writeDictionary = new RemoteExceptionCause.ConnectionDictionary(1024);
+        final RemoteExceptionCause.ConnectionDictionary readDictionary = new RemoteExceptionCause.ConnectionDictionary(1024);
+        final RemoteExceptionCause.WriteContext context = new RemoteExceptionCause.WriteContext(writeDictionary);
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        int firstSize = 0;
+        for (int i = 0; i < 10; i ++) {
+            final Throwable t = deepException("Message " + i, 50);
+            final RemoteExceptionCause cause = RemoteExceptionCause.of(t);
+            final ByteStringBuilder plain = new ByteStringBuilder();
+            cause.writeTo(plain);
+            builder.setLength(0);
+            cause.writeTo(builder, context);
+            if (i == 0) {
+                firstSize = builder.length();
+                // the header is the only overhead on the first message
+                assertTrue(firstSize <= plain.length() + 3);
+            } else {
+                // repeated frames are sent as dictionary references
+                assertTrue(builder.length() * 4 < firstSize);
+            }
+            final RemoteExceptionCause read = RemoteExceptionCause.readFrom(builder.iterate(), readDictionary);
+            assertEquals("Message " + i, read.getMessage());
+            assertStackTraceArrayEquals(t, read);
+            // messages without a dictionary may be interleaved
+            assertStackTraceArrayEquals(t, RemoteExceptionCause.readFrom(plain.iterate(), readDictionary));
+        }
+    }
+
+    @Test
+    public void dictionaryJava9Frames() throws Exception {
+        // a peer may write frames in the Java 9 format, which must be added to the dictionary like any other frame
+        final RemoteExceptionCause.ConnectionDictionary readDictionary = new RemoteExceptionCause.ConnectionDictionary(32);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(os);
+        // version 1, 32 entries
+        dos.write(new byte[] { 8, 1, 5 });
+        dos.writeByte(4);
+        dos.writeByte(1);
+        dos.writeUTF(IllegalStateException.class.getName());
+        // no message, one frame
+        dos.write(new byte[] { 0, 0x21 });
+        // class loader, module name and module version are not given
+        dos.write(new byte[] { 3, 0, 0, 0 });
+        dos.writeByte(1);
+        dos.writeUTF("app.Foo");
+        dos.writeByte(1);
+        dos.writeUTF("bar");
+        dos.writeByte(1);
+        dos.writeUTF("Foo.java");
+        // line 7, no fields, no cause, no suppressed exceptions
+        dos.write(new byte[] { 0x27, 0x20, 0, 0x20 });
+        // the next message refers to the class name (entry 0) and the frame (entry 4)
+        dos.write(new byte[] { 8, 1, 5, 4, 9, 0, 0, 0, 0x21, 9, 0, 4, 0x20, 0, 0x20 });
+        dos.flush();
+        final ByteBuffer buffer = ByteBuffer.wrap(os.toByteArray());
+        final StackTraceElement frame = new StackTraceElement("app.Foo", "bar", "Foo.java", 7);
+        final RemoteExceptionCause first = RemoteExceptionCause.readFrom(buffer, readDictionary);
+        assertArrayEquals(new StackTraceElement[] { frame }, first.getStackTrace());
+        final RemoteExceptionCause second = RemoteExceptionCause.readFrom(buffer, readDictionary);
+        assertFalse(buffer.hasRemaining());
+        assertEquals(IllegalStateException.class.getName(), second.getExceptionClassName());
+        assertArrayEquals(new StackTraceElement[] { frame }, second.getStackTrace());
+    }
+
+    @Test
+    public void dictionaryEviction() throws Exception {
+        final RemoteExceptionCause.ConnectionDictionary writeDictionary = new RemoteExceptionCause.ConnectionDictionary(20);
+        assertEquals(32, writeDictionary.getCapacity());
+        final RemoteExceptionCause.ConnectionDictionary readDictionary = new RemoteExceptionCause.ConnectionDictionary(32);
+        final RemoteExceptionCause.WriteContext context = new RemoteExceptionCause.WriteContext(writeDictionary);
+        for (int i = 0; i < 20; i ++) {
+            final Throwable t = deepException("Message " + i % 3, i % 7 * 5);
+            final ByteBuffer buffer = ByteBuffer.allocate(8192);
+            RemoteExceptionCause.of(t).writeTo(buffer, context);
+            buffer.flip();
+            final RemoteExceptionCause read = RemoteExceptionCause.readFrom(buffer, readDictionary);
+            assertEquals(t.getMessage(), read.getMessage());
+            assertStackTraceArrayEquals(t, read);
+        }
+    }
+
+    @Test
+    public void dictionaryFailedWrite() throws Exception {
+        final RemoteExceptionCause.ConnectionDictionary writeDictionary = new RemoteExceptionCause.ConnectionDictionary(8);
+        final RemoteExceptionCause.ConnectionDictionary readDictionary = new RemoteExceptionCause.ConnectionDictionary(8);
+        final RemoteExceptionCause.WriteContext context = new RemoteExceptionCause.WriteContext(writeDictionary);
+        for (int i = 0; i < 20; i ++) {
+            final Throwable t = deepException("Message " + i % 4, i % 5 * 3);
+            final RemoteExceptionCause cause = RemoteExceptionCause.of(t);
+            if (i % 3 == 0) {
+                // a write which fails part way through does not change the writer's dictionary
+                try {
+                    cause.writeTo(ByteBuffer.allocate(40), context);
+                    fail("Expected exception");
+                } catch (BufferOverflowException expected) {
+                }
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(8192);
+            cause.writeTo(buffer, context);
+            buffer.flip();
+            final RemoteExceptionCause read = RemoteExceptionCause.readFrom(buffer, readDictionary);
+            assertEquals(t.getMessage(), read.getMessage());
+            assertStackTraceArrayEquals(t, read);
+        }
+    }
+
+    @Test
+    public void dictionaryMismatch() throws Exception {
+        final RemoteExceptionCause cause = RemoteExceptionCause.of(deepException("Message", 5));
+        final ByteStringBuilder builder = new ByteStringBuilder();
+        cause.writeTo(builder, new RemoteExceptionCause.WriteContext(new RemoteExceptionCause.ConnectionDictionary(64)));
+        try {
+            RemoteExceptionCause.readFrom(builder.iterate());
+            fail("Expected exception");
+        } catch (IOException expected) {
+        }
+        try {
+            RemoteExceptionCause.readFrom(builder.iterate(), new RemoteExceptionCause.ConnectionDictionary(128));
+            fail("Expected exception");
+        } catch (IOException expected) {
+        }
+        assertEquals("Message", RemoteExceptionCause.readFrom(builder.iterate(), new RemoteExceptionCause.ConnectionDictionary(64)).getMessage());
     }
 
     @Test